@@ -12,13 +12,21 @@ export interface WSPRequest {
   mustSameConstraints: Array<{ step1: number; step2: number }>;
   mustDifferentConstraints: Array<{ step1: number; step2: number }>;
   solverType: 'SAT' | 'CSP' | 'BACKTRACKING' | 'PBT';
+  parallelism?: number;
+  stepOrdering?: 'INDEX' | 'MAX_RED_DEGREE' | 'FEWEST_AUTHORISED' | 'BOD_GROUPED' | 'DSATUR' | 'DOM_WDEG';
+  restartPolicy?: 'NONE' | 'LUBY' | 'GEOMETRIC';
+  restartBase?: number;
+  seed?: number;
+  timeLimitMs?: number;
 }
 
 export interface WSPResponse {
+  status: 'SOLVED' | 'NO_SOLUTION' | 'TIMEOUT' | 'CANCELLED' | 'ERROR';
   solutionFound: boolean;
   assignment: number[];
   solvingTimeMs: number;
   solverUsed: string;
   message: string;
   timestamp: string;
+  statistics?: Record<string, number>;
 }
@@ -0,0 +1,142 @@
+package WSP.Backtracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded store of learned nogoods for {@link WSPBacktracking}. A nogood is a set of
+ * (step, user) assignments that cannot all hold in any solution. Each nogood is listed
+ * under every step it mentions, so it is checked when any of them is assigned.
+ *
+ * Like a SAT solver's clause database, every nogood has an activity that is bumped when
+ * it prunes an assignment; the bump grows after every conflict, so older activity decays.
+ * When the store exceeds its capacity, the less active half is evicted.
+ */
+public class NogoodStore {
+    public static final int DEFAULT_CAPACITY = 10000;
+    private static final double DECAY = 0.95;
+    private static final double RESCALE_LIMIT = 1e100;
+
+    private static final class Nogood {
+        final int[] steps;
+        final int[] users;
+        double activity;
+        boolean removed;
+
+        Nogood(int[] steps, int[] users) {
+            this.steps = steps;
+            this.users = users;
+        }
+    }
+
+    private final int capacity;
+    private final List<List<Nogood>> byStep;
+    private int size;
+    private double bump = 1.0;
+    private long prunes;
+    private long learned;
+    private long evicted;
+
+    public NogoodStore(int numSteps, int capacity) {
+        this.capacity = capacity;
+        this.byStep = new ArrayList<>(numSteps);
+        for (int s = 0; s < numSteps; s++) {
+            byStep.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Records that the given steps may not take the given users all at once.
+     * @param steps the steps of the nogood, without repeats
+     * @param users users[i] is the user of steps[i]
+     */
+    public void add(int[] steps, int[] users) {
+        Nogood nogood = new Nogood(steps, users);
+        nogood.activity = bump;
+        for (int s : steps) {
+            byStep.get(s).add(nogood);
+        }
+        size++;
+        learned++;
+        if (size > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * Checks the nogoods that mention {@code step}, which has just been given {@code encoding[step]}.
+     * @return the steps of a nogood that now holds entirely, or {@code null} if there is none
+     */
+    public int[] violated(int step, int[] encoding, boolean[] assigned) {
+        for (Nogood nogood : byStep.get(step)) {
+            if (holds(nogood, encoding, assigned)) {
+                nogood.activity += bump;
+                prunes++;
+                return nogood.steps;
+            }
+        }
+        return null;
+    }
+
+    /** Ages the activities; called once per conflict. */
+    public void decay() {
+        bump /= DECAY;
+        if (bump > RESCALE_LIMIT) {
+            for (int s = 0; s < byStep.size(); s++) {
+                for (Nogood nogood : byStep.get(s)) {
+                    if (nogood.steps[0] == s) nogood.activity /= RESCALE_LIMIT;
+                }
+            }
+            bump /= RESCALE_LIMIT;
+        }
+    }
+
+    private static boolean holds(Nogood nogood, int[] encoding, boolean[] assigned) {
+        for (int i = 0; i < nogood.steps.length; i++) {
+            int s = nogood.steps[i];
+            if (!assigned[s] || encoding[s] != nogood.users[i]) return false;
+        }
+        return true;
+    }
+
+    private void evict() {
+        // Each nogood is collected once, from the list of its first step.
+        List<Nogood> all = new ArrayList<>(size);
+        for (int s = 0; s < byStep.size(); s++) {
+            for (Nogood nogood : byStep.get(s)) {
+                if (nogood.steps[0] == s) all.add(nogood);
+            }
+        }
+        Nogood[] byActivity = all.toArray(new Nogood[0]);
+        Arrays.sort(byActivity, (a, b) -> Double.compare(a.activity, b.activity));
+        for (int i = 0; i < byActivity.length / 2; i++) {
+            byActivity[i].removed = true;
+        }
+        for (List<Nogood> list : byStep) {
+            list.removeIf(nogood -> nogood.removed);
+        }
+        evicted += byActivity.length / 2;
+        size -= byActivity.length / 2;
+    }
+
+    /** Number of nogoods currently stored. */
+    public int size() {
+        return size;
+    }
+
+    /** Number of assignments rejected by a stored nogood. */
+    public long getPrunes() {
+        return prunes;
+    }
+
+    /** Number of nogoods learned, including those since evicted. */
+    public long getLearned() {
+        return learned;
+    }
+
+    /** Number of nogoods evicted to stay within the capacity. */
+    public long getEvicted() {
+        return evicted;
+    }
+}
@@ -0,0 +1,218 @@
+package WSP.Backtracking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import WSP.BoundedWork;
+import WSP.SearchContext;
+import WSP.StepOrdering;
+import WSP.VertexCover.ConstraintGraph;
+
+/**
+ * Work-stealing version of {@link WSPBacktracking}. A task is the subtree below a prefix of
+ * (step, user) assignments. Splitting is lazy: a worker keeps searching its own subtree and,
+ * whenever few tasks are waiting beyond what idle workers can take, gives the untried users
+ * of its current level away as new tasks. Each worker thread reuses one search, so nogoods
+ * and constraint weights it learns carry over to its next task. Workers share the
+ * template's {@link SearchContext}; once it stops, running tasks stop at their next node and
+ * queued ones are skipped, and the search returns what it has found so far.
+ *
+ * The search runs on a pool of its own for each call, or on a pool passed in by the
+ * caller, which is shared and left running. On a shared pool at most {@code parallelism}
+ * tasks of the search run at once, whatever the size of the pool.
+ */
+public class ParallelBacktracking {
+    /** A level is split while fewer than this many tasks are queued beyond what idle workers can take. */
+    public static final int SURPLUS_THRESHOLD = 2;
+
+    private final WSPBacktracking template;
+    private final int numSteps;
+    private final int parallelism;
+    private final ForkJoinPool pool;      // null: a pool of parallelism threads per search
+    private SearchContext context;
+    private final Map<Thread, WSPBacktracking> workers = new ConcurrentHashMap<>();
+    private BoundedWork<Subtree> work;
+
+    private final AtomicReference<int[]> firstSolution = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<int[]> solutions = new ConcurrentLinkedQueue<>();
+    private final LongAdder solutionCount = new LongAdder();
+    private final LongAdder tasks = new LongAdder();
+    private volatile boolean cancelled;
+    private volatile boolean stopped;
+    private Mode mode;
+
+    private enum Mode { FIRST, ALL, COUNT }
+
+    /**
+     * @param template    the sequential search whose instance, ordering and options are used
+     * @param parallelism number of worker threads
+     */
+    public ParallelBacktracking(WSPBacktracking template, int parallelism) {
+        this(template, parallelism, null);
+    }
+
+    /**
+     * @param template the sequential search whose instance, ordering and options are used
+     * @param pool     pool the workers run on; not shut down by the search
+     */
+    public ParallelBacktracking(WSPBacktracking template, ForkJoinPool pool) {
+        this(template, pool.getParallelism(), pool);
+    }
+
+    /**
+     * @param template    the sequential search whose instance, ordering and options are used
+     * @param pool        pool the workers run on; not shut down by the search
+     * @param parallelism most tasks of this search running at once
+     */
+    public ParallelBacktracking(WSPBacktracking template, ForkJoinPool pool, int parallelism) {
+        this(template, parallelism, pool);
+    }
+
+    private ParallelBacktracking(WSPBacktracking template, int parallelism, ForkJoinPool pool) {
+        this.template = template;
+        this.numSteps = template.getNumSteps();
+        this.parallelism = parallelism;
+        this.pool = pool;
+    }
+
+    public ParallelBacktracking(ConstraintGraph graph, int numUsers, int numSteps, int[][] authorisation,
+                                StepOrdering ordering, int parallelism) {
+        this(new WSPBacktracking(graph, numUsers, numSteps, authorisation, ordering), parallelism);
+    }
+
+    /**
+     * Searches until any worker finds a solution; the others stop at their next node.
+     * @return that solution, or {@code null} if the instance is unsatisfiable.
+     */
+    public int[] findFirst() {
+        run(Mode.FIRST);
+        return firstSolution.get();
+    }
+
+    /**
+     * Explores the whole tree.
+     * @return every solution, in no particular order.
+     */
+    public List<int[]> findAll() {
+        run(Mode.ALL);
+        return new ArrayList<>(solutions);
+    }
+
+    /**
+     * Explores the whole tree without storing solutions.
+     * @return the number of solutions.
+     */
+    public long countSolutions() {
+        run(Mode.COUNT);
+        return solutionCount.sum();
+    }
+
+    /** Number of tasks created by the last search. */
+    public long getTaskCount() {
+        return tasks.sum();
+    }
+
+    /** Most tasks of this search running at once. */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Whether the last search stopped on the template's context before exploring every
+     * subtree it needed, so a missing solution does not mean there is none.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void run(Mode mode) {
+        this.mode = mode;
+        firstSolution.set(null);
+        solutions.clear();
+        solutionCount.reset();
+        tasks.reset();
+        cancelled = false;
+        stopped = false;
+        context = template.getContext();
+        ForkJoinPool pool = this.pool != null ? this.pool : new ForkJoinPool(parallelism);
+        try {
+            work = new BoundedWork<>(pool, parallelism, this::search);
+            work.run(new Subtree(new int[0], new int[0]));
+        } finally {
+            // A shared pool outlives the search, so its threads must not keep the copies.
+            workers.clear();
+            work = null;
+            if (pool != this.pool) pool.shutdown();
+        }
+    }
+
+    private void search(Subtree subtree) {
+        if (cancelled) return;
+        if (context != null && context.shouldStop()) {
+            stopped = true;
+            return;
+        }
+        WSPBacktracking search = workers.computeIfAbsent(Thread.currentThread(),
+                thread -> new WSPBacktracking(template));
+        search.setSplitter(subtree);
+        try {
+            search.runFrom(subtree.steps, subtree.users, this::accept, mode == Mode.FIRST ? 1 : Long.MAX_VALUE);
+            if (search.isSuspended()) stopped = true;
+        } finally {
+            search.setSplitter(null);
+        }
+    }
+
+    private void accept(int[] solution) {
+        switch (mode) {
+            case FIRST:
+                if (firstSolution.compareAndSet(null, solution.clone())) cancelled = true;
+                break;
+            case ALL:
+                solutions.add(solution.clone());
+                break;
+            default:
+                solutionCount.increment();
+        }
+    }
+
+    private class Subtree implements WSPBacktracking.Splitter {
+        private final int[] steps;
+        private final int[] users;
+
+        Subtree(int[] steps, int[] users) {
+            this.steps = steps;
+            this.users = users;
+            tasks.increment();
+        }
+
+        @Override
+        public boolean cancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean wantsWork(int depth) {
+            // Subtrees of the last two levels are too small to be worth a task.
+            return depth < numSteps - 2 && work.surplus() < SURPLUS_THRESHOLD;
+        }
+
+        @Override
+        public void split(int[] prefixSteps, int[] prefixUsers, int step, int[] values) {
+            int[] childSteps = Arrays.copyOf(prefixSteps, prefixSteps.length + 1);
+            childSteps[prefixSteps.length] = step;
+            for (int v : values) {
+                int[] childUsers = Arrays.copyOf(prefixUsers, prefixUsers.length + 1);
+                childUsers[prefixUsers.length] = v;
+                work.submit(new Subtree(childSteps, childUsers));
+            }
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package WSP.Backtracking;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
 
+import WSP.BitSets;
+import WSP.RestartPolicy;
+import WSP.SearchContext;
+import WSP.SearchCheckpoint;
+import WSP.SodCliques;
+import WSP.StepOrdering;
 import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+import WSP.WSPInstance;
 
 /*
  *  This class implements backtracking algorithm to solve the WSP problem
@@ -19,7 +32,135 @@ public class WSPBacktracking {
     private int [] encoding;
     private ConstraintGraph graph;
     private List<int[]> collectedEncodings;
-    private final int [][] authorisation;  // rows = steps, cols = users
+    private final int [][] authorisation;  // rows = steps, cols = users; null when built from an instance
+    private final WSPInstance instance;    // null when built from a matrix
+    private final StepOrdering ordering;
+    private final int [] staticOrder;      // the ordering's order, ties broken by index
+    private int [] order;                  // order[d] = step assigned at depth d in the current run
+    private final int [][] neighbours;     // neighbours[s] = steps sharing a constraint with s
+    private final int [][] neighbourType;  // neighbourType[s][i] = RED or BLACK for neighbours[s][i]
+    private final int [] redDegree;
+    private final int [] authorisedCount;
+    private final boolean [] assigned;
+    private final int [] userStamp;        // scratch for counting distinct users in DSatur
+    private int stamp;
+    private Consumer<int[]> sink;          // receives each solution found by the current run
+    private long limit;                    // the current run stops after this many solutions
+    private long found;
+    // Forward checking: domains[s] = users still possible for s, shrunk as neighbours are
+    // assigned. Every changed word is pushed on the trail as (s * userWords + w, old word).
+    private boolean forwardChecking;
+    private final int userWords;
+    private final long [][] domains;
+    // authorisedUsers[s] = users authorised for s, the domain every run starts from; built
+    // once and shared read-only with the copies made for parallel workers
+    private final long [][] authorisedUsers;
+    private int [] trailIndex = new int[64];
+    private long [] trailWord = new long[64];
+    private int trailTop;
+    // Arc consistency (MAC): after each assignment AC-3 revises the arcs of every step whose
+    // domain changed, using the same trail. queue holds those steps, inQueue marks them.
+    private boolean arcConsistency;
+    private boolean leastConstrainingValue;
+    private final int [] queue;
+    private int queueSize;
+    private final boolean [] inQueue;
+    // dom/wdeg: edgeId[s][i] names the constraint to neighbours[s][i]; its weight counts the
+    // domain wipe-outs it caused.
+    private final int [][] edgeId;
+    private final int [] edgeWeight;
+    // Global all-different on SoD cliques (Régin): cliques[c] lists the steps of a maximal
+    // RED clique, cliqueMatch[c][i] the user its last filtering matched to cliques[c][i]
+    // (only a starting point for the next one, so it is not trailed). userMatch[u] is the
+    // clique position matched to u during a filtering, or -1; the rest is scratch.
+    private boolean allDifferent;
+    private int [][] cliques;
+    private int [][] cliqueMatch;
+    private final int [] userMatch;
+    private final int [] userVisited;
+    private int visitStamp;
+    private final int [] userQueue;
+    private long [][] cliqueDomain;
+    private int [] pathStep;
+    private int [] pathUser;
+    private boolean [] reachesFree;
+    private int [] sccIndex;
+    private int [] sccLow;
+    private int [] sccOf;
+    private boolean [] onStack;
+    private int [] sccStack;
+    private int [] callStack;
+    // Conflict-directed backjumping: conflict[s] holds the assigned steps blamed for the users
+    // of s tried so far, pruners[s] the assigned steps that removed users from domains[s]
+    // (trailed with the domains, at index domainWords + s * stepWords + w), and depthOf[s]
+    // the depth s was assigned at. explanation receives the steps blamed for a failed
+    // propagation. Each exhausted step's conflict set is learned as a nogood.
+    private static final int STOP = -2;
+    private boolean backjumping;
+    private int nogoodCapacity = NogoodStore.DEFAULT_CAPACITY;
+    private NogoodStore nogoods;
+    private final int stepWords;
+    private final int domainWords;
+    private final long [][] conflict;
+    private final long [][] pruners;
+    private final long [] explanation;
+    private final int [] depthOf;
+    // Parallel search: splitter may cancel the run or take the untried users of a level,
+    // stepAt[d] is the step assigned at depth d, and splits counts the levels given away.
+    private Splitter splitter;
+    private final int [] stepAt;
+    private long splits;
+    // Explicit search stack, one entry per depth: the level's step is stepAt[d], cursor[d] is
+    // the user being tried (-1 once exhausted), valuesAt[d] the LCV order (or null) with
+    // valueIndex[d] the position after cursor[d], markAt[d] the trail height before the
+    // cursor was tried, eventsAt[d] found + splits when the level was opened, and
+    // lastValueAt[d] whether the level's remaining users were given away.
+    private static final int DESCEND = -3;
+    private final int [] cursor;
+    private final int [] valueIndex;
+    private final int [][] valuesAt;
+    private final int [] markAt;
+    private final long [] eventsAt;
+    private final boolean [] lastValueAt;
+    // Suspension: a run stops at the next node once requested, leaving the stack intact so
+    // it can be written as a checkpoint; suspendedDepth is the level it stopped at, and
+    // levels below rootDepth are the fixed prefix the run started from. A run whose context
+    // stops (deadline or cancellation) is suspended the same way.
+    private SearchContext context;
+    private volatile boolean suspendRequested;
+    private boolean suspended;
+    private int suspendedDepth;
+    private int rootDepth;
+    // Restarts of first-solution runs: a run gives up once failures (rejected assignments)
+    // reaches cutoff and starts again with fresh random tie-breaking in the step order,
+    // the dom/wdeg and DSatur choices and the value order. random is null in runs without.
+    private RestartPolicy restartPolicy = RestartPolicy.NONE;
+    private long restartBase = RestartPolicy.DEFAULT_BASE;
+    private long seed;
+    private boolean keepNogoods = true;
+    private Random random;
+    private boolean randomisedRun;
+    private long failures;
+    private long cutoff = Long.MAX_VALUE;
+    private boolean restarting;
+    private long restarts;
+
+    /*
+     * Hooks through which ParallelBacktracking cancels a run and hands parts of its tree to
+     * idle workers
+     */
+    interface Splitter {
+        boolean cancelled();
+
+        /* @return true if other workers would take the untried users of a level at this depth */
+        boolean wantsWork(int depth);
+
+        /*
+         * Takes over the subtrees below steps[i] = users[i] (depths 0..depth-1) and step = v,
+         * for every v in values
+         */
+        void split(int[] steps, int[] users, int step, int[] values);
+    }
 
 
     /*
@@ -31,46 +172,1317 @@ public class WSPBacktracking {
      */
 
     public WSPBacktracking(ConstraintGraph graph , int numUsers , int numSteps,int [][] authorisation ){
+        this(graph, numUsers, numSteps, authorisation, StepOrdering.INDEX);
+    }
+
+    /*
+     * Constructor
+     * @param graph The constraint graph
+     * @param numUsers Number of users
+     * @param numSteps Number of steps
+     * @param ordering The order in which steps are assigned. DSATUR and DOM_WDEG are re-evaluated
+     *                 at every node from the current state; the others are fixed up front.
+     */
+    public WSPBacktracking(ConstraintGraph graph , int numUsers , int numSteps,int [][] authorisation,
+                           StepOrdering ordering){
+        this(graph, numUsers, numSteps, authorisation, null, ordering, usersOfSteps(authorisation, numSteps, numUsers));
+    }
+
+    /*
+     * Constructor
+     * @param instance The WSP instance; its graph is shared, not copied
+     * @param ordering The order in which steps are assigned
+     */
+    public WSPBacktracking(WSPInstance instance, StepOrdering ordering){
+        this(instance.graph(), instance.numUsers(), instance.numSteps(), null, instance, ordering,
+                usersOfSteps(instance));
+    }
+
+    /*
+     * A fresh search over the same instance, with the same ordering and search options
+     */
+    WSPBacktracking(WSPBacktracking template) {
+        this(template.graph, template.numUsers, template.numSteps, template.authorisation, template.instance,
+                template.ordering, template.authorisedUsers);
+        this.forwardChecking = template.forwardChecking;
+        this.arcConsistency = template.arcConsistency;
+        this.leastConstrainingValue = template.leastConstrainingValue;
+        this.backjumping = template.backjumping;
+        this.nogoodCapacity = template.nogoodCapacity;
+        this.allDifferent = template.allDifferent;
+        this.context = template.context;
+        // runFrom keeps what earlier runs learned, so the copy starts from what run() would
+        resetLearning();
+    }
+
+    /*
+     * @param authorisedUsers authorisedUsers[s] is the bitset of users authorised for step s
+     */
+    private WSPBacktracking(ConstraintGraph graph, int numUsers, int numSteps, int[][] authorisation,
+                            WSPInstance instance, StepOrdering ordering, long[][] authorisedUsers) {
         this.graph = graph;
         this.numUsers = numUsers;
         this.numSteps = numSteps;
         this.encoding = new int[numSteps];
         this.collectedEncodings = new ArrayList<>();
         this.authorisation = authorisation;
+        this.instance = instance;
+        this.ordering = ordering;
+        this.staticOrder = order(null);
+        this.order = staticOrder;
+        this.neighbours = new int[numSteps][];
+        this.neighbourType = new int[numSteps][];
+        this.redDegree = new int[numSteps];
+        this.authorisedCount = new int[numSteps];
+        FrozenConstraintGraph view = graph.freeze();
+        for (int s = 0; s < numSteps; s++) {
+            // Merge the RED and BLACK neighbour lists into one list in step order.
+            int[] red = view.neighbours(s, ConstraintGraph.RED);
+            int[] black = view.neighbours(s, ConstraintGraph.BLACK);
+            neighbours[s] = new int[red.length + black.length];
+            neighbourType[s] = new int[red.length + black.length];
+            for (int i = 0, r = 0, b = 0; i < neighbours[s].length; i++) {
+                boolean takeRed = b == black.length || (r < red.length && red[r] < black[b]);
+                neighbours[s][i] = takeRed ? red[r++] : black[b++];
+                neighbourType[s][i] = takeRed ? ConstraintGraph.RED : ConstraintGraph.BLACK;
+            }
+            redDegree[s] = red.length;
+            authorisedCount[s] = BitSets.cardinality(authorisedUsers[s]);
+        }
+        this.assigned = new boolean[numSteps];
+        this.userStamp = new int[numUsers];
+        this.userWords = Math.max(1, BitSets.words(numUsers));
+        this.domains = new long[numSteps][userWords];
+        this.authorisedUsers = authorisedUsers;
+        this.queue = new int[numSteps];
+        this.inQueue = new boolean[numSteps];
+        this.edgeId = new int[numSteps][];
+        int numEdges = 0;
+        for (int s = 0; s < numSteps; s++) {
+            edgeId[s] = new int[neighbours[s].length];
+            for (int i = 0; i < neighbours[s].length; i++) {
+                int t = neighbours[s][i];
+                if (s < t) {
+                    edgeId[s][i] = numEdges++;
+                } else {
+                    int j = Arrays.binarySearch(neighbours[t], s); // neighbours are in step order
+                    edgeId[s][i] = edgeId[t][j];
+                }
+            }
+        }
+        this.edgeWeight = new int[numEdges];
+        this.stepWords = Math.max(1, BitSets.words(numSteps));
+        this.domainWords = numSteps * userWords;
+        this.conflict = new long[numSteps][stepWords];
+        this.pruners = new long[numSteps][stepWords];
+        this.explanation = new long[stepWords];
+        this.depthOf = new int[numSteps];
+        this.stepAt = new int[numSteps];
+        this.cursor = new int[numSteps];
+        this.valueIndex = new int[numSteps];
+        this.valuesAt = new int[numSteps][];
+        this.markAt = new int[numSteps];
+        this.eventsAt = new long[numSteps];
+        this.lastValueAt = new boolean[numSteps];
+        this.userMatch = new int[numUsers];
+        Arrays.fill(userMatch, -1);
+        this.userVisited = new int[numUsers];
+        this.userQueue = new int[numUsers];
+    }
 
+    private static long[][] usersOfSteps(int[][] authorisation, int numSteps, int numUsers) {
+        long[][] users = new long[numSteps][Math.max(1, BitSets.words(numUsers))];
+        for (int s = 0; s < numSteps; s++) {
+            for (int u = 0; u < numUsers; u++) {
+                if (authorisation[s][u] == 1) BitSets.set(users[s], u);
+            }
+        }
+        return users;
     }
+
+    private static long[][] usersOfSteps(WSPInstance instance) {
+        long[][] users = new long[instance.numSteps()][];
+        for (int s = 0; s < users.length; s++) users[s] = instance.stepUsers(s);
+        return users;
+    }
+
+    /*
+     * The ordering's order, with ties broken by random when it is not null. An instance
+     * gives its authorised counts without a scan of the matrix.
+     */
+    private int[] order(Random random) {
+        return instance != null ? ordering.order(instance, random) : ordering.order(graph, authorisation, numSteps, random);
+    }
+
+/*
+ * Turns forward checking on or off for the following runs. With it on, each step keeps a
+ * bitset of the users still consistent with its assigned neighbours, and the search
+ * backtracks as soon as one of those sets becomes empty.
+ */
+public void setForwardChecking(boolean forwardChecking) {
+    this.forwardChecking = forwardChecking;
+}
+
 /*
- * Runs the backtracking algorithm
+ * Turns arc consistency on or off for the following runs. With it on, the domains are made
+ * arc consistent (AC-3) before the search and after every assignment, which subsumes
+ * forward checking: a BLACK arc keeps the users the two steps share, a RED arc removes the
+ * user of a neighbour whose domain is down to one user.
+ */
+public void setArcConsistency(boolean arcConsistency) {
+    this.arcConsistency = arcConsistency;
+}
+
+/*
+ * Turns least-constraining-value ordering on or off. With it on and domains maintained,
+ * the users of a step are tried in increasing order of how many users they remove from
+ * the domains of its unassigned neighbours.
+ */
+public void setLeastConstrainingValue(boolean leastConstrainingValue) {
+    this.leastConstrainingValue = leastConstrainingValue;
+}
+
+/*
+ * Turns conflict-directed backjumping on or off for the following runs. With it on, every
+ * failure is blamed on the assigned steps that caused it; a step whose users are all ruled
+ * out jumps back to the latest of those steps, skipping the steps in between, and its
+ * blamed assignments are learned as a nogood.
+ */
+public void setBackjumping(boolean backjumping) {
+    this.backjumping = backjumping;
+}
+
+/*
+ * Turns the global all-different filter on or off for the following runs. With it on and
+ * domains maintained, every maximal clique of at least three SoD constraints is treated as
+ * one all-different constraint: after each propagation a user is removed from a step when
+ * no matching of the clique's steps to distinct users gives it to that step, so a clique
+ * with more steps than users between them fails at once.
+ */
+public void setAllDifferent(boolean allDifferent) {
+    this.allDifferent = allDifferent;
+}
+
+/*
+ * Sets when findFirst() restarts, see RestartPolicy. Restarting runs break ties in the step
+ * and value orders at random, from the given seed, so a run is reproducible. Runs that look
+ * for more than one solution never restart, as they would find solutions twice.
+ * @param base the number of failed assignments the policy's sequence is counted in
+ */
+public void setRestarts(RestartPolicy policy, long base, long seed) {
+    this.restartPolicy = policy;
+    this.restartBase = base;
+    this.seed = seed;
+}
+
+/*
+ * @param keepNogoods whether nogoods learned with backjumping survive a restart (the default)
+ */
+public void setKeepNogoods(boolean keepNogoods) {
+    this.keepNogoods = keepNogoods;
+}
+
+/*
+ * @return the number of restarts in the last run
+ */
+public long getRestarts() {
+    return restarts;
+}
+
+/*
+ * @param capacity the most nogoods kept during a run before the least active half is evicted
+ */
+public void setNogoodCapacity(int capacity) {
+    this.nogoodCapacity = capacity;
+}
+
+/*
+ * @return the nogoods learned by the last run with backjumping, or null
+ */
+public NogoodStore getNogoods() {
+    return nogoods;
+}
+/*
+ * Runs the backtracking algorithm and stores every solution, see getSolutions()
  */
 public void runBacktracking(){
-    backtracking(0);
+    collectedEncodings.clear();
+    run(solution -> collectedEncodings.add(solution.clone()), Long.MAX_VALUE);
 }
 
+/*
+ * Runs the backtracking algorithm until the first solution
+ * @return the first solution found, or null if the instance is unsatisfiable
+ */
+public int[] findFirst() {
+    int[][] first = new int[1][];
+    run(solution -> first[0] = solution.clone(), 1);
+    return first[0];
+}
 
 /*
- * Run the backtracking algorithm to find all possible assignments
- * @return all possible assignments
- * 
+ * Runs the backtracking algorithm until maxSolutions solutions are found
+ * @param maxSolutions the most solutions to return
+ * @return up to maxSolutions solutions, in search order
+ */
+public List<int[]> findSolutions(long maxSolutions) {
+    List<int[]> solutions = new ArrayList<>();
+    run(solution -> solutions.add(solution.clone()), maxSolutions);
+    return solutions;
+}
+
+/*
+ * Runs the backtracking algorithm and passes every solution to a callback without storing it.
+ * The array is reused by the search: it is only valid during the call, so copy it to keep it.
+ * @param consumer receives each solution
+ * @param maxSolutions the search stops after this many solutions
+ * @return the number of solutions passed to the consumer
+ */
+public long forEachSolution(Consumer<int[]> consumer, long maxSolutions) {
+    return run(consumer, maxSolutions);
+}
+
+public long forEachSolution(Consumer<int[]> consumer) {
+    return run(consumer, Long.MAX_VALUE);
+}
+
+private long run(Consumer<int[]> consumer, long maxSolutions) {
+    resetLearning();
+    restarts = 0;
+    randomisedRun = restartPolicy != RestartPolicy.NONE && maxSolutions == 1;
+    if (!randomisedRun) {
+        return runFrom(new int[0], new int[0], consumer, maxSolutions);
+    }
+    random = new Random(seed);
+    failures = 0;
+    try {
+        while (true) {
+            order = order(random);
+            cutoff = failures + restartPolicy.cutoff((int) Math.min(restarts, Integer.MAX_VALUE), restartBase);
+            restarting = false;
+            long solutions = runFrom(new int[0], new int[0], consumer, maxSolutions);
+            if (!restarting) return solutions;
+            restarts++;
+            if (!keepNogoods && nogoods != null) nogoods = new NogoodStore(numSteps, nogoodCapacity);
+        }
+    } finally {
+        random = null;
+        order = staticOrder;
+        cutoff = Long.MAX_VALUE;
+    }
+}
+
+/*
+ * Searches the subtree below a fixed prefix of assignments. Learned nogoods and constraint
+ * weights are kept from earlier runs on this instance, as they hold in every subtree.
+ * @param steps the prefix steps, in the order the search would assign them
+ * @param users users[i] is the user of steps[i]
+ * @return the number of solutions passed to the consumer
+ */
+long runFrom(int[] steps, int[] users, Consumer<int[]> consumer, long maxSolutions) {
+    boolean consistent = prepare(consumer, maxSolutions, 0);
+    for (int d = 0; d < steps.length && consistent; d++) {
+        int step = steps[d];
+        boolean allowed = forwardChecking || arcConsistency
+                ? BitSets.get(domains[step], users[d]) : BitSets.get(authorisedUsers[step], users[d]);
+        assigned[step] = true;
+        depthOf[step] = d;
+        stepAt[d] = step;
+        cursor[d] = users[d];
+        encoding[step] = users[d];
+        if (backjumping) Arrays.fill(conflict[step], 0L);
+        consistent = allowed && tryValue(step, users[d]);
+    }
+    rootDepth = steps.length;
+    if (limit > 0 && consistent) {
+        backtracking(steps.length, steps.length, false);
+    }
+    sink = null;
+    return found;
+}
+
+private void resetLearning() {
+    Arrays.fill(edgeWeight, 1);
+    nogoods = backjumping ? new NogoodStore(numSteps, nogoodCapacity) : null;
+}
+
+/*
+ * Resets the search state for a new run
+ * @return false if arc consistency already empties a domain
+ */
+private boolean prepare(Consumer<int[]> consumer, long maxSolutions, long foundSoFar) {
+    if (backjumping && nogoods == null) nogoods = new NogoodStore(numSteps, nogoodCapacity);
+    sink = consumer;
+    limit = maxSolutions;
+    found = foundSoFar;
+    splits = 0;
+    suspended = false;
+    Arrays.fill(assigned, false);
+    trailTop = 0;
+    for (int s = 0; s < numSteps; s++) {
+        Arrays.fill(pruners[s], 0L);
+        System.arraycopy(authorisedUsers[s], 0, domains[s], 0, userWords);
+    }
+    if (arcConsistency) {
+        for (int s = 0; s < numSteps; s++) enqueue(s);
+        if (!propagateArcs()) return false;
+    }
+    if (usesAllDifferent()) {
+        if (cliques == null) findCliques();
+        return filterAllDifferent();
+    }
+    return true;
+}
+
+/*
+ * Asks the running search to stop at its next node. May be called from any thread; the
+ * run then returns early and isSuspended() is true until the next run.
+ */
+public void requestSuspend() {
+    suspendRequested = true;
+}
+
+/*
+ * Sets the deadline and cancellation context polled at every node, or null for none. A run
+ * that sees it stop is suspended, so it can still be checkpointed and resumed later.
+ */
+public void setContext(SearchContext context) {
+    this.context = context;
+}
+
+/*
+ * @return true if the last run stopped on requestSuspend() or its context rather than finishing
+ */
+public boolean isSuspended() {
+    return suspended;
+}
+
+/*
+ * Writes the position of the suspended search: for every open level its step, the user
+ * being tried, how far through the level's users it is and, with backjumping, the
+ * level's conflict set. Domains and learned nogoods are not written; they are rebuilt by
+ * replaying the assignments, or relearned.
+ */
+public void writeCheckpoint(DataOutputStream out) throws IOException {
+    if (!suspended) {
+        throw new IllegalStateException("The search is not suspended");
+    }
+    if (randomisedRun) {
+        throw new IllegalStateException("A restarting search cannot be checkpointed");
+    }
+    SearchCheckpoint.writeHeader(out, SearchCheckpoint.BACKTRACKING, fingerprint());
+    out.writeLong(found);
+    out.writeInt(rootDepth);
+    out.writeInt(suspendedDepth);
+    for (int d = 0; d <= suspendedDepth; d++) {
+        out.writeInt(stepAt[d]);
+        out.writeInt(cursor[d]);
+        out.writeInt(valueIndex[d]);
+        out.writeBoolean(lastValueAt[d]);
+        out.writeBoolean(found + splits > eventsAt[d]);
+        if (backjumping) {
+            for (int w = 0; w < stepWords; w++) out.writeLong(conflict[stepAt[d]][w]);
+        }
+    }
+    out.flush();
+}
+
+/*
+ * Continues a search from a checkpoint written by writeCheckpoint on a search over the
+ * same instance with the same options, possibly in another process.
+ * @param consumer receives each further solution; the array is reused, copy it to keep it
+ * @param maxSolutions the search stops once this many solutions have been found in total,
+ *                     counting those found before the checkpoint
+ * @return the total number of solutions found, including those before the checkpoint
+ */
+public long resume(DataInputStream in, Consumer<int[]> consumer, long maxSolutions) throws IOException {
+    SearchCheckpoint.readHeader(in, SearchCheckpoint.BACKTRACKING, fingerprint());
+    long foundSoFar = in.readLong();
+    int root = in.readInt();
+    int depth = in.readInt();
+    resetLearning();
+    randomisedRun = false;
+    if (!prepare(consumer, maxSolutions, foundSoFar)) {
+        throw new IOException("Checkpoint does not match the instance");
+    }
+    if (root < 0 || depth < root || depth >= numSteps) {
+        throw new IOException("Checkpoint does not match the instance");
+    }
+    for (int d = 0; d <= depth; d++) {
+        int step = in.readInt();
+        if (step < 0 || step >= numSteps || assigned[step]) {
+            throw new IOException("Checkpoint does not match the instance");
+        }
+        openLevel(d, step);
+        cursor[d] = in.readInt();
+        if (cursor[d] >= numUsers) {
+            throw new IOException("Checkpoint does not match the instance");
+        }
+        valueIndex[d] = in.readInt();
+        lastValueAt[d] = in.readBoolean();
+        if (in.readBoolean()) eventsAt[d]--;
+        if (backjumping) {
+            for (int w = 0; w < stepWords; w++) conflict[step][w] = in.readLong();
+        }
+        if (d < depth) {
+            markAt[d] = trailTop;
+            encoding[step] = cursor[d];
+            boolean allowed = cursor[d] >= 0 && (forwardChecking || arcConsistency
+                    ? BitSets.get(domains[step], cursor[d]) : BitSets.get(authorisedUsers[step], cursor[d]));
+            if (!allowed || !tryValue(step, cursor[d])) {
+                throw new IOException("Checkpoint does not match the instance");
+            }
+        }
+    }
+    rootDepth = root;
+    if (found < limit) {
+        backtracking(root, depth, true);
+    }
+    sink = null;
+    return found;
+}
+
+/*
+ * Hash of the instance and the options that shape the search tree
+ */
+private int fingerprint() {
+    int hash = Arrays.deepHashCode(authorisation != null ? authorisation : instance.authorisation());
+    hash = 31 * hash + Arrays.deepHashCode(neighbours);
+    hash = 31 * hash + Arrays.deepHashCode(neighbourType);
+    hash = 31 * hash + ordering.ordinal();
+    hash = 31 * hash + (forwardChecking ? 1 : 0) + (arcConsistency ? 2 : 0)
+            + (leastConstrainingValue ? 4 : 0) + (backjumping ? 8 : 0) + (allDifferent ? 16 : 0);
+    return hash;
+}
+
+int getNumSteps() {
+    return numSteps;
+}
+
+SearchContext getContext() {
+    return context;
+}
+
+/*
+ * Sets the hooks used by ParallelBacktracking, or null for a sequential search
+ */
+void setSplitter(Splitter splitter) {
+    this.splitter = splitter;
+}
+
+/*
+ * @return the number of levels whose untried users the last run gave away
+ */
+long getSplits() {
+    return splits;
+}
+
+
+/*
+ * Depth-first search over the steps below depth start, on an explicit stack, passing each
+ * complete assignment to the sink. Levels start..depth-1 must already be assigned, and
+ * level depth opened when resuming.
+ * @return the depth at which the caller carries on: start - 1 once the subtree is done, an
+ *         earlier depth after a backjump, or STOP once the solution limit is reached or the
+ *         search is cancelled or suspended
+ */
+private int backtracking(int start, int depth, boolean resuming) {
+    int ret = resuming ? depth : DESCEND;
+    while (true) {
+        if (ret == DESCEND) {
+            if (depth == numSteps) {
+                sink.accept(encoding);
+                ret = ++found >= limit ? STOP : depth - 1;
+                if (depth == start) return ret;
+                depth--;
+                continue;
+            }
+            openLevel(depth, nextStep(depth));
+        } else if (!resuming) {
+            // The subtree below cursor[depth] has been searched; ret says where to go on.
+            undoTrail(markAt[depth]);
+            if (ret == STOP || ret < depth) {
+                assigned[stepAt[depth]] = false;
+                if (depth == start) return ret;
+                depth--;
+                continue;
+            }
+            cursor[depth] = lastValueAt[depth] ? -1
+                    : nextValue(stepAt[depth], valuesAt[depth], valueIndex[depth]++, cursor[depth]);
+        }
+        resuming = false;
+
+        int step = stepAt[depth];
+        ret = DESCEND;
+        while (cursor[depth] >= 0) {
+            int u = cursor[depth];
+            if (suspendRequested || (context != null && context.shouldStop())) {
+                suspendRequested = false;
+                suspended = true;
+                suspendedDepth = depth;
+                return STOP;
+            }
+            if (failures >= cutoff) {
+                restarting = true;
+                return STOP;
+            }
+            if (splitter != null) {
+                if (splitter.cancelled()) {
+                    ret = STOP;
+                    break;
+                }
+                if (!lastValueAt[depth] && splitter.wantsWork(depth)
+                        && giveAway(depth, step, valuesAt[depth], valueIndex[depth], u)) {
+                    lastValueAt[depth] = true;
+                }
+            }
+            encoding[step] = u;
+            markAt[depth] = trailTop;
+            if (tryValue(step, u)) break;
+            failures++;
+            undoTrail(markAt[depth]);
+            cursor[depth] = lastValueAt[depth] ? -1 : nextValue(step, valuesAt[depth], valueIndex[depth]++, u);
+        }
+        if (ret == DESCEND && cursor[depth] >= 0) {
+            depth++;
+            continue;
+        }
+        assigned[step] = false;
+        if (ret != STOP) {
+            // Every user of the level has been tried.
+            ret = !backjumping || found + splits > eventsAt[depth] ? depth - 1 : backjump(step);
+        }
+        if (depth == start) return ret;
+        depth--;
+    }
+}
+
+/*
+ * Pushes level depth on the stack with the given step, positioned at its first user
+ */
+private void openLevel(int depth, int step) {
+    assigned[step] = true;
+    depthOf[step] = depth;
+    stepAt[depth] = step;
+    // A level is exhausted only if none of its subtrees produced a solution or was given away.
+    eventsAt[depth] = found + splits;
+    boolean useDomains = forwardChecking || arcConsistency;
+    if (backjumping) {
+        // Users already missing from the domain were removed by the pruners.
+        if (useDomains) {
+            System.arraycopy(pruners[step], 0, conflict[step], 0, stepWords);
+        } else {
+            Arrays.fill(conflict[step], 0L);
+        }
+    }
+    if (useDomains && leastConstrainingValue) {
+        valuesAt[depth] = leastConstrainingOrder(step);
+    } else {
+        valuesAt[depth] = random != null ? shuffledValues(step) : null;
+    }
+    cursor[depth] = firstValue(step, valuesAt[depth]);
+    valueIndex[depth] = 1;
+    lastValueAt[depth] = false;
+}
+
+private int nextValue(int step, int[] values, int i, int u) {
+    if (values != null) return i < values.length ? values[i] : -1;
+    if (forwardChecking || arcConsistency) return BitSets.nextSetBit(domains[step], u + 1);
+    return nextAuthorised(step, u + 1);
+}
+
+/*
+ * Hands the users of step after u to the splitter, keeping u for this worker
+ * @return false if there are none
+ */
+private boolean giveAway(int depth, int step, int[] values, int i, int u) {
+    int[] rest = new int[8];
+    int n = 0;
+    for (int v = nextValue(step, values, i, u), j = i + 1; v >= 0; v = nextValue(step, values, j++, v)) {
+        if (n == rest.length) rest = Arrays.copyOf(rest, n * 2);
+        rest[n++] = v;
+    }
+    if (n == 0) return false;
+    int[] steps = Arrays.copyOf(stepAt, depth);
+    int[] users = new int[depth];
+    for (int d = 0; d < depth; d++) users[d] = encoding[steps[d]];
+    splitter.split(steps, users, step, Arrays.copyOf(rest, n));
+    splits++;
+    return true;
+}
+
+private int firstValue(int step, int[] values) {
+    if (values != null) return values.length > 0 ? values[0] : -1;
+    if (forwardChecking || arcConsistency) return BitSets.nextSetBit(domains[step], 0);
+    return nextAuthorised(step, 0);
+}
+
+private int nextAuthorised(int step, int from) {
+    return BitSets.nextSetBit(authorisedUsers[step], from);
+}
+
+/*
+ * Checks or propagates encoding[step] = user. On failure the assigned steps to blame are
+ * added to the conflict set of step.
+ * @return false if the assignment fails
+ */
+private boolean tryValue(int step, int user) {
+    boolean ok;
+    if (arcConsistency) {
+        ok = assignAndPropagate(step, user);
+    } else if (forwardChecking) {
+        ok = propagate(step, user);
+    } else {
+        int culprit = conflictingStep(step);
+        ok = culprit < 0;
+        if (!ok && backjumping) BitSets.set(conflict[step], culprit);
+        return ok && !violatesNogood(step);
+    }
+    if (ok && usesAllDifferent()) {
+        ok = filterAllDifferent();
+    }
+    if (!ok && backjumping) {
+        for (int w = 0; w < stepWords; w++) conflict[step][w] |= explanation[w];
+        BitSets.clear(conflict[step], step);
+    }
+    return ok && !violatesNogood(step);
+}
+
+private boolean violatesNogood(int step) {
+    if (nogoods == null) return false;
+    int[] culprits = nogoods.violated(step, encoding, assigned);
+    if (culprits == null) return false;
+    for (int t : culprits) {
+        if (t != step) BitSets.set(conflict[step], t);
+    }
+    return true;
+}
+
+/*
+ * Called when every user of step has failed: learns the blamed assignments as a nogood and
+ * passes the conflict set on to the latest blamed step
+ * @return the depth of that step, or -1 if nothing is to blame (the instance is unsatisfiable)
+ */
+private int backjump(int step) {
+    long[] blamed = conflict[step];
+    int target = -1;
+    int count = 0;
+    for (int t = BitSets.nextSetBit(blamed, 0); t >= 0; t = BitSets.nextSetBit(blamed, t + 1)) {
+        count++;
+        if (target < 0 || depthOf[t] > depthOf[target]) target = t;
+    }
+    if (target < 0) return -1;
+    int[] steps = new int[count];
+    int[] users = new int[count];
+    int n = 0;
+    for (int t = BitSets.nextSetBit(blamed, 0); t >= 0; t = BitSets.nextSetBit(blamed, t + 1)) {
+        steps[n] = t;
+        users[n++] = encoding[t];
+    }
+    nogoods.add(steps, users);
+    nogoods.decay();
+    for (int w = 0; w < stepWords; w++) conflict[target][w] |= blamed[w];
+    BitSets.clear(conflict[target], target);
+    return depthOf[target];
+}
+
+/*
+ * Check the user of a step against every assigned step it shares a constraint with
+ * @return an assigned step it conflicts with, or -1
+ */
+private int conflictingStep(int step) {
+    int user = encoding[step];
+    int[] adjacent = neighbours[step];
+    for (int i = 0; i < adjacent.length; i++) {
+        int t = adjacent[i];
+        if (!assigned[t] || t == step) continue;
+        if (neighbourType[step][i] == ConstraintGraph.BLACK) {
+            if (encoding[t] != user) return t;
+        } else if (encoding[t] == user) {
+            return t;
+        }
+    }
+    return -1;
+}
+
+/*
+ * Removes the users that assigning user to step rules out from the domains of its unassigned
+ * neighbours: a RED neighbour loses that user, a BLACK neighbour keeps only that user
+ * @return false if some neighbour is left with no user
+ */
+private boolean propagate(int step, int user) {
+    int userWord = user >>> 6;
+    long userBit = 1L << user;
+    int[] adjacent = neighbours[step];
+    for (int i = 0; i < adjacent.length; i++) {
+        int t = adjacent[i];
+        if (assigned[t]) continue;
+        long[] domain = domains[t];
+        if (neighbourType[step][i] == ConstraintGraph.RED) {
+            if ((domain[userWord] & userBit) != 0) {
+                pushWord(t, userWord);
+                domain[userWord] &= ~userBit;
+                if (backjumping) addPruner(t, step);
+                if (BitSets.isEmpty(domain)) {
+                    edgeWeight[edgeId[step][i]]++;
+                    explain(t);
+                    return false;
+                }
+            }
+        } else {
+            if ((domain[userWord] & userBit) == 0) {
+                edgeWeight[edgeId[step][i]]++;
+                explain(t);
+                return false;
+            }
+            boolean changed = false;
+            for (int w = 0; w < userWords; w++) {
+                long keep = w == userWord ? userBit : 0L;
+                if (domain[w] != keep) {
+                    pushWord(t, w);
+                    domain[w] = keep;
+                    changed = true;
+                }
+            }
+            if (changed && backjumping) addPruner(t, step);
+        }
+    }
+    return true;
+}
+
+/*
+ * Reduces the domain of step to user and restores arc consistency from there
+ * @return false if some domain becomes empty
+ */
+private boolean assignAndPropagate(int step, int user) {
+    long[] domain = domains[step];
+    for (int w = 0; w < userWords; w++) {
+        long keep = w == user >>> 6 ? 1L << user : 0L;
+        if (domain[w] != keep) {
+            pushWord(step, w);
+            domain[w] = keep;
+        }
+    }
+    enqueue(step);
+    return propagateArcs();
+}
+
+private void enqueue(int step) {
+    if (!inQueue[step]) {
+        inQueue[step] = true;
+        queue[queueSize++] = step;
+    }
+}
+
+/*
+ * AC-3: revises the arcs (x, y) of every unassigned x towards each queued y until no domain
+ * changes. A step is queued again whenever its domain shrinks.
+ * @return false if some domain becomes empty; the queue is then cleared
+ */
+private boolean propagateArcs() {
+    while (queueSize > 0) {
+        int y = queue[--queueSize];
+        inQueue[y] = false;
+        int[] adjacent = neighbours[y];
+        for (int i = 0; i < adjacent.length; i++) {
+            int x = adjacent[i];
+            if (assigned[x] || !revise(x, y, neighbourType[y][i])) continue;
+            if (backjumping) {
+                // x lost users because of what y has left: blame whoever shaped y.
+                for (int w = 0; w < stepWords; w++) {
+                    long more = pruners[y][w] & ~pruners[x][w];
+                    if (more != 0) {
+                        pushPruner(x, w);
+                        pruners[x][w] |= more;
+                    }
+                }
+                if (assigned[y]) addPruner(x, y);
+            }
+            if (BitSets.isEmpty(domains[x])) {
+                edgeWeight[edgeId[y][i]]++;
+                explain(x);
+                while (queueSize > 0) inQueue[queue[--queueSize]] = false;
+                return false;
+            }
+            enqueue(x);
+        }
+    }
+    return true;
+}
+
+/*
+ * Removes the users of x that have no support in y
+ * @return true if the domain of x changed
  */
-private void backtracking(int stepIndex) {
-    if (stepIndex == numSteps) {
-        collectedEncodings.add(encoding.clone());
-        return;
+private boolean revise(int x, int y, int type) {
+    long[] dx = domains[x];
+    long[] dy = domains[y];
+    boolean changed = false;
+    if (type == ConstraintGraph.BLACK) {
+        for (int w = 0; w < userWords; w++) {
+            long kept = dx[w] & dy[w];
+            if (kept != dx[w]) {
+                pushWord(x, w);
+                dx[w] = kept;
+                changed = true;
+            }
+        }
+    } else if (BitSets.cardinality(dy) == 1) {
+        int u = BitSets.nextSetBit(dy, 0);
+        if (BitSets.get(dx, u)) {
+            pushWord(x, u >>> 6);
+            BitSets.clear(dx, u);
+            changed = true;
+        }
     }
+    return changed;
+}
 
-    for (int i = 0; i < numUsers; i++) {
-        if (authorisation[stepIndex][i] != 1){continue;}  // not allowed → skip
+private boolean usesAllDifferent() {
+    return allDifferent && (forwardChecking || arcConsistency);
+}
 
-        encoding[stepIndex] = i;
-        if (graph.AssignmentValidation(encoding, stepIndex)) {
-            backtracking(stepIndex + 1);
+private void findCliques() {
+    List<int[]> found = SodCliques.maximalCliques(graph, numSteps);
+    cliques = found.toArray(new int[0][]);
+    cliqueMatch = new int[cliques.length][];
+    int largest = 0;
+    for (int c = 0; c < cliques.length; c++) {
+        cliqueMatch[c] = new int[cliques[c].length];
+        Arrays.fill(cliqueMatch[c], -1);
+        largest = Math.max(largest, cliques[c].length);
+    }
+    cliqueDomain = new long[largest][userWords];
+    pathStep = new int[largest];
+    pathUser = new int[largest];
+    reachesFree = new boolean[largest];
+    sccIndex = new int[largest];
+    sccLow = new int[largest];
+    sccOf = new int[largest];
+    onStack = new boolean[largest];
+    sccStack = new int[largest];
+    callStack = new int[largest];
+}
+
+/*
+ * Filters every clique until none removes a user, re-running arc consistency after changes
+ * @return false if some clique cannot be matched or a domain becomes empty
+ */
+private boolean filterAllDifferent() {
+    boolean changed = true;
+    while (changed) {
+        changed = false;
+        for (int c = 0; c < cliques.length; c++) {
+            int result = filterClique(c);
+            if (result < 0) return false;
+            if (result > 0) changed = true;
+        }
+        if (changed && arcConsistency && !propagateArcs()) return false;
+    }
+    return true;
+}
+
+/*
+ * Régin's filter: finds a matching of the clique's steps to distinct users (an assigned
+ * step only has its user), then keeps a user u of step i only if i is matched to u, u is
+ * free, u's step can reach a free user along an alternating path, or i and u's step lie on
+ * a common alternating cycle (the same strongly connected component). The users and
+ * failures are blamed on everything that shaped the clique's domains.
+ * @return -1 if the clique cannot be matched, 1 if users were removed, 0 otherwise
+ */
+private int filterClique(int c) {
+    int[] steps = cliques[c];
+    int k = steps.length;
+    int[] match = cliqueMatch[c];
+    boolean open = false;
+    for (int i = 0; i < k; i++) {
+        int t = steps[i];
+        if (assigned[t]) {
+            Arrays.fill(cliqueDomain[i], 0L);
+            BitSets.set(cliqueDomain[i], encoding[t]);
+        } else {
+            System.arraycopy(domains[t], 0, cliqueDomain[i], 0, userWords);
+            open = true;
+        }
+    }
+    if (!open) return 0;
+    // Keep what is left of the previous matching, then augment the rest.
+    for (int i = 0; i < k; i++) {
+        int u = match[i];
+        if (u >= 0 && BitSets.get(cliqueDomain[i], u) && userMatch[u] < 0) {
+            userMatch[u] = i;
+        } else {
+            match[i] = -1;
+        }
+    }
+    boolean matched = true;
+    for (int i = 0; i < k && matched; i++) {
+        if (match[i] < 0) matched = augment(i, k, match);
+    }
+    if (!matched) {
+        clearUserMatch(k, match);
+        explainClique(steps);
+        return -1;
+    }
+    markReachesFree(k, match);
+    stronglyConnectedComponents(k, match);
+    int result = 0;
+    for (int i = 0; i < k; i++) {
+        int t = steps[i];
+        if (assigned[t]) continue;
+        long[] domain = domains[t];
+        for (int u = BitSets.nextSetBit(domain, 0); u >= 0; u = BitSets.nextSetBit(domain, u + 1)) {
+            int j = userMatch[u];
+            if (u == match[i] || j < 0 || reachesFree[j] || sccOf[j] == sccOf[i]) continue;
+            if (result == 0 && backjumping) explainClique(steps);
+            pushWord(t, u >>> 6);
+            BitSets.clear(domain, u);
+            if (backjumping) {
+                for (int w = 0; w < stepWords; w++) {
+                    long more = explanation[w] & ~pruners[t][w];
+                    if (more != 0) {
+                        pushPruner(t, w);
+                        pruners[t][w] |= more;
+                    }
+                }
+            }
+            if (arcConsistency) enqueue(t);
+            result = 1;
+        }
+    }
+    clearUserMatch(k, match);
+    return result;
+}
+
+/*
+ * Kuhn's augmenting-path search from clique position root, on an explicit stack
+ * @return false if root cannot be matched without unmatching another position
+ */
+private boolean augment(int root, int k, int[] match) {
+    visitStamp++;
+    int depth = 0;
+    pathStep[0] = root;
+    pathUser[0] = -1;
+    while (depth >= 0) {
+        int i = pathStep[depth];
+        int u = BitSets.nextSetBit(cliqueDomain[i], pathUser[depth] + 1);
+        while (u >= 0 && userVisited[u] == visitStamp) u = BitSets.nextSetBit(cliqueDomain[i], u + 1);
+        if (u < 0) {
+            depth--;
+            continue;
+        }
+        pathUser[depth] = u;
+        userVisited[u] = visitStamp;
+        int j = userMatch[u];
+        if (j < 0) {
+            for (int d = depth; d >= 0; d--) {
+                match[pathStep[d]] = pathUser[d];
+                userMatch[pathUser[d]] = pathStep[d];
+            }
+            return true;
+        }
+        depth++;
+        pathStep[depth] = j;
+        pathUser[depth] = -1;
+    }
+    return false;
+}
+
+/*
+ * reachesFree[j]: from position j an alternating path (another user of j, that user's
+ * position, ...) ends at an unmatched user. Found backwards from the unmatched users.
+ */
+private void markReachesFree(int k, int[] match) {
+    Arrays.fill(reachesFree, 0, k, false);
+    int head = 0, tail = 0;
+    for (int i = 0; i < k; i++) {
+        long[] domain = cliqueDomain[i];
+        for (int u = BitSets.nextSetBit(domain, 0); u >= 0; u = BitSets.nextSetBit(domain, u + 1)) {
+            if (userMatch[u] < 0) {
+                reachesFree[i] = true;
+                userQueue[tail++] = match[i];
+                break;
+            }
+        }
+    }
+    while (head < tail) {
+        int u = userQueue[head++];
+        for (int i = 0; i < k; i++) {
+            if (!reachesFree[i] && match[i] != u && BitSets.get(cliqueDomain[i], u)) {
+                reachesFree[i] = true;
+                userQueue[tail++] = match[i];
+            }
+        }
+    }
+}
+
+/*
+ * Tarjan's algorithm, on an explicit stack, over the clique positions, with an arc i -> j
+ * when a user of i other than its own is matched to j
+ */
+private void stronglyConnectedComponents(int k, int[] match) {
+    Arrays.fill(sccIndex, 0, k, -1);
+    int counter = 0, components = 0, stackTop = 0;
+    for (int root = 0; root < k; root++) {
+        if (sccIndex[root] >= 0) continue;
+        int calls = 0;
+        callStack[calls++] = root;
+        sccIndex[root] = sccLow[root] = counter++;
+        sccStack[stackTop++] = root;
+        onStack[root] = true;
+        pathUser[root] = -1;
+        while (calls > 0) {
+            int i = callStack[calls - 1];
+            int u = BitSets.nextSetBit(cliqueDomain[i], pathUser[i] + 1);
+            if (u >= 0) {
+                pathUser[i] = u;
+                int j = userMatch[u];
+                if (u == match[i] || j < 0) continue;
+                if (sccIndex[j] < 0) {
+                    sccIndex[j] = sccLow[j] = counter++;
+                    sccStack[stackTop++] = j;
+                    onStack[j] = true;
+                    pathUser[j] = -1;
+                    callStack[calls++] = j;
+                } else if (onStack[j]) {
+                    sccLow[i] = Math.min(sccLow[i], sccIndex[j]);
+                }
+                continue;
+            }
+            calls--;
+            if (calls > 0) {
+                int parent = callStack[calls - 1];
+                sccLow[parent] = Math.min(sccLow[parent], sccLow[i]);
+            }
+            if (sccLow[i] == sccIndex[i]) {
+                int j;
+                do {
+                    j = sccStack[--stackTop];
+                    onStack[j] = false;
+                    sccOf[j] = components;
+                } while (j != i);
+                components++;
+            }
+        }
+    }
+}
+
+private void clearUserMatch(int k, int[] match) {
+    for (int i = 0; i < k; i++) {
+        if (match[i] >= 0) userMatch[match[i]] = -1;
+    }
+}
+
+/*
+ * Blames a clique's filtering on its assigned steps and on the pruners of the others
+ */
+private void explainClique(int[] steps) {
+    if (!backjumping) return;
+    Arrays.fill(explanation, 0L);
+    for (int t : steps) {
+        if (assigned[t]) {
+            BitSets.set(explanation, t);
+        } else {
+            for (int w = 0; w < stepWords; w++) explanation[w] |= pruners[t][w];
+        }
+    }
+}
+
+/*
+ * Users of step sorted by the number of users they remove from its unassigned neighbours:
+ * one for a RED neighbour that has the user, all the others for a BLACK neighbour, and a
+ * wipe-out (sorted last) for a BLACK neighbour that does not
+ */
+private int[] leastConstrainingOrder(int step) {
+    long[] domain = domains[step];
+    int[] adjacent = neighbours[step];
+    int[] size = new int[adjacent.length];
+    for (int i = 0; i < adjacent.length; i++) {
+        if (!assigned[adjacent[i]]) size[i] = BitSets.cardinality(domains[adjacent[i]]);
+    }
+    int[] users = new int[BitSets.cardinality(domain)];
+    int n = 0;
+    for (int u = BitSets.nextSetBit(domain, 0); u >= 0; u = BitSets.nextSetBit(domain, u + 1)) {
+        users[n++] = u;
+    }
+    shuffle(users);
+    long[] keyed = new long[n];
+    for (int j = 0; j < n; j++) {
+        int u = users[j];
+        long removed = 0;
+        for (int i = 0; i < adjacent.length; i++) {
+            int t = adjacent[i];
+            if (assigned[t]) continue;
+            boolean has = BitSets.get(domains[t], u);
+            if (neighbourType[step][i] == ConstraintGraph.RED) {
+                if (has) removed++;
+            } else {
+                removed += has ? size[i] - 1 : numUsers;
+            }
+        }
+        keyed[j] = (removed << 32) | j;
+    }
+    Arrays.sort(keyed);
+    int[] values = new int[n];
+    for (int i = 0; i < n; i++) values[i] = users[(int) keyed[i]];
+    return values;
+}
+
+/*
+ * The users of step in random order
+ */
+private int[] shuffledValues(int step) {
+    int[] users = new int[numUsers];
+    int n = 0;
+    for (int u = firstValue(step, null); u >= 0; u = nextValue(step, null, 0, u)) {
+        users[n++] = u;
+    }
+    users = Arrays.copyOf(users, n);
+    shuffle(users);
+    return users;
+}
+
+private void shuffle(int[] items) {
+    if (random == null) return;
+    for (int i = items.length - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        int item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+    }
+}
+
+private void addPruner(int step, int pruner) {
+    int w = pruner >>> 6;
+    if ((pruners[step][w] & (1L << pruner)) == 0) {
+        pushPruner(step, w);
+        pruners[step][w] |= 1L << pruner;
+    }
+}
+
+/*
+ * The users missing from the domain of step are exactly those its pruners removed
+ */
+private void explain(int step) {
+    if (backjumping) System.arraycopy(pruners[step], 0, explanation, 0, stepWords);
+}
+
+private void pushWord(int step, int word) {
+    push(step * userWords + word, domains[step][word]);
+}
+
+private void pushPruner(int step, int word) {
+    push(domainWords + step * stepWords + word, pruners[step][word]);
+}
+
+private void push(int index, long old) {
+    if (trailTop == trailIndex.length) {
+        trailIndex = Arrays.copyOf(trailIndex, trailTop * 2);
+        trailWord = Arrays.copyOf(trailWord, trailTop * 2);
+    }
+    trailIndex[trailTop] = index;
+    trailWord[trailTop] = old;
+    trailTop++;
+}
+
+private void undoTrail(int mark) {
+    while (trailTop > mark) {
+        trailTop--;
+        int index = trailIndex[trailTop];
+        if (index < domainWords) {
+            domains[index / userWords][index % userWords] = trailWord[trailTop];
+        } else {
+            index -= domainWords;
+            pruners[index / stepWords][index % stepWords] = trailWord[trailTop];
+        }
+    }
+}
+
+/*
+ * The step to assign at the given depth: fixed by the ordering, or chosen from the current
+ * state for the adaptive orderings
+ */
+private int nextStep(int depth) {
+    if (ordering == StepOrdering.DSATUR) return mostSaturatedStep();
+    if (ordering == StepOrdering.DOM_WDEG) return smallestDomainOverWeightedDegree();
+    return order[depth];
+}
+
+/*
+ * dom/wdeg choice: the unassigned step with the smallest ratio of remaining users (all
+ * authorised users when no domains are kept) to the summed weight of its constraints with
+ * unassigned steps
+ */
+private int smallestDomainOverWeightedDegree() {
+    boolean useDomains = forwardChecking || arcConsistency;
+    int best = -1;
+    long bestDom = 0;
+    long bestWdeg = 1;
+    int ties = 0;
+    for (int s = 0; s < numSteps; s++) {
+        if (assigned[s]) continue;
+        long dom = useDomains ? BitSets.cardinality(domains[s]) : authorisedCount[s];
+        long wdeg = 0;
+        for (int i = 0; i < neighbours[s].length; i++) {
+            if (!assigned[neighbours[s][i]]) wdeg += edgeWeight[edgeId[s][i]];
+        }
+        wdeg = Math.max(1, wdeg);
+        if (best < 0 || dom * bestWdeg < bestDom * wdeg) {
+            ties = 1;
+        } else if (random == null || dom * bestWdeg != bestDom * wdeg || random.nextInt(++ties) != 0) {
+            // Worse, or tied and not picked: each tied step is kept with equal chance.
+            continue;
+        }
+        best = s;
+        bestDom = dom;
+        bestWdeg = wdeg;
+    }
+    return best;
+}
+
+/*
+ * DSatur choice: the unassigned step with an assigned BoD neighbour (its user is forced),
+ * otherwise the one whose assigned SoD neighbours use the most distinct users
+ * @return the step to assign next
+ */
+private int mostSaturatedStep() {
+    int best = -1;
+    boolean bestBound = false;
+    int bestSaturation = -1;
+    int ties = 0;
+    for (int s = 0; s < numSteps; s++) {
+        if (assigned[s]) continue;
+        boolean bound = false;
+        int saturation = 0;
+        stamp++;
+        for (int i = 0; i < neighbours[s].length; i++) {
+            int t = neighbours[s][i];
+            if (!assigned[t]) continue;
+            if (neighbourType[s][i] == ConstraintGraph.BLACK) {
+                bound = true;
+            } else if (userStamp[encoding[t]] != stamp) {
+                userStamp[encoding[t]] = stamp;
+                saturation++;
+            }
+        }
+        if (best < 0 || StepOrdering.better(bound, saturation, redDegree[s], authorisedCount[s],
+                bestBound, bestSaturation, redDegree[best], authorisedCount[best])) {
+            ties = 1;
+        } else if (random == null || StepOrdering.better(bestBound, bestSaturation, redDegree[best],
+                authorisedCount[best], bound, saturation, redDegree[s], authorisedCount[s])
+                || random.nextInt(++ties) != 0) {
+            continue;
         }
+        best = s;
+        bestBound = bound;
+        bestSaturation = saturation;
     }
+    return best;
 }
 
 
 /**
- * Get all found solutions
+ * Get all solutions found by the last runBacktracking()
  * @return List of solutions, where each solution is an array of user assignments
  */
 public List<int[]> getSolutions() {
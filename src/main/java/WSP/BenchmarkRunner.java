@@ -44,7 +44,7 @@ public class BenchmarkRunner {
                         WSPOrchestrator orch = new WSPOrchestrator(graph, auth, n, k);
                         List<int[]> pbtResults = orch.solve();
                         long s1 = System.nanoTime();
-                        boolean pbtFound = pbtResults.stream().anyMatch(x -> x != null);
+                        boolean pbtFound = !pbtResults.isEmpty();
                         out.printf("PBT,%d,%d,%.2f,%.2f,%.3f,%b%n",
                                 n, k, pBR, pAuth, (s1 - s0) / 1e6, pbtFound);
         
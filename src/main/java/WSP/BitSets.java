@@ -0,0 +1,65 @@
+package WSP;
+
+/**
+ * Static helpers for fixed-size bitsets stored as {@code long[]} words.
+ * Used by the solvers for step and user sets, where {@link java.util.BitSet}
+ * would add bounds checks and resizing to the innermost loops.
+ */
+public final class BitSets {
+
+    private BitSets() {}
+
+    /** Number of 64-bit words needed to hold {@code n} bits. */
+    public static int words(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    public static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    public static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    public static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /** Words {@code [offset, offset + words)} of {@code a} and {@code b} share no bit. */
+    public static boolean disjoint(long[] a, int aOffset, long[] b, int bOffset, int words) {
+        for (int w = 0; w < words; w++) {
+            if ((a[aOffset + w] & b[bOffset + w]) != 0) return false;
+        }
+        return true;
+    }
+
+    public static boolean isEmpty(long[] bits) {
+        for (long word : bits) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    public static int cardinality(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Index of the first set bit at or after {@code from}, or -1 if there is none.
+     */
+    public static int nextSetBit(long[] bits, int from) {
+        int w = from >>> 6;
+        if (w >= bits.length) return -1;
+        long word = bits[w] & (-1L << from);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == bits.length) return -1;
+            word = bits[w];
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package WSP;
+
+import java.util.Arrays;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+/**
+ * Contracts every group of steps joined by BoD (BLACK) constraints into one super-step.
+ * The steps of a group must all get the same user, so the group behaves as a single step
+ * whose authorised users are those authorised for every member, and whose SoD (RED)
+ * constraints are those of its members. The reduced instance has no BLACK edges and
+ * usually far fewer steps; a solution of it gives each member the user of its super-step.
+ *
+ * Super-steps are numbered in the order of their smallest member step. A RED edge inside
+ * a group, or a group without a common authorised user, makes the instance unsatisfiable,
+ * which {@link #isUnsatisfiable()} reports before any search.
+ */
+public class BodContraction {
+    private final int numSteps;
+    private final int[] superStepOf;
+    private final int[][] members;
+    private final WSPInstance reduced;
+    private final boolean contradiction;
+    private final boolean unauthorised;
+
+    public BodContraction(ConstraintGraph graph, int numSteps, int numUsers, int[][] authorised) {
+        this(new WSPInstance(graph, numSteps, numUsers, authorised));
+    }
+
+    public BodContraction(WSPInstance instance) {
+        this.numSteps = instance.numSteps();
+        FrozenConstraintGraph view = instance.view();
+
+        // Union-find over the BLACK edges, with path halving and union by size.
+        int[] parent = new int[numSteps];
+        int[] groupSize = new int[numSteps];
+        for (int s = 0; s < numSteps; s++) {
+            parent[s] = s;
+            groupSize[s] = 1;
+        }
+        for (int s = 0; s < numSteps; s++) {
+            for (int t : view.neighbours(s, ConstraintGraph.BLACK)) {
+                int a = find(parent, s), b = find(parent, t);
+                if (a == b) continue;
+                if (groupSize[a] < groupSize[b]) {
+                    int swap = a;
+                    a = b;
+                    b = swap;
+                }
+                parent[b] = a;
+                groupSize[a] += groupSize[b];
+            }
+        }
+
+        this.superStepOf = new int[numSteps];
+        int[] superStepOfRoot = new int[numSteps];
+        Arrays.fill(superStepOfRoot, -1);
+        int count = 0;
+        for (int s = 0; s < numSteps; s++) {
+            int root = find(parent, s);
+            if (superStepOfRoot[root] < 0) superStepOfRoot[root] = count++;
+            superStepOf[s] = superStepOfRoot[root];
+        }
+        int[] filled = new int[count];
+        this.members = new int[count][];
+        for (int s = 0; s < numSteps; s++) {
+            int c = superStepOf[s];
+            if (members[c] == null) members[c] = new int[groupSize[find(parent, s)]];
+            members[c][filled[c]++] = s;
+        }
+
+        long[][] rows = new long[count][];
+        boolean empty = false;
+        for (int c = 0; c < count; c++) {
+            long[] row = instance.stepUsers(members[c][0]);
+            for (int i = 1; i < members[c].length; i++) {
+                long[] other = instance.stepUsers(members[c][i]);
+                for (int w = 0; w < row.length; w++) row[w] &= other[w];
+            }
+            rows[c] = row;
+            empty |= BitSets.isEmpty(row);
+        }
+        this.unauthorised = empty;
+
+        ConstraintGraph graph = new ConstraintGraph(count);
+        boolean redInside = false;
+        for (int s = 0; s < numSteps; s++) {
+            if (view.getConstraintType(s, s) == ConstraintGraph.RED) redInside = true;
+            for (int t : view.neighbours(s, ConstraintGraph.RED)) {
+                if (t < s) continue;
+                int a = superStepOf[s], b = superStepOf[t];
+                if (a == b) {
+                    redInside = true;
+                } else {
+                    graph.addConstraintEdge(a, b, ConstraintGraph.RED);
+                }
+            }
+        }
+        this.contradiction = redInside;
+        this.reduced = new WSPInstance(graph, count, instance.numUsers(), rows);
+    }
+
+    private static int find(int[] parent, int s) {
+        while (parent[s] != s) {
+            parent[s] = parent[parent[s]];
+            s = parent[s];
+        }
+        return s;
+    }
+
+    /** Number of super-steps. */
+    public int size() {
+        return members.length;
+    }
+
+    /** Super-step that {@code step} was contracted into. */
+    public int superStepOf(int step) {
+        return superStepOf[step];
+    }
+
+    /** Steps of super-step {@code c}, in index order. */
+    public int[] members(int c) {
+        return members[c].clone();
+    }
+
+    /** The contracted instance over the super-steps. */
+    public WSPInstance instance() {
+        return reduced;
+    }
+
+    /** Constraint graph of the super-steps: the RED edges of their members, and no BLACK edges. */
+    public ConstraintGraph graph() {
+        return reduced.graph();
+    }
+
+    /** {@code [superStep][user]} authorisation: a user is authorised for every member or not at all. */
+    public int[][] authorisation() {
+        return reduced.authorisation();
+    }
+
+    /** Whether some group of BoD-joined steps is also joined by an SoD constraint. */
+    public boolean hasContradiction() {
+        return contradiction;
+    }
+
+    /** Whether the instance is unsatisfiable on its face: a contradiction, or a super-step nobody may perform. */
+    public boolean isUnsatisfiable() {
+        return contradiction || unauthorised;
+    }
+
+    /**
+     * Gives every step the user of its super-step.
+     *
+     * @param reduced a solution of the reduced instance, or {@code null}
+     * @return the step-to-user encoding of the workflow, or {@code null} if {@code reduced} is
+     */
+    public int[] expand(int[] reduced) {
+        if (reduced == null) return null;
+        int[] encoding = new int[numSteps];
+        for (int s = 0; s < numSteps; s++) {
+            encoding[s] = reduced[superStepOf[s]];
+        }
+        return encoding;
+    }
+}
@@ -0,0 +1,105 @@
+package WSP;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs work items on a fork/join pool with at most {@code parallelism} of them in progress
+ * at once, so a search on a pool shared between requests keeps to its own request's
+ * limit however many threads the pool has. Items submitted while every slot is taken wait
+ * in a queue; a worker keeps taking queued items until none are left, and a slot that
+ * frees up while items are waiting is taken again. Items may submit further items.
+ */
+public final class BoundedWork<T> {
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final Consumer<T> action;
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final ConcurrentLinkedQueue<ForkJoinTask<?>> workers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param pool        pool the workers run on; not shut down
+     * @param parallelism most items in progress at once, at least 1
+     * @param action      processes one item
+     */
+    public BoundedWork(ForkJoinPool pool, int parallelism, Consumer<T> action) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.action = action;
+    }
+
+    /** Processes {@code root} and everything submitted while processing it, and waits for all of it. */
+    public void run(T root) {
+        run(Collections.singletonList(root));
+    }
+
+    /**
+     * Processes {@code items} and everything submitted while processing them, and waits for all of it.
+     * An exception thrown by an item is rethrown once the workers have stopped.
+     */
+    public void run(Collection<? extends T> items) {
+        for (T item : items) submit(item);
+        // A worker is only started by an item or a worker still running, so once the
+        // queue of workers is drained no work is left.
+        ForkJoinTask<?> worker;
+        while ((worker = workers.poll()) != null) {
+            worker.join();
+        }
+    }
+
+    /** Queues {@code item}, starting a worker for it if a slot is free. */
+    public void submit(T item) {
+        pending.add(item);
+        queued.incrementAndGet();
+        if (!acquire()) return;
+        ForkJoinTask<?> worker = ForkJoinTask.adapt(this::work);
+        workers.add(worker);
+        if (ForkJoinTask.getPool() == pool) {
+            worker.fork();
+        } else {
+            pool.execute(worker);
+        }
+    }
+
+    /** Queued items beyond what the free slots would take at once; negative while slots are idle. */
+    public int surplus() {
+        return queued.get() - (parallelism - active.get());
+    }
+
+    private boolean acquire() {
+        while (true) {
+            int taken = active.get();
+            if (taken >= parallelism) return false;
+            if (active.compareAndSet(taken, taken + 1)) return true;
+        }
+    }
+
+    private void work() {
+        boolean holding = true;
+        try {
+            while (holding) {
+                T item;
+                while ((item = pending.poll()) != null) {
+                    queued.decrementAndGet();
+                    action.accept(item);
+                }
+                active.decrementAndGet();
+                holding = false;
+                // An item queued after the last poll may have found every slot taken.
+                holding = !pending.isEmpty() && acquire();
+            }
+        } finally {
+            if (holding) active.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package WSP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+/**
+ * Splits a workflow into the connected components of its constraint graph. Steps in
+ * different components share no SoD or BoD constraint, and there is no limit on how many
+ * steps a user may take, so the components can be solved as separate instances: a
+ * solution of the workflow is any choice of one solution per component, and the number
+ * of solutions is the product of the components' counts.
+ *
+ * Steps without any constraint are gathered into one extra component rather than solved
+ * one by one. Inside a component steps keep their index order, and the component's
+ * sub-instance numbers them {@code 0..size-1} in that order.
+ */
+public class ComponentDecomposition {
+    private final int numSteps;
+    private final List<int[]> components = new ArrayList<>();
+    private final int[] componentOf;
+    private final int[] localIndex;
+    private final ConstraintGraph[] graphs;
+    private SearchContext context;
+
+    /**
+     * Solves one component; {@code null} means the component has no solution, or that the
+     * search stopped on {@code context}, which the solver must poll.
+     */
+    @FunctionalInterface
+    public interface ComponentSolver {
+        int[] solve(WSPInstance component, int parallelism, SearchContext context);
+    }
+
+    /** Counts the solutions of one component. */
+    @FunctionalInterface
+    public interface ComponentCounter {
+        long count(ConstraintGraph graph, int numSteps, int[][] authorised);
+    }
+
+    public ComponentDecomposition(ConstraintGraph graph, int numSteps) {
+        this.numSteps = numSteps;
+        this.componentOf = new int[numSteps];
+        this.localIndex = new int[numSteps];
+        Arrays.fill(componentOf, -1);
+        FrozenConstraintGraph view = graph.freeze();
+        int words = Math.max(1, BitSets.words(numSteps));
+        List<Integer> isolated = new ArrayList<>();
+        int[] queue = new int[numSteps];
+        for (int s = 0; s < numSteps; s++) {
+            if (componentOf[s] >= 0) continue;
+            int c = components.size();
+            long[] members = new long[words];
+            int head = 0, tail = 0;
+            queue[tail++] = s;
+            componentOf[s] = c;
+            while (head < tail) {
+                int u = queue[head++];
+                BitSets.set(members, u);
+                for (int type : new int[]{ConstraintGraph.RED, ConstraintGraph.BLACK}) {
+                    long[] mask = view.neighbourMask(u, type, words);
+                    for (int v = BitSets.nextSetBit(mask, 0); v >= 0; v = BitSets.nextSetBit(mask, v + 1)) {
+                        if (componentOf[v] < 0) {
+                            componentOf[v] = c;
+                            queue[tail++] = v;
+                        }
+                    }
+                }
+            }
+            if (tail == 1) {
+                componentOf[s] = -1;
+                isolated.add(s);
+                continue;
+            }
+            int[] steps = new int[tail];
+            int i = 0;
+            for (int v = BitSets.nextSetBit(members, 0); v >= 0; v = BitSets.nextSetBit(members, v + 1)) {
+                steps[i++] = v;
+            }
+            components.add(steps);
+        }
+        if (!isolated.isEmpty()) {
+            int[] steps = new int[isolated.size()];
+            for (int i = 0; i < steps.length; i++) steps[i] = isolated.get(i);
+            components.add(steps);
+        }
+        this.graphs = new ConstraintGraph[components.size()];
+        for (int c = 0; c < components.size(); c++) {
+            int[] steps = components.get(c);
+            for (int i = 0; i < steps.length; i++) {
+                componentOf[steps[i]] = c;
+                localIndex[steps[i]] = i;
+            }
+            ConstraintGraph sub = new ConstraintGraph(steps.length);
+            for (int i = 0; i < steps.length; i++) {
+                for (int j = i + 1; j < steps.length; j++) {
+                    int type = view.getConstraintType(steps[i], steps[j]);
+                    if (type >= 0) sub.addConstraintEdge(i, j, type);
+                }
+            }
+            graphs[c] = sub;
+        }
+    }
+
+    /**
+     * Deadline and cancellation the component solvers are handed. Components solved at
+     * once share a child of it, which is cancelled as soon as one component turns out to
+     * have no solution, so the others stop instead of running to the deadline.
+     */
+    public void setContext(SearchContext context) {
+        this.context = context;
+    }
+
+    /** Number of components. */
+    public int size() {
+        return components.size();
+    }
+
+    /** Steps of component {@code c}, in index order. */
+    public int[] steps(int c) {
+        return components.get(c).clone();
+    }
+
+    /** Constraint graph of component {@code c}, over its steps renumbered {@code 0..size-1}. */
+    public ConstraintGraph graph(int c) {
+        return graphs[c];
+    }
+
+    /** Rows of {@code authorised} for the steps of component {@code c}. */
+    public int[][] authorisation(int c, int[][] authorised) {
+        int[] steps = components.get(c);
+        int[][] rows = new int[steps.length][];
+        for (int i = 0; i < steps.length; i++) rows[i] = authorised[steps[i]];
+        return rows;
+    }
+
+    /**
+     * Sub-instance of component {@code c}: its graph and the users of its steps in
+     * {@code whole}, over the same users.
+     */
+    public WSPInstance instance(int c, WSPInstance whole) {
+        int[] steps = components.get(c);
+        long[][] rows = new long[steps.length][];
+        for (int i = 0; i < steps.length; i++) rows[i] = whole.stepUsers(steps[i]);
+        return new WSPInstance(graphs[c], steps.length, whole.numUsers(), rows);
+    }
+
+    /** Number of steps in the largest component. */
+    public int largestComponent() {
+        int largest = 0;
+        for (int[] steps : components) largest = Math.max(largest, steps.length);
+        return largest;
+    }
+
+    /**
+     * Solves every component and concatenates their solutions into one step-to-user
+     * encoding of the whole workflow. With one component the solver is handed the full
+     * parallelism; otherwise up to {@code parallelism} components are solved at once,
+     * each with one thread.
+     *
+     * @return the encoding, or {@code null} if some component has no solution.
+     */
+    public int[] solveFirst(WSPInstance whole, ComponentSolver solver, int parallelism) {
+        if (size() == 1 || parallelism <= 1) {
+            return solveInOrder(whole, solver, size() == 1 ? parallelism : 1);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return solveFirst(whole, solver, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Same as {@link #solveFirst(WSPInstance, ComponentSolver, int)}, but solves the components
+     * on {@code pool}, which the caller owns and may share between searches. A single
+     * component is handed the pool's parallelism.
+     */
+    public int[] solveFirst(WSPInstance whole, ComponentSolver solver, ForkJoinPool pool) {
+        return solveFirst(whole, solver, pool, pool.getParallelism());
+    }
+
+    /**
+     * Same as {@link #solveFirst(WSPInstance, ComponentSolver, ForkJoinPool)}, with at most
+     * {@code parallelism} components solved on the pool at once; a single component is
+     * handed {@code parallelism}.
+     */
+    public int[] solveFirst(WSPInstance whole, ComponentSolver solver, ForkJoinPool pool, int parallelism) {
+        if (size() == 1 || parallelism <= 1) {
+            return solveInOrder(whole, solver, size() == 1 ? parallelism : 1);
+        }
+        int[][] parts = new int[size()][];
+        List<Integer> all = new ArrayList<>();
+        for (int c = 0; c < size(); c++) all.add(c);
+        SearchContext scope = context != null ? context.child() : SearchContext.unlimited();
+        try {
+            new BoundedWork<Integer>(pool, parallelism, c -> {
+                if (scope.shouldStop()) return;
+                parts[c] = solver.solve(instance(c, whole), 1, scope);
+                // The workflow has no solution either, so the other components can stop.
+                if (parts[c] == null) scope.cancel();
+            }).run(all);
+        } finally {
+            scope.close();
+        }
+        for (int[] part : parts) {
+            if (part == null) return null;
+        }
+        return combine(parts);
+    }
+
+    private int[] solveInOrder(WSPInstance whole, ComponentSolver solver, int parallelism) {
+        int[][] parts = new int[size()][];
+        for (int c = 0; c < size(); c++) {
+            parts[c] = solver.solve(instance(c, whole), parallelism, context);
+            if (parts[c] == null) return null;
+        }
+        return combine(parts);
+    }
+
+    /**
+     * Counts the solutions of the workflow as the product of the components' counts.
+     *
+     * @throws ArithmeticException if the count overflows a {@code long}.
+     */
+    public long countSolutions(int[][] authorised, ComponentCounter counter) {
+        long total = 1;
+        for (int c = 0; c < size() && total != 0; c++) {
+            total = Math.multiplyExact(total,
+                    counter.count(graphs[c], components.get(c).length, authorisation(c, authorised)));
+        }
+        return total;
+    }
+
+    /**
+     * Writes the per-component encodings {@code parts[c]} back to the workflow's step numbering.
+     */
+    public int[] combine(int[][] parts) {
+        int[] encoding = new int[numSteps];
+        for (int s = 0; s < numSteps; s++) {
+            encoding[s] = parts[componentOf[s]][localIndex[s]];
+        }
+        return encoding;
+    }
+}
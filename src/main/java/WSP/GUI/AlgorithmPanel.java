@@ -6,6 +6,7 @@ import WSP.WSPCSPEncoder;
 import WSP.WSPSATEncoder;
 import WSP.WSPUtils;
 import WSP.Backtracking.WSPBacktracking;
+import WSP.PBT.PartitionAuthorizer;
 import WSP.PBT.WSPOrchestrator;
 import WSP.VertexCover.ConstraintGraph;
 
@@ -13,6 +14,7 @@ import java.awt.*;
 import java.awt.event.*;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.BiConsumer;
 
@@ -113,7 +115,22 @@ public class AlgorithmPanel extends JPanel {
         // 4) Run the orchestrator
         WSPOrchestrator orchestrator =
             new WSPOrchestrator(graph, stepByUser, numSteps, numUsers);
-        orchestrator.solve();
+        List<int[]> matchings = orchestrator.solve((partition, matching) -> {
+            System.out.println(PartitionAuthorizer.matchingToString(partition, matching));
+            int[] stepEncoding = new int[numSteps];
+            for (int b = 0; b < partition.size(); b++) {
+                for (int step : partition.get(b)) {
+                    stepEncoding[step] = matching[b];
+                }
+            }
+            System.out.println("Step-based encoding = " + Arrays.toString(stepEncoding));
+        });
+        if (matchings.isEmpty()) {
+            System.out.println(
+                "WSP instance is unsatisfiable: no valid assignment was found " +
+                "for any partition with the given constraints and authorization matrix."
+            );
+        }
 
         System.out.flush();
         System.setOut(oldOut);
@@ -0,0 +1,15 @@
+package WSP.PBT;
+
+/**
+ * Matches the blocks of a partition to distinct users. {@code blockUsers[b]} is the bitset
+ * of users authorized for every step of block {@code b}, with {@code numUsers} meaningful bits.
+ * Implementations are free to keep scratch state between calls and are not thread-safe.
+ */
+public interface BlockUserMatcher {
+
+    /**
+     * @return blockToUser, where blockToUser[b] is the user matched to block b,
+     *         or {@code null} if no matching covers every block.
+     */
+    int[] match(long[][] blockUsers, int numBlocks, int numUsers);
+}
@@ -0,0 +1,125 @@
+package WSP.PBT;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import WSP.BitSets;
+
+/**
+ * Nogoods learned from failed block-user matchings. A nogood is a list of step groups
+ * whose common authorized users number fewer than the groups (a Hall violator), so no
+ * partial partition may put every group inside its own, distinct block. Nogoods depend
+ * only on the authorization matrix, so they stay valid in every branch of the search.
+ *
+ * Groups are stored flat, {@code stepWords} words per group. Steps are numbered by their
+ * position in the search order, and each nogood is indexed by its highest position: the
+ * step whose placement completes it.
+ */
+public class HallNogoodStore {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final int stepWords;
+    private final int capacity;
+    private final List<List<long[]>> byLastStep;
+    private final long[] usedBlocks;
+    private int size;
+    private long prunes;
+
+    public HallNogoodStore(int numSteps, int capacity) {
+        this.stepWords = Math.max(1, BitSets.words(numSteps));
+        this.capacity = capacity;
+        this.byLastStep = new ArrayList<>(numSteps);
+        for (int s = 0; s < numSteps; s++) {
+            byLastStep.add(new ArrayList<>());
+        }
+        this.usedBlocks = new long[stepWords];
+    }
+
+    /**
+     * Records a nogood. Ignored once the store is full.
+     * @param groups the step groups, {@code stepWords} words each
+     */
+    public void add(long[] groups) {
+        if (size == capacity) return;
+        int last = -1;
+        for (int w = 0; w < groups.length; w++) {
+            if (groups[w] != 0) {
+                last = Math.max(last, ((w % stepWords) << 6) + 63 - Long.numberOfLeadingZeros(groups[w]));
+            }
+        }
+        byLastStep.get(last).add(groups);
+        size++;
+    }
+
+    /**
+     * Checks the nogoods completed by placing {@code step}.
+     * @param blocks  the partition's blocks, {@code stepWords} words each
+     * @param blockOf blockOf[s] = block of every placed step s
+     * @return {@code true} if some nogood has each of its groups inside its own block
+     */
+    public boolean violated(int step, long[] blocks, int[] blockOf) {
+        for (long[] groups : byLastStep.get(step)) {
+            if (matches(groups, blocks, blockOf)) {
+                prunes++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(long[] groups, long[] blocks, int[] blockOf) {
+        Arrays.fill(usedBlocks, 0L);
+        for (int g = 0; g < groups.length; g += stepWords) {
+            int first = -1;
+            for (int w = 0; w < stepWords && first < 0; w++) {
+                if (groups[g + w] != 0) first = (w << 6) + Long.numberOfTrailingZeros(groups[g + w]);
+            }
+            int b = blockOf[first];
+            if (BitSets.get(usedBlocks, b)) return false;
+            BitSets.set(usedBlocks, b);
+            int offset = b * stepWords;
+            for (int w = 0; w < stepWords; w++) {
+                if ((groups[g + w] & ~blocks[offset + w]) != 0) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the nogoods into a store for a search with another step order.
+     * @param fromOrder  fromOrder[p] is the step at position p in this store's order
+     * @param toPosition toPosition[s] is the position of step s in the new order
+     */
+    public HallNogoodStore remapped(int[] fromOrder, int[] toPosition) {
+        HallNogoodStore copy = new HallNogoodStore(fromOrder.length, capacity);
+        for (List<long[]> list : byLastStep) {
+            for (long[] groups : list) {
+                long[] moved = new long[groups.length];
+                for (int g = 0; g < groups.length; g += stepWords) {
+                    for (int w = 0; w < stepWords; w++) {
+                        long word = groups[g + w];
+                        while (word != 0) {
+                            int p = (w << 6) + Long.numberOfTrailingZeros(word);
+                            int q = toPosition[fromOrder[p]];
+                            moved[g + (q >>> 6)] |= 1L << q;
+                            word &= word - 1;
+                        }
+                    }
+                }
+                copy.add(moved);
+            }
+        }
+        return copy;
+    }
+
+    /** Number of nogoods stored. */
+    public int size() {
+        return size;
+    }
+
+    /** Number of placements rejected by a stored nogood. */
+    public long getPrunes() {
+        return prunes;
+    }
+}
@@ -0,0 +1,136 @@
+package WSP.PBT;
+
+import java.util.Arrays;
+
+import WSP.BitSets;
+
+/**
+ * Hopcroft–Karp matching of blocks to users over bitset adjacency.
+ * Both the BFS layering and the augmenting DFS are iterative, so deep
+ * alternating paths cannot overflow the stack. Scratch arrays are kept
+ * between calls and only grow, so repeated calls on instances of similar
+ * size do not allocate beyond the returned matching.
+ */
+public class HopcroftKarpMatcher implements BlockUserMatcher {
+    private static final int INF = Integer.MAX_VALUE;
+
+    private int[] blockToUser = new int[0];
+    private int[] userToBlock = new int[0];
+    private int[] dist = new int[0];
+    private int[] queue = new int[0];
+    private int[] cursor = new int[0];
+    private int[] stackBlock = new int[0];
+    private int[] stackUser = new int[0];
+
+    @Override
+    public int[] match(long[][] blockUsers, int numBlocks, int numUsers) {
+        ensureCapacity(numBlocks, numUsers);
+        Arrays.fill(blockToUser, 0, numBlocks, -1);
+        Arrays.fill(userToBlock, 0, numUsers, -1);
+
+        int matched = 0;
+        while (matched < numBlocks) {
+            int freeDist = layer(blockUsers, numBlocks);
+            if (freeDist == INF) {
+                break;
+            }
+            Arrays.fill(cursor, 0, numBlocks, 0);
+            for (int b = 0; b < numBlocks; b++) {
+                if (blockToUser[b] == -1 && augment(blockUsers, b, freeDist)) {
+                    matched++;
+                }
+            }
+        }
+        return matched == numBlocks ? Arrays.copyOf(blockToUser, numBlocks) : null;
+    }
+
+    /**
+     * BFS from every free block over alternating paths, filling {@code dist}.
+     * @return the length of the shortest augmenting path (in blocks), or INF if none exists.
+     */
+    private int layer(long[][] blockUsers, int numBlocks) {
+        int head = 0, tail = 0;
+        for (int b = 0; b < numBlocks; b++) {
+            if (blockToUser[b] == -1) {
+                dist[b] = 0;
+                queue[tail++] = b;
+            } else {
+                dist[b] = INF;
+            }
+        }
+        int freeDist = INF;
+        while (head < tail) {
+            int b = queue[head++];
+            if (dist[b] >= freeDist) continue;
+            long[] row = blockUsers[b];
+            scan:
+            for (int w = 0; w < row.length; w++) {
+                long word = row[w];
+                while (word != 0) {
+                    int u = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    int next = userToBlock[u];
+                    if (next == -1) {
+                        // Anything else reached from b would sit at freeDist and is never expanded.
+                        freeDist = dist[b] + 1;
+                        break scan;
+                    } else if (dist[next] == INF) {
+                        dist[next] = dist[b] + 1;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+        return freeDist;
+    }
+
+    /**
+     * Iterative DFS along the BFS layers from the free block {@code root}. Blocks that
+     * lead nowhere are marked INF so later searches in the same phase skip them.
+     */
+    private boolean augment(long[][] blockUsers, int root, int freeDist) {
+        int top = 0;
+        stackBlock[0] = root;
+        while (top >= 0) {
+            int b = stackBlock[top];
+            int u = BitSets.nextSetBit(blockUsers[b], cursor[b]);
+            if (u < 0) {
+                dist[b] = INF;
+                top--;
+                continue;
+            }
+            cursor[b] = u + 1;
+            int next = userToBlock[u];
+            if (next == -1) {
+                if (dist[b] + 1 != freeDist) continue;
+                // Flip the path: each block on the stack takes the user found below it.
+                for (int i = top; i >= 0; i--) {
+                    int taken = i == top ? u : stackUser[i + 1];
+                    blockToUser[stackBlock[i]] = taken;
+                    userToBlock[taken] = stackBlock[i];
+                }
+                return true;
+            }
+            if (dist[next] == dist[b] + 1) {
+                top++;
+                stackBlock[top] = next;
+                stackUser[top] = u;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int numBlocks, int numUsers) {
+        if (blockToUser.length < numBlocks) {
+            blockToUser = new int[numBlocks];
+            dist = new int[numBlocks];
+            queue = new int[numBlocks];
+            cursor = new int[numBlocks];
+            stackBlock = new int[numBlocks];
+            stackUser = new int[numBlocks];
+        }
+        if (userToBlock.length < numUsers) {
+            userToBlock = new int[numUsers];
+        }
+    }
+}
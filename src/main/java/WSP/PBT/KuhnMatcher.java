@@ -0,0 +1,93 @@
+package WSP.PBT;
+
+import java.util.Arrays;
+
+import WSP.BitSets;
+
+/**
+ * Kuhn's matching over bitset adjacency, built incrementally: blocks are added one at a
+ * time and each is matched by a single augmenting-path search on top of the matching of
+ * the blocks before it, the search {@link PartitionGenerator} runs as a partition grows.
+ * The search is iterative and its scratch buffers are kept between calls. It is
+ * O(blocks · edges) against Hopcroft–Karp's O(sqrt(blocks) · edges), but has no BFS
+ * phase, so it is cheaper when few blocks compete for the same users.
+ */
+public class KuhnMatcher implements BlockUserMatcher {
+    private int[] blockToUser = new int[0];
+    private int[] userToBlock = new int[0];
+    private int[] pathBlock = new int[0];
+    private int[] pathUser = new int[0];
+    private int[] pathCursor = new int[0];
+    private long[] visited = new long[0];
+
+    @Override
+    public int[] match(long[][] blockUsers, int numBlocks, int numUsers) {
+        int words = numBlocks == 0 ? 0 : blockUsers[0].length;
+        ensureCapacity(numBlocks, numUsers, words);
+        Arrays.fill(blockToUser, 0, numBlocks, -1);
+        Arrays.fill(userToBlock, 0, numUsers, -1);
+        for (int b = 0; b < numBlocks; b++) {
+            if (!augment(blockUsers, b, words)) return null;
+        }
+        return Arrays.copyOf(blockToUser, numBlocks);
+    }
+
+    /** Iterative DFS for an augmenting path from the unmatched block {@code root}. */
+    private boolean augment(long[][] blockUsers, int root, int words) {
+        Arrays.fill(visited, 0, words, 0L);
+        int top = 0;
+        pathBlock[0] = root;
+        pathCursor[0] = 0;
+        while (top >= 0) {
+            int b = pathBlock[top];
+            int u = nextUser(blockUsers[b], pathCursor[top], words);
+            if (u < 0) {
+                top--;
+                continue;
+            }
+            pathCursor[top] = u + 1;
+            BitSets.set(visited, u);
+            int owner = userToBlock[u];
+            if (owner < 0) {
+                // Flip the path: each block on the stack takes the user found below it.
+                for (int i = top; i >= 0; i--) {
+                    int taken = i == top ? u : pathUser[i + 1];
+                    blockToUser[pathBlock[i]] = taken;
+                    userToBlock[taken] = pathBlock[i];
+                }
+                return true;
+            }
+            // Every user is visited once, so each matched block enters the path at most once.
+            top++;
+            pathBlock[top] = owner;
+            pathUser[top] = u;
+            pathCursor[top] = 0;
+        }
+        return false;
+    }
+
+    /** Next user of {@code row}, at or after {@code from}, not yet visited by this search. */
+    private int nextUser(long[] row, int from, int words) {
+        for (int w = from >>> 6; w < words; w++) {
+            long word = row[w] & ~visited[w];
+            if (w == from >>> 6) word &= -1L << from;
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int numBlocks, int numUsers, int words) {
+        if (blockToUser.length < numBlocks) {
+            blockToUser = new int[numBlocks];
+            pathBlock = new int[numBlocks];
+            pathUser = new int[numBlocks];
+            pathCursor = new int[numBlocks];
+        }
+        if (userToBlock.length < numUsers) {
+            userToBlock = new int[numUsers];
+        }
+        if (visited.length < words) {
+            visited = new long[words];
+        }
+    }
+}
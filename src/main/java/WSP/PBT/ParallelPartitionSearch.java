@@ -0,0 +1,182 @@
+package WSP.PBT;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import WSP.BoundedWork;
+import WSP.SearchContext;
+
+/**
+ * Fork/join version of the PBT partition search. Partial partitions of the first
+ * {@code splitDepth} steps become tasks, and each task below that depth runs the
+ * sequential authorization-aware search over its subtree, so idle workers steal
+ * whole subtrees. Results and counters are aggregated without locks. Once the generator's
+ * {@link SearchContext} stops, no new subtree is started and the search returns early.
+ * The search runs on a pool of its own for each call, or on a shared pool passed in by
+ * the caller, which is left running. On a shared pool at most {@code parallelism} tasks
+ * of the search run at once, whatever the size of the pool.
+ */
+public class ParallelPartitionSearch {
+    public static final int DEFAULT_SPLIT_DEPTH = 6;
+
+    private final PartitionGenerator generator;
+    private final int parallelism;
+    private final ForkJoinPool pool;      // null: a pool of parallelism threads per search
+    private final int splitDepth;
+
+    private final AtomicReference<int[]> firstSolution = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<int[]> solutions = new ConcurrentLinkedQueue<>();
+    private final LongAdder partitionsExplored = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder tasks = new LongAdder();
+    private volatile boolean stopAtFirst;
+    private volatile boolean stopped;
+    private BoundedWork<int[]> work;
+
+    /**
+     * @param generator   an authorization-aware partition generator
+     * @param parallelism number of worker threads
+     * @param splitDepth  partial partitions up to this many steps are turned into tasks
+     */
+    public ParallelPartitionSearch(PartitionGenerator generator, int parallelism, int splitDepth) {
+        this(generator, parallelism, null, splitDepth);
+    }
+
+    public ParallelPartitionSearch(PartitionGenerator generator, int parallelism) {
+        this(generator, parallelism, DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * @param generator an authorization-aware partition generator
+     * @param pool      pool the tasks run on; not shut down by the search
+     */
+    public ParallelPartitionSearch(PartitionGenerator generator, ForkJoinPool pool) {
+        this(generator, pool.getParallelism(), pool, DEFAULT_SPLIT_DEPTH);
+    }
+
+    /**
+     * @param generator   an authorization-aware partition generator
+     * @param pool        pool the tasks run on; not shut down by the search
+     * @param parallelism most tasks of this search running at once
+     */
+    public ParallelPartitionSearch(PartitionGenerator generator, ForkJoinPool pool, int parallelism) {
+        this(generator, parallelism, pool, DEFAULT_SPLIT_DEPTH);
+    }
+
+    private ParallelPartitionSearch(PartitionGenerator generator, int parallelism, ForkJoinPool pool,
+                                    int splitDepth) {
+        this.generator = generator;
+        this.parallelism = parallelism;
+        this.pool = pool;
+        this.splitDepth = Math.min(splitDepth, generator.getNumberSteps());
+    }
+
+    /**
+     * Searches until any worker finds an authorized partition; the others stop at their next partition.
+     * @return the step-based encoding of that partition, or {@code null} if none exists.
+     */
+    public int[] findFirst() {
+        stopAtFirst = true;
+        run();
+        return firstSolution.get();
+    }
+
+    /**
+     * Explores the whole tree.
+     * @return the step-based encodings of every authorized partition, in no particular order.
+     */
+    public List<int[]> findAll() {
+        stopAtFirst = false;
+        run();
+        return new ArrayList<>(solutions);
+    }
+
+    /** Number of authorized partitions reached by the last search. */
+    public long getPartitionsExplored() {
+        return partitionsExplored.sum();
+    }
+
+    /** Number of steps placed by the last search, over all of its tasks. */
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    /** Number of fork/join tasks created by the last search. */
+    public long getTaskCount() {
+        return tasks.sum();
+    }
+
+    /** Most tasks of this search running at once. */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Whether the last search stopped on the generator's context before exploring every
+     * subtree it needed, so a missing solution does not mean there is none.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    private void run() {
+        firstSolution.set(null);
+        solutions.clear();
+        partitionsExplored.reset();
+        nodes.reset();
+        tasks.reset();
+        stopped = false;
+        ForkJoinPool pool = this.pool != null ? this.pool : new ForkJoinPool(parallelism);
+        try {
+            work = new BoundedWork<>(pool, parallelism, this::search);
+            work.run(new int[0]);
+        } finally {
+            work = null;
+            if (pool != this.pool) pool.shutdown();
+        }
+    }
+
+    private boolean cancelled() {
+        if (stopAtFirst && firstSolution.get() != null) return true;
+        SearchContext context = generator.getContext();
+        if (context != null && context.shouldStop()) {
+            stopped = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void search(int[] prefix) {
+        tasks.increment();
+        if (cancelled()) return;
+        if (prefix.length < splitDepth) {
+            // Split: one task per valid placement of the next step.
+            PartitionGenerator.PartitionIterator it = generator.iterator(prefix, prefix.length + 1);
+            while (it.advance()) {
+                work.submit(it.choices());
+            }
+            if (it.isSuspended()) stopped = true;
+            nodes.add(it.getNodes());
+            return;
+        }
+        PartitionGenerator.PartitionIterator it = generator.iterator(prefix, generator.getNumberSteps());
+        try {
+            while (!cancelled() && it.advance()) {
+                partitionsExplored.increment();
+                int[] encoding = it.currentEncoding();
+                if (stopAtFirst) {
+                    firstSolution.compareAndSet(null, encoding);
+                    return;
+                }
+                solutions.add(encoding);
+            }
+            if (it.isSuspended()) stopped = true;
+        } finally {
+            nodes.add(it.getNodes());
+        }
+    }
+}
@@ -1,11 +1,70 @@
 package WSP.PBT;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
+import WSP.BitSets;
+
 public class PartitionAuthorizer {
 
+    // One matcher and one set of block rows per thread, reused across calls.
+    private static final ThreadLocal<BlockUserMatcher> DEFAULT_MATCHER =
+            ThreadLocal.withInitial(HopcroftKarpMatcher::new);
+    private static final ThreadLocal<BlockRows> BLOCK_ROWS = ThreadLocal.withInitial(BlockRows::new);
+
+    /**
+     * Build the bitset of common users of every block by ANDing the step rows.
+     */
+    public static long[][] buildBlockUserBits(List<Set<Integer>> partition, int[][] authorized, int numUsers) {
+        long[][] blockUsers = new long[partition.size()][Math.max(1, BitSets.words(numUsers))];
+        fillBlockUserBits(partition, authorized, numUsers, blockUsers);
+        return blockUsers;
+    }
+
+    /**
+     * Same as {@link #buildBlockUserBits}, into {@code blockUsers}, whose first
+     * {@code partition.size()} rows must have {@code max(1, words(numUsers))} words.
+     */
+    private static void fillBlockUserBits(List<Set<Integer>> partition, int[][] authorized, int numUsers,
+                                          long[][] blockUsers) {
+        for (int blockIdx = 0; blockIdx < partition.size(); blockIdx++) {
+            long[] row = blockUsers[blockIdx];
+            int words = row.length;
+            Arrays.fill(row, -1L);
+            if ((numUsers & 63) != 0) {
+                row[words - 1] = (1L << numUsers) - 1;
+            } else if (numUsers == 0) {
+                row[0] = 0;
+            }
+            for (int step : partition.get(blockIdx)) {
+                int[] auth = authorized[step];
+                for (int w = 0; w < words; w++) {
+                    long stepWord = 0;
+                    int base = w << 6;
+                    int end = Math.min(numUsers, base + 64);
+                    for (int u = base; u < end; u++) {
+                        if (auth[u] == 1) stepWord |= 1L << u;
+                    }
+                    row[w] &= stepWord;
+                }
+            }
+        }
+    }
+
+    /** Block rows kept by one thread; they only grow, unless the number of users changes. */
+    private static final class BlockRows {
+        private long[][] rows = new long[0][0];
+
+        long[][] get(int numBlocks, int words) {
+            if (rows.length < numBlocks || (rows.length > 0 && rows[0].length != words)) {
+                rows = new long[Math.max(numBlocks, rows.length)][words];
+            }
+            return rows;
+        }
+    }
+
     /**
      * Build adjacency (blocks → users) via row-combining.
      */
@@ -37,6 +96,7 @@ public class PartitionAuthorizer {
 
     /**
      * Use a DFS-based matching (Kuhn's) to match blocks to users.
+     * Recursive and list-based; kept as the reference for the {@link BlockUserMatcher} implementations.
      */
     public static int[] getBlockUserMatching(List<List<Integer>> adjacency, int numBlocks, int numUsers) {
         // matchUser[u] = block index that user u is matched to, or -1 if unmatched
@@ -88,11 +148,21 @@ public class PartitionAuthorizer {
 
     /**
      * Wrapper: build adjacency, run matching, return assignment array (null if not authorized).
+     * Uses a per-thread {@link HopcroftKarpMatcher}.
      */
     public static int[] authorizePartition(List<Set<Integer>> partition, int[][] authorized, int numUsers) {
-        List<List<Integer>> adjacency = buildBlockUserAdj(partition, authorized, numUsers);
-        int[] matching = getBlockUserMatching(adjacency, partition.size(), numUsers);
-        return matching;
+        return authorizePartition(partition, authorized, numUsers, DEFAULT_MATCHER.get());
+    }
+
+    /**
+     * Same as {@link #authorizePartition(List, int[][], int)} with an explicit matching engine.
+     * The block rows are built into per-thread buffers, so only the returned matching is allocated.
+     */
+    public static int[] authorizePartition(List<Set<Integer>> partition, int[][] authorized, int numUsers,
+                                           BlockUserMatcher matcher) {
+        long[][] blockUsers = BLOCK_ROWS.get().get(partition.size(), Math.max(1, BitSets.words(numUsers)));
+        fillBlockUserBits(partition, authorized, numUsers, blockUsers);
+        return matcher.match(blockUsers, partition.size(), numUsers);
     }
 
     /**
@@ -1,11 +1,28 @@
 package WSP.PBT;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import WSP.BitSets;
+import WSP.SearchCheckpoint;
+import WSP.SearchContext;
+import WSP.StepOrdering;
 import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+import WSP.WSPInstance;
 
 /**
  * 
@@ -19,8 +36,18 @@ public class PartitionGenerator {
     private ConstraintGraph graph;
     private int numberSteps;
     private List<List<Set<Integer>>> validPartitions;
+    private final int stepWords;      // words per step bitset (1 when numberSteps <= 64)
+    private final long[][] redMask;   // redMask[s]   = steps that must differ from s
+    private final long[][] blackMask; // blackMask[s] = steps that must share a user with s
+    private final int userWords;      // words per user bitset, 0 when no authorization is given
+    private final long[][] stepUsers; // stepUsers[s] = users authorized for step s
+    private final int numUsers;
+    private final int[] order;        // order[p] = step placed at depth p; masks and users are indexed by p
+    private SearchContext context;    // polled between nodes by every iterator, null for none
      /**
      * Constructs a {@code PartitionGenerator} with the given constraint graph and number of steps.
+     * The RED and BLACK neighbourhoods of every step are turned into bitsets once here,
+     * so that placement checks during the search are a few word-wise ANDs.
      *
      * @param graph       The constraint graph defining step relationships.
      * @param numberSteps The total number of steps in the workflow.
@@ -30,111 +57,823 @@ public class PartitionGenerator {
         this.graph = graph;
         this.numberSteps = numberSteps;
         this.validPartitions = new ArrayList<>();
+        this.stepWords = Math.max(1, BitSets.words(numberSteps));
+        this.order = StepOrdering.INDEX.order(graph, null, numberSteps);
+        this.redMask = new long[numberSteps][];
+        this.blackMask = new long[numberSteps][];
+        FrozenConstraintGraph view = graph.freeze();
+        for (int s = 0; s < numberSteps; s++) {
+            redMask[s] = view.neighbourMask(s, ConstraintGraph.RED, stepWords);
+            blackMask[s] = view.neighbourMask(s, ConstraintGraph.BLACK, stepWords);
+        }
+        this.userWords = 0;
+        this.stepUsers = null;
+        this.numUsers = 0;
     }   
 
+    /**
+     * Constructs an authorization-aware {@code PartitionGenerator}. Each block carries the
+     * set of users authorized for all of its steps, intersected as steps are added, and a
+     * block-to-user matching is kept alive as the search extends and backtracks. A branch
+     * is cut as soon as a block has no common user left or the blocks can no longer be
+     * matched to distinct users, so only authorized partitions are produced and
+     * {@link PartitionIterator#currentMatching()} returns their matching.
+     *
+     * @param graph       The constraint graph defining step relationships.
+     * @param numberSteps The total number of steps in the workflow.
+     * @param authorized  authorized[step][user] = 1 if the user may perform the step.
+     * @param numUsers    The total number of users.
+     */
+    public PartitionGenerator(ConstraintGraph graph, int numberSteps, int[][] authorized, int numUsers) {
+        this(graph, numberSteps, authorized, numUsers, StepOrdering.INDEX);
+    }
+
+    /**
+     * Constructs an authorization-aware {@code PartitionGenerator} that places the steps in
+     * the order given by {@code ordering}. The search runs on the steps renumbered by their
+     * position in that order, so its bitsets, restricted-growth strings and nogoods all use
+     * positions; partitions and encodings are translated back to step indices on output.
+     *
+     * @param graph       The constraint graph defining step relationships.
+     * @param numberSteps The total number of steps in the workflow.
+     * @param authorized  authorized[step][user] = 1 if the user may perform the step.
+     * @param numUsers    The total number of users.
+     * @param ordering    The order in which steps are placed.
+     */
+    public PartitionGenerator(ConstraintGraph graph, int numberSteps, int[][] authorized, int numUsers,
+                              StepOrdering ordering) {
+        this(graph, numberSteps, authorized, numUsers, ordering.order(graph, authorized, numberSteps));
+    }
+
+    /**
+     * Constructs an authorization-aware {@code PartitionGenerator} over a prepared instance,
+     * taking the users of each step from its bitsets instead of scanning the matrix.
+     *
+     * @param instance The WSP instance.
+     * @param ordering The order in which steps are placed.
+     */
+    public PartitionGenerator(WSPInstance instance, StepOrdering ordering) {
+        this(instance, ordering.order(instance));
+    }
+
+    /**
+     * Same as above, with the placement order given directly: {@code order[p]} is the step
+     * placed at depth {@code p}.
+     */
+    PartitionGenerator(ConstraintGraph graph, int numberSteps, int[][] authorized, int numUsers, int[] order) {
+        this(graph, numberSteps, numUsers, order, usersByPosition(authorized, numUsers, order));
+    }
+
+    PartitionGenerator(WSPInstance instance, int[] order) {
+        this(instance.graph(), instance.numSteps(), instance.numUsers(), order, usersByPosition(instance, order));
+    }
+
+    private PartitionGenerator(ConstraintGraph graph, int numberSteps, int numUsers, int[] order, long[][] stepUsers) {
+        this.graph = graph;
+        this.numberSteps = numberSteps;
+        this.validPartitions = new ArrayList<>();
+        this.stepWords = Math.max(1, BitSets.words(numberSteps));
+        this.order = order;
+        int[] position = StepOrdering.inverse(order);
+        this.redMask = new long[numberSteps][];
+        this.blackMask = new long[numberSteps][];
+        FrozenConstraintGraph view = graph.freeze();
+        for (int p = 0; p < numberSteps; p++) {
+            redMask[p] = toPositions(view.neighbourMask(order[p], ConstraintGraph.RED, stepWords), position);
+            blackMask[p] = toPositions(view.neighbourMask(order[p], ConstraintGraph.BLACK, stepWords), position);
+        }
+        this.numUsers = numUsers;
+        this.userWords = Math.max(1, BitSets.words(numUsers));
+        this.stepUsers = stepUsers;
+    }
+
+    private static long[][] usersByPosition(int[][] authorized, int numUsers, int[] order) {
+        long[][] stepUsers = new long[order.length][Math.max(1, BitSets.words(numUsers))];
+        for (int p = 0; p < order.length; p++) {
+            for (int u = 0; u < numUsers; u++) {
+                if (authorized[order[p]][u] == 1) {
+                    BitSets.set(stepUsers[p], u);
+                }
+            }
+        }
+        return stepUsers;
+    }
+
+    private static long[][] usersByPosition(WSPInstance instance, int[] order) {
+        long[][] stepUsers = new long[order.length][];
+        for (int p = 0; p < order.length; p++) {
+            stepUsers[p] = instance.stepUsers(order[p]);
+        }
+        return stepUsers;
+    }
+
+    private long[] toPositions(long[] steps, int[] position) {
+        long[] positions = new long[stepWords];
+        for (int s = BitSets.nextSetBit(steps, 0); s >= 0; s = BitSets.nextSetBit(steps, s + 1)) {
+            BitSets.set(positions, position[s]);
+        }
+        return positions;
+    }
+
 
   /**
      * Generates all valid partitions of the workflow steps based on the constraints.
      * The results are stored in the {@code validPartitions} list.
      */
 public void GenerateParitions(){
-List<Set<Integer>> intialPartions = new ArrayList<>();
-dfsPartition(0,intialPartions ); 
+    Iterator<List<Set<Integer>>> partitions = iterator();
+    while (partitions.hasNext()) {
+        validPartitions.add(partitions.next());
+    }
 }
-  /**
-     * Performs a depth-first search (DFS) to generate all valid partitions.
+
+    /**
+     * Returns a pull-based source over the valid partitions. Partitions are produced
+     * one at a time by an explicit-stack DFS, so memory stays proportional to the
+     * number of steps rather than to the number of partitions. Nothing is added to
+     * {@code validPartitions}.
      *
-     * @param stepIndex The current step being processed.
-     * @param partition The current partition being built.
+     * @return An iterator over the valid partitions, in the same order as {@link #GenerateParitions()}.
      */
-private void dfsPartition(int stepIndex , List<Set<Integer>> partition){
-    if (stepIndex == numberSteps){
-        List<Set<Integer>> Partitioncopy = new ArrayList<>();
-        for (Set<Integer> block : partition){
-            Partitioncopy.add(new HashSet<>(block));
-        }
-        validPartitions.add(Partitioncopy);
-        return;
+    public PartitionIterator iterator() {
+        return new PartitionIterator(new int[0], numberSteps);
     }
 
-    int size = partition.size();
-    for (int i = 0; i < size; i++) {
-        Set<Integer> block = partition.get(i);
-        if (CanBePlaced(block, stepIndex, partition)) {
-            block.add(stepIndex);
-            dfsPartition(stepIndex + 1, partition);
-            block.remove(stepIndex); // backtrack
+    /**
+     * Returns an iterator over the valid extensions of a fixed prefix. The first
+     * {@code prefix.length} steps in search order are placed in the blocks given by {@code prefix} (a
+     * restricted-growth string, as returned by {@link PartitionIterator#choices()}) and
+     * are never revisited; the search stops at {@code targetDepth} steps, so the items
+     * are partial partitions when {@code targetDepth < numberSteps}.
+     */
+    PartitionIterator iterator(int[] prefix, int targetDepth) {
+        return new PartitionIterator(prefix, targetDepth);
+    }
+
+    /**
+     * Rebuilds a search suspended with {@link PartitionIterator#requestSuspend()} from the
+     * checkpoint it wrote, possibly in another process. The generator must have been built
+     * from the same instance and ordering. The placed steps are replayed, so the returned
+     * iterator continues with the item the suspended one would have produced next; Hall
+     * nogoods are not saved and are learned again.
+     *
+     * @throws IOException if the stream cannot be read or was written for another instance.
+     */
+    public PartitionIterator resume(DataInputStream in) throws IOException {
+        SearchCheckpoint.readHeader(in, SearchCheckpoint.PARTITION, fingerprint());
+        int floor = in.readInt();
+        int targetDepth = in.readInt();
+        int depth = in.readInt();
+        if (floor < 0 || depth < floor || depth >= targetDepth || targetDepth > numberSteps) {
+            throw new IOException("Checkpoint does not match the instance");
         }
+        int[] placedChoices = new int[depth];
+        for (int p = 0; p < depth; p++) {
+            placedChoices[p] = in.readInt();
+        }
+        PartitionIterator partitions = new PartitionIterator(placedChoices, floor, targetDepth,
+                new HallNogoodStore(numberSteps, HallNogoodStore.DEFAULT_CAPACITY));
+        if (!partitions.resumeAt(in.readInt())) {
+            throw new IOException("Checkpoint does not match the instance");
+        }
+        return partitions;
     }
-    if (canCreateNewBlock(stepIndex, partition)) {
-        Set<Integer> newBlock = new HashSet<>();
-        newBlock.add(stepIndex);
-        partition.add(newBlock);
-        dfsPartition(stepIndex + 1, partition);
-        partition.remove(partition.size() - 1); // backtrack
+
+    /** Hash of the search instance, so a checkpoint is not resumed on another one. */
+    private int fingerprint() {
+        int hash = Arrays.deepHashCode(redMask);
+        hash = 31 * hash + Arrays.deepHashCode(blackMask);
+        hash = 31 * hash + Arrays.deepHashCode(stepUsers);
+        hash = 31 * hash + Arrays.hashCode(order);
+        return 31 * hash + numUsers;
     }
 
+    /**
+     * Same as {@link #iterator()}, but starting from Hall nogoods learned earlier, which
+     * must be numbered by this generator's search order. The iterator adds to them.
+     */
+    PartitionIterator iterator(HallNogoodStore learned) {
+        return new PartitionIterator(new int[0], 0, numberSteps, learned);
+    }
 
+    /** {@code order[p]} is the step placed at depth {@code p}. */
+    int[] getOrder() {
+        return order;
+    }
 
+    int getNumberSteps() {
+        return numberSteps;
+    }
 
-}
-  /**
-     * Performs a depth-first search (DFS) to generate all valid partitions.
+    /**
+     * Sets the deadline and cancellation context polled between nodes by the iterators of
+     * this generator, or {@code null} for none. An iterator that sees it stop is suspended,
+     * as on {@link PartitionIterator#requestSuspend()}.
+     */
+    public void setContext(SearchContext context) {
+        this.context = context;
+    }
+
+    SearchContext getContext() {
+        return context;
+    }
+
+    /**
+     * Returns the valid partitions as a lazy, sequential stream backed by {@link #iterator()}.
      *
-     * @param stepIndex The current step being processed.
-     * @param partition The current partition being built.
+     * @return A stream of valid partitions.
      */
-private boolean CanBePlaced(Set<Integer> block , int step , List<Set<Integer>> parition){
-    for (int s : block) {
-        int constraint = graph.getConstraintType(s, step);
-        // If there's no constraint (i.e., -1), that's fine.
-        if (constraint == -1) continue;
-        // RED: must be different – cannot place together.
-        if (constraint == ConstraintGraph.RED) {
-            return false;
-        }
+    public Stream<List<Set<Integer>>> stream() {
+        Spliterator<List<Set<Integer>>> spliterator = Spliterators.spliteratorUnknownSize(
+                iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
     }
-    // Check BLACK constraints: if step must be same as some step x,
-    // ensure that if x is already placed in a block, it's in this block.
-    for (int x = 0; x < numberSteps; x++) {
-        if (x == step) continue;
-        int constraint = graph.getConstraintType(step, x);
-        if (constraint == ConstraintGraph.BLACK) {
-            for (Set<Integer> b : parition) {
-                // If x is placed and it is not in the current block, then step cannot join this block.
-                if (b.contains(x) && b != block) {
-                    return false;
+
+    /**
+     * Explicit-stack DFS over partitions. Steps are numbered by their position in the
+     * search order throughout. Block {@code b} occupies words
+     * {@code [b * stepWords, (b + 1) * stepWords)} of {@code blocks}, and {@code placed}
+     * is the union of all blocks. {@code choice[d]} is the block tried for step {@code d}
+     * (the value {@code numBlocks} meaning a new block), and {@code openedBlock[d]} records
+     * whether that choice created the block, so it can be undone on backtrack.
+     * When authorization is known, {@code blockUsers} holds each block's common users in the
+     * same layout (with {@code userWords}), and {@code savedUsers} keeps, per step, the set
+     * the step's block had before the step joined it. {@code blockToUser}/{@code userToBlock}
+     * is a matching that saturates every block; each change to it is pushed on {@code trail}
+     * as an (index, old value) pair and {@code trailMark[d]} is the trail height before
+     * step {@code d} was placed. When an augmenting-path search fails, the blocks it reached
+     * form a Hall violator; their step groups are kept in {@code nogoods} and checked before
+     * any later augmentation, so the same failure is not searched for again.
+     * The loop can be suspended between nodes and its stack written out, see
+     * {@link #writeCheckpoint(DataOutputStream)}.
+     */
+    public class PartitionIterator implements Iterator<List<Set<Integer>>> {
+        private final long[] blocks = new long[Math.max(1, numberSteps) * stepWords];
+        private final long[] placed = new long[stepWords];
+        private final long[] blockUsers = new long[numberSteps * userWords];
+        private final long[] savedUsers = new long[numberSteps * userWords];
+        private final int[] blockToUser = new int[numberSteps];
+        private final int[] userToBlock = new int[numUsers];
+        private final int[] trailMark = new int[numberSteps];
+        private int[] trail = new int[16];
+        private int trailTop = 0;
+        private int[] lastMatching;
+        // Scratch space for the augmenting-path search.
+        private final long[] visitedUsers = new long[userWords];
+        private final int[] pathBlock = new int[numberSteps];
+        private final int[] pathUser = new int[numberSteps];
+        private final int[] pathCursor = new int[numberSteps];
+        private final int[] reached = new int[numberSteps];
+        private int reachedCount;
+        private final HallNogoodStore nogoods;
+        private long nodes;
+        private long matchingsAttempted;
+        private long matchingNanos;
+        private int numBlocks = 0;
+        private final int[] choice = new int[numberSteps];
+        private final boolean[] openedBlock = new boolean[numberSteps];
+        private final int floor;
+        private final int target;
+        private int depth = 0;
+        private boolean started = false;
+        private boolean ready = false;
+        private boolean exhausted = false;
+        private volatile boolean suspendRequested = false;
+        private long nodeLimit = Long.MAX_VALUE;
+        private boolean suspended = false;
+        private boolean resumeInLoop = false;
+        // Random value order of restarting searches: the level of step d tries the candidates
+        // 0..numBlocks (numBlocks being a new block) as valueStart[d] + i * valueStride[d]
+        // modulo their number, for i = valueTried[d], ... The stride is coprime to the number
+        // of candidates, so each is tried once. Index order when valueOrder is null.
+        private Random valueOrder;
+        private int[] valueStart;
+        private int[] valueStride;
+        private int[] valueTried;
+
+        PartitionIterator(int[] prefix, int targetDepth) {
+            this(prefix, prefix.length, targetDepth,
+                    new HallNogoodStore(numberSteps, HallNogoodStore.DEFAULT_CAPACITY));
+        }
+
+        /**
+         * Places the steps of {@code prefix}; the first {@code floor} of them are never
+         * revisited, the rest are backtracked over as usual.
+         */
+        private PartitionIterator(int[] prefix, int floor, int targetDepth, HallNogoodStore nogoods) {
+            this.nogoods = nogoods;
+            this.floor = floor;
+            this.target = targetDepth;
+            Arrays.fill(userToBlock, -1);
+            for (int step = 0; step < prefix.length; step++) {
+                choice[step] = prefix[step] - 1;
+                if (prefix[step] > numBlocks || !tryNextChoice(step) || choice[step] != prefix[step]) {
+                    exhausted = true;
+                    return;
                 }
+                depth++;
             }
         }
-    }
-    return true;
 
-}
+        /**
+         * Moves to the next item without building it.
+         * @return {@code false} once the search tree is exhausted.
+         */
+        public boolean advance() {
+            ready = false;
+            if (exhausted) return false;
+            boolean found = dfsPartition();
+            exhausted = !found && !suspended;
+            return found;
+        }
 
-    /**
-     * Determines if a new block can be created for a step without violating constraints.
-     *
-     * @param step      The step to be placed in a new block.
-     * @param partition The current partition being built.
-     * @return {@code true} if a new block can be created, {@code false} otherwise.
-     */
+        /**
+         * Asks the search to stop at its next node. May be called from any thread; the
+         * running {@link #advance()} or {@link #hasNext()} then returns {@code false} with
+         * {@link #isSuspended()} set, and calling either again carries on where it stopped.
+         */
+        public void requestSuspend() {
+            suspendRequested = true;
+        }
+
+        /**
+         * Suspends the search, as {@link #requestSuspend()} does, once it has placed
+         * {@code limit} steps in total.
+         */
+        void setNodeLimit(long limit) {
+            this.nodeLimit = limit;
+        }
+
+        /**
+         * Tries the blocks of every step in an order drawn from {@code random} rather than in
+         * index order; every partition is still produced exactly once. Must be called before
+         * the search starts, and the search can then not be checkpointed.
+         */
+        void setValueOrder(Random random) {
+            this.valueOrder = random;
+            this.valueStart = new int[numberSteps];
+            this.valueStride = new int[numberSteps];
+            this.valueTried = new int[numberSteps];
+        }
+
+        /** Whether the last call stopped on {@link #requestSuspend()} rather than on an item or the end. */
+        public boolean isSuspended() {
+            return suspended;
+        }
+
+        /**
+         * Writes the stack of the suspended search: the fixed prefix length, the target
+         * depth and the block chosen at every level. Read it back with
+         * {@link PartitionGenerator#resume(DataInputStream)}.
+         *
+         * @throws IllegalStateException if the search is not suspended.
+         */
+        public void writeCheckpoint(DataOutputStream out) throws IOException {
+            if (!suspended) {
+                throw new IllegalStateException("The search is not suspended");
+            }
+            if (valueOrder != null) {
+                throw new IllegalStateException("A search with a random value order cannot be checkpointed");
+            }
+            SearchCheckpoint.writeHeader(out, SearchCheckpoint.PARTITION, fingerprint());
+            out.writeInt(floor);
+            out.writeInt(target);
+            out.writeInt(depth);
+            for (int p = 0; p <= depth; p++) {
+                out.writeInt(choice[p]);
+            }
+            out.flush();
+        }
+
+        /**
+         * Positions a freshly replayed search as if it had been suspended with
+         * {@code cursor} as the last block tried at the current depth.
+         */
+        private boolean resumeAt(int cursor) {
+            if (exhausted || cursor < -1 || cursor > numBlocks) return false;
+            choice[depth] = cursor;
+            started = true;
+            suspended = true;
+            resumeInLoop = true;
+            return true;
+        }
 
-private boolean canCreateNewBlock(int step, List<Set<Integer>> partition) {
-    for (int x = 0; x < numberSteps; x++) {
-        if (x == step) continue;
-        int constraint = graph.getConstraintType(step, x);
-        if (constraint == ConstraintGraph.BLACK) {
-            // If x is already placed in any block, then step must join that block.
-            for (Set<Integer> b : partition) {
-                if (b.contains(x)) {
+        /** Hall-violator nogoods learned by this search so far. */
+        public HallNogoodStore nogoods() {
+            return nogoods;
+        }
+
+        /** Number of steps placed by this search so far. */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /** Number of augmenting-path searches run so far. */
+        public long getMatchingsAttempted() {
+            return matchingsAttempted;
+        }
+
+        /** Time spent in augmenting-path searches so far, in nanoseconds. */
+        public long getMatchingNanos() {
+            return matchingNanos;
+        }
+
+        /**
+         * Block index of every placed step of the current item, in search order, as a
+         * restricted-growth string. Valid until the search moves on.
+         */
+        public int[] choices() {
+            return Arrays.copyOf(choice, depth);
+        }
+
+        /**
+         * Step-based encoding (step -> user) of the current complete partition, read from the
+         * matching kept by the search. Valid until the search moves on.
+         */
+        public int[] currentEncoding() {
+            if (userWords == 0) return null;
+            int[] encoding = new int[numberSteps];
+            for (int p = 0; p < numberSteps; p++) {
+                encoding[order[p]] = blockToUser[choice[p]];
+            }
+            return encoding;
+        }
+
+        /**
+         * Returns the block-to-user matching of the partition last returned by {@link #next()},
+         * with blocks in the same order as that partition, or {@code null} if the generator
+         * was built without an authorization matrix.
+         */
+        public int[] currentMatching() {
+            return lastMatching;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready && !exhausted) {
+                ready = dfsPartition();
+                exhausted = !ready && !suspended;
+            }
+            return ready;
+        }
+
+        @Override
+        public List<Set<Integer>> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            lastMatching = userWords == 0 ? null : Arrays.copyOf(blockToUser, numBlocks);
+            List<Set<Integer>> copy = new ArrayList<>(numBlocks);
+            for (int b = 0; b < numBlocks; b++) {
+                Set<Integer> block = new HashSet<>();
+                int offset = b * stepWords;
+                for (int w = 0; w < stepWords; w++) {
+                    long word = blocks[offset + w];
+                    while (word != 0) {
+                        block.add(order[(w << 6) + Long.numberOfTrailingZeros(word)]);
+                        word &= word - 1;
+                    }
+                }
+                copy.add(block);
+            }
+            return copy;
+        }
+
+        /**
+         * Moves the search to the next item at the target depth.
+         * @return {@code false} once the search tree below the prefix is exhausted.
+         */
+        private boolean dfsPartition() {
+            suspended = false;
+            if (resumeInLoop) {
+                // Carry on from the node where the search was suspended.
+                resumeInLoop = false;
+            } else if (!started) {
+                started = true;
+                if (depth == target) {
+                    return true;
+                }
+                choice[depth] = -1;
+            } else {
+                if (depth == floor) {
+                    return false;
+                }
+                // Resume from the item returned last time.
+                depth--;
+                undo(depth);
+            }
+            while (depth >= floor) {
+                if (suspendRequested || nodes >= nodeLimit || (context != null && context.shouldStop())) {
+                    suspendRequested = false;
+                    suspended = true;
+                    resumeInLoop = true;
                     return false;
                 }
+                if (tryNextChoice(depth)) {
+                    depth++;
+                    if (depth == target) {
+                        return true;
+                    }
+                    choice[depth] = -1;
+                } else {
+                    depth--;
+                    if (depth >= floor) {
+                        undo(depth);
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean tryNextChoice(int step) {
+            trailMark[step] = trailTop;
+            if (valueOrder != null) {
+                return tryShuffledChoice(step);
+            }
+            for (int c = choice[step] + 1; c < numBlocks; c++) {
+                if (canBePlaced(c, step) && tryBlock(c, step)) {
+                    return true;
+                }
+            }
+            return choice[step] < numBlocks && canCreateNewBlock(step) && tryNewBlock(step);
+        }
+
+        /** Same as {@link #tryNextChoice(int)}, in the level's random order. */
+        private boolean tryShuffledChoice(int step) {
+            int candidates = numBlocks + 1;
+            if (choice[step] < 0) {
+                valueTried[step] = 0;
+                valueStart[step] = valueOrder.nextInt(candidates);
+                int stride = 1 + valueOrder.nextInt(candidates);
+                while (gcd(stride, candidates) != 1) stride--;
+                valueStride[step] = stride;
+            }
+            while (valueTried[step] < candidates) {
+                int c = (int) ((valueStart[step] + (long) valueTried[step]++ * valueStride[step]) % candidates);
+                if (c < numBlocks) {
+                    if (canBePlaced(c, step) && tryBlock(c, step)) return true;
+                } else if (canCreateNewBlock(step) && tryNewBlock(step)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int gcd(int a, int b) {
+            while (b != 0) {
+                int t = a % b;
+                a = b;
+                b = t;
+            }
+            return a;
+        }
+
+        /** Places {@code step} in the existing block {@code c}, undoing it if the block can no longer be authorized. */
+        private boolean tryBlock(int c, int step) {
+            place(c, step);
+            choice[step] = c;
+            openedBlock[step] = false;
+            if (userWords == 0 || joinUsers(c, step)) {
+                nodes++;
+                return true;
+            }
+            undo(step);
+            return false;
+        }
+
+        /** Opens a new block for {@code step}, undoing it if no free user is authorized for the step. */
+        private boolean tryNewBlock(int step) {
+            int b = numBlocks++;
+            Arrays.fill(blocks, b * stepWords, (b + 1) * stepWords, 0L);
+            place(b, step);
+            choice[step] = b;
+            openedBlock[step] = true;
+            if (userWords == 0 || openUsers(b, step)) {
+                nodes++;
+                return true;
+            }
+            undo(step);
+            return false;
+        }
+
+        /**
+         * Intersects the users of {@code block} with those of the step that just joined it,
+         * saving the previous set so {@link #undo(int)} can restore it. If the block's matched
+         * user is no longer authorized, one augmenting-path search re-matches the block.
+         * @return {@code false} if the partial partition can no longer be authorized.
+         */
+        private boolean joinUsers(int block, int step) {
+            int offset = block * userWords;
+            int saved = step * userWords;
+            long[] users = stepUsers[step];
+            long any = 0;
+            for (int w = 0; w < userWords; w++) {
+                long old = blockUsers[offset + w];
+                savedUsers[saved + w] = old;
+                long now = old & users[w];
+                blockUsers[offset + w] = now;
+                any |= now;
+            }
+            if (any == 0) return false;
+            int user = blockToUser[block];
+            if (BitSets.get(users, user)) return true;
+            if (nogoods.violated(step, blocks, choice)) return false;
+            setMatch(block, -1);
+            setOwner(user, -1);
+            return augment(block);
+        }
+
+        private boolean openUsers(int block, int step) {
+            System.arraycopy(stepUsers[step], 0, blockUsers, block * userWords, userWords);
+            if (BitSets.isEmpty(stepUsers[step])) return false;
+            if (nogoods.violated(step, blocks, choice)) return false;
+            setMatch(block, -1);
+            return augment(block);
+        }
+
+        /**
+         * Iterative Kuhn search for an augmenting path from the unmatched block {@code root}.
+         * All other blocks are matched, so failure means no matching saturates every block.
+         */
+        private boolean augment(int root) {
+            matchingsAttempted++;
+            long start = System.nanoTime();
+            try {
+                return searchAugmentingPath(root);
+            } finally {
+                matchingNanos += System.nanoTime() - start;
+            }
+        }
+
+        private boolean searchAugmentingPath(int root) {
+            Arrays.fill(visitedUsers, 0L);
+            int top = 0;
+            pathBlock[0] = root;
+            pathCursor[0] = 0;
+            reached[0] = root;
+            reachedCount = 1;
+            while (top >= 0) {
+                int b = pathBlock[top];
+                int u = nextUser(b, pathCursor[top]);
+                if (u < 0) {
+                    top--;
+                    continue;
+                }
+                pathCursor[top] = u + 1;
+                BitSets.set(visitedUsers, u);
+                int owner = userToBlock[u];
+                if (owner < 0) {
+                    // Flip the path: every block on the stack takes the user below it.
+                    for (int i = top; i >= 0; i--) {
+                        int taken = i == top ? u : pathUser[i + 1];
+                        setMatch(pathBlock[i], taken);
+                        setOwner(taken, pathBlock[i]);
+                    }
+                    return true;
+                }
+                top++;
+                pathBlock[top] = owner;
+                pathUser[top] = u;
+                pathCursor[top] = 0;
+                reached[reachedCount++] = owner;
+            }
+            if (reachedCount > 1) {
+                learnNogood();
+            }
+            return false;
+        }
+
+        /**
+         * The blocks reached by a failed search have fewer users between them than there
+         * are blocks. Steps are dropped from their groups while that stays true, so the
+         * nogood also covers partitions that group fewer steps together.
+         */
+        private void learnNogood() {
+            int m = reachedCount;
+            long[] groups = new long[m * stepWords];
+            long[] groupUsers = new long[m * userWords];
+            for (int i = 0; i < m; i++) {
+                System.arraycopy(blocks, reached[i] * stepWords, groups, i * stepWords, stepWords);
+                System.arraycopy(blockUsers, reached[i] * userWords, groupUsers, i * userWords, userWords);
+            }
+            long[] candidate = new long[userWords];
+            long[] union = new long[userWords];
+            for (int g = 0; g < m; g++) {
+                int goff = g * stepWords;
+                for (int s = BitSets.nextSetBit(groups, goff << 6); s >= 0 && s < (goff + stepWords) << 6;
+                        s = BitSets.nextSetBit(groups, s + 1)) {
+                    int step = s - (goff << 6);
+                    // Users of the group without this step.
+                    Arrays.fill(candidate, -1L);
+                    boolean others = false;
+                    for (int t = 0; t < numberSteps; t++) {
+                        if (t != step && BitSets.get(groups, (goff << 6) + t)) {
+                            others = true;
+                            for (int w = 0; w < userWords; w++) candidate[w] &= stepUsers[t][w];
+                        }
+                    }
+                    if (!others) continue;
+                    System.arraycopy(candidate, 0, union, 0, userWords);
+                    for (int h = 0; h < m; h++) {
+                        if (h == g) continue;
+                        for (int w = 0; w < userWords; w++) union[w] |= groupUsers[h * userWords + w];
+                    }
+                    if (BitSets.cardinality(union) < m) {
+                        BitSets.clear(groups, s);
+                        System.arraycopy(candidate, 0, groupUsers, g * userWords, userWords);
+                    }
+                }
+            }
+            nogoods.add(groups);
+        }
+
+        /** Next user of {@code block}, at or after {@code from}, not yet visited by this search. */
+        private int nextUser(int block, int from) {
+            int offset = block * userWords;
+            for (int w = from >>> 6; w < userWords; w++) {
+                long word = blockUsers[offset + w] & ~visitedUsers[w];
+                if (w == from >>> 6) word &= -1L << from;
+                if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            return -1;
+        }
+
+        private void setMatch(int block, int user) {
+            push(block, blockToUser[block]);
+            blockToUser[block] = user;
+        }
+
+        private void setOwner(int user, int block) {
+            push(-1 - user, userToBlock[user]);
+            userToBlock[user] = block;
+        }
+
+        private void push(int index, int old) {
+            if (trailTop + 2 > trail.length) {
+                trail = Arrays.copyOf(trail, trail.length * 2);
+            }
+            trail[trailTop++] = index;
+            trail[trailTop++] = old;
+        }
+
+        private void unwindTrail(int mark) {
+            while (trailTop > mark) {
+                int old = trail[--trailTop];
+                int index = trail[--trailTop];
+                if (index >= 0) {
+                    blockToUser[index] = old;
+                } else {
+                    userToBlock[-1 - index] = old;
+                }
             }
         }
+
+        /**
+         * A step may join a block if the block holds none of its RED neighbours and
+         * none of its already placed BLACK neighbours sit in a different block.
+         */
+        private boolean canBePlaced(int block, int step) {
+            long[] red = redMask[step];
+            long[] black = blackMask[step];
+            int offset = block * stepWords;
+            if (stepWords == 1) {
+                long b = blocks[offset];
+                return (b & red[0]) == 0 && (placed[0] & black[0] & ~b) == 0;
+            }
+            for (int w = 0; w < stepWords; w++) {
+                long b = blocks[offset + w];
+                if ((b & red[w]) != 0 || (placed[w] & black[w] & ~b) != 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * A step may open a new block only if none of its BLACK neighbours is placed yet.
+         */
+        private boolean canCreateNewBlock(int step) {
+            return BitSets.disjoint(placed, 0, blackMask[step], 0, stepWords);
+        }
+
+        private void place(int block, int step) {
+            blocks[block * stepWords + (step >>> 6)] |= 1L << step;
+            placed[step >>> 6] |= 1L << step;
+        }
+
+        private void undo(int step) {
+            if (openedBlock[step]) {
+                numBlocks--;
+            } else {
+                blocks[choice[step] * stepWords + (step >>> 6)] &= ~(1L << step);
+                if (userWords != 0) {
+                    System.arraycopy(savedUsers, step * userWords, blockUsers, choice[step] * userWords, userWords);
+                }
+            }
+            unwindTrail(trailMark[step]);
+            placed[step >>> 6] &= ~(1L << step);
+        }
     }
-    return true;
-}
+
    /**
      * Returns the list of all valid partitions generated.
      *
@@ -143,6 +882,7 @@ private boolean canCreateNewBlock(int step, List<Set<Integer>> partition) {
 public List<List<Set<Integer>>> getValidPartitions() {
     return validPartitions;
 }
+
 /*
  * prints valid paritions
  */
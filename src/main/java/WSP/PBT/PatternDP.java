@@ -0,0 +1,277 @@
+package WSP.PBT;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import WSP.BitSets;
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+import WSP.WSPInstance;
+
+/**
+ * Pattern dynamic programming over the steps in index order. Layer {@code i} holds the
+ * distinct feasible patterns of steps {@code 0..i-1}, each with one witness partition
+ * (a restricted-growth string) and a witness block-to-user matching.
+ *
+ * Two partial partitions are merged when nothing after step {@code i-1} can tell them
+ * apart: they group the still-active steps (steps with a constraint to a later step)
+ * the same way, their active blocks have the same common users, and their remaining
+ * blocks have the same multiset of common users. The canonical key packs the active
+ * steps' restricted-growth string into longs, followed by those user sets.
+ */
+public class PatternDP {
+    private final int numSteps;
+    private final int numUsers;
+    private final int userWords;
+    private final long[][] redMask;
+    private final long[][] blackMask;
+    private final long[][] stepUsers;
+    private final int[] lastNeighbour; // highest-indexed step sharing a constraint with s, or -1
+    private final BlockUserMatcher matcher = new HopcroftKarpMatcher();
+
+    private long statesExplored;
+    private int maxFrontier;
+
+    public PatternDP(ConstraintGraph graph, int[][] authorized, int numSteps, int numUsers) {
+        this(graph, numSteps, numUsers, usersOfSteps(authorized, numSteps, numUsers));
+    }
+
+    /** Takes the users of each step from the bitsets of {@code instance}. */
+    public PatternDP(WSPInstance instance) {
+        this(instance.graph(), instance.numSteps(), instance.numUsers(), usersOfSteps(instance));
+    }
+
+    private PatternDP(ConstraintGraph graph, int numSteps, int numUsers, long[][] stepUsers) {
+        this.numSteps = numSteps;
+        this.numUsers = numUsers;
+        this.userWords = Math.max(1, BitSets.words(numUsers));
+        int stepWords = Math.max(1, BitSets.words(numSteps));
+        this.redMask = new long[numSteps][];
+        this.blackMask = new long[numSteps][];
+        this.stepUsers = stepUsers;
+        this.lastNeighbour = new int[numSteps];
+        FrozenConstraintGraph view = graph.freeze();
+        for (int s = 0; s < numSteps; s++) {
+            redMask[s] = view.neighbourMask(s, ConstraintGraph.RED, stepWords);
+            blackMask[s] = view.neighbourMask(s, ConstraintGraph.BLACK, stepWords);
+        }
+        for (int s = 0; s < numSteps; s++) {
+            lastNeighbour[s] = -1;
+            for (int t = numSteps - 1; t > s; t--) {
+                if (BitSets.get(redMask[s], t) || BitSets.get(blackMask[s], t)) {
+                    lastNeighbour[s] = t;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long[][] usersOfSteps(int[][] authorized, int numSteps, int numUsers) {
+        long[][] stepUsers = new long[numSteps][Math.max(1, BitSets.words(numUsers))];
+        for (int s = 0; s < numSteps; s++) {
+            for (int u = 0; u < numUsers; u++) {
+                if (authorized[s][u] == 1) BitSets.set(stepUsers[s], u);
+            }
+        }
+        return stepUsers;
+    }
+
+    private static long[][] usersOfSteps(WSPInstance instance) {
+        long[][] stepUsers = new long[instance.numSteps()][];
+        for (int s = 0; s < stepUsers.length; s++) stepUsers[s] = instance.stepUsers(s);
+        return stepUsers;
+    }
+
+    /** A feasible pattern: its witness partition, common users per block and matching. */
+    private static final class State {
+        final int[] rgs;
+        final int numBlocks;
+        final long[] blockUsers;
+        final int[] blockToUser;
+
+        State(int[] rgs, int numBlocks, long[] blockUsers, int[] blockToUser) {
+            this.rgs = rgs;
+            this.numBlocks = numBlocks;
+            this.blockUsers = blockUsers;
+            this.blockToUser = blockToUser;
+        }
+    }
+
+    private static final class PatternKey {
+        final long[] data;
+        final int hash;
+
+        PatternKey(long[] data) {
+            this.data = data;
+            this.hash = Arrays.hashCode(data);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof PatternKey && Arrays.equals(data, ((PatternKey) o).data);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Runs the DP layer by layer and stops as soon as the last layer is reached.
+     * @return a step-based encoding (step -> user), or {@code null} if the instance is unsatisfiable.
+     */
+    public int[] solve() {
+        statesExplored = 0;
+        maxFrontier = 1;
+        Map<PatternKey, State> frontier = new HashMap<>();
+        frontier.put(new PatternKey(new long[0]), new State(new int[0], 0, new long[0], new int[0]));
+
+        for (int step = 0; step < numSteps; step++) {
+            int[] active = activeSteps(step + 1);
+            Map<PatternKey, State> next = new HashMap<>();
+            for (State state : frontier.values()) {
+                for (int b = 0; b <= state.numBlocks; b++) {
+                    State child = extend(state, step, b);
+                    if (child == null) continue;
+                    statesExplored++;
+                    if (step == numSteps - 1) {
+                        return encode(child);
+                    }
+                    next.putIfAbsent(key(child, active), child);
+                }
+            }
+            frontier = next;
+            maxFrontier = Math.max(maxFrontier, frontier.size());
+            if (frontier.isEmpty()) {
+                return null;
+            }
+        }
+        // Only reached when there are no steps at all.
+        return new int[0];
+    }
+
+    /** Number of feasible child patterns generated by the last run. */
+    public long getStatesExplored() {
+        return statesExplored;
+    }
+
+    /** Largest number of distinct patterns held in one layer during the last run. */
+    public int getMaxFrontier() {
+        return maxFrontier;
+    }
+
+    /**
+     * Places {@code step} in block {@code block} of {@code state} ({@code block == numBlocks}
+     * opens a new block) and re-matches the blocks.
+     * @return the child pattern, or {@code null} if it violates a constraint or cannot be authorized.
+     */
+    private State extend(State state, int step, int block) {
+        int[] rgs = state.rgs;
+        boolean opening = block == state.numBlocks;
+        for (int s = 0; s < step; s++) {
+            boolean inBlock = rgs[s] == block;
+            if (inBlock && BitSets.get(redMask[step], s)) return null;
+            if (!inBlock && BitSets.get(blackMask[step], s)) return null;
+        }
+
+        int numBlocks = opening ? state.numBlocks + 1 : state.numBlocks;
+        long[] blockUsers = Arrays.copyOf(state.blockUsers, numBlocks * userWords);
+        int offset = block * userWords;
+        long any = 0;
+        for (int w = 0; w < userWords; w++) {
+            long users = opening ? stepUsers[step][w] : blockUsers[offset + w] & stepUsers[step][w];
+            blockUsers[offset + w] = users;
+            any |= users;
+        }
+        if (any == 0) return null;
+
+        int[] blockToUser;
+        int kept = opening ? -1 : state.blockToUser[block];
+        if (kept >= 0 && BitSets.get(stepUsers[step], kept)) {
+            // The witness matching still holds.
+            blockToUser = state.blockToUser;
+        } else {
+            long[][] rows = new long[numBlocks][];
+            for (int b = 0; b < numBlocks; b++) {
+                rows[b] = Arrays.copyOfRange(blockUsers, b * userWords, (b + 1) * userWords);
+            }
+            blockToUser = matcher.match(rows, numBlocks, numUsers);
+            if (blockToUser == null) return null;
+        }
+
+        int[] childRgs = Arrays.copyOf(rgs, step + 1);
+        childRgs[step] = block;
+        return new State(childRgs, numBlocks, blockUsers, blockToUser);
+    }
+
+    /** Steps below {@code placed} that still have a constraint with a step not yet placed. */
+    private int[] activeSteps(int placed) {
+        int count = 0;
+        int[] active = new int[placed];
+        for (int s = 0; s < placed; s++) {
+            if (lastNeighbour[s] >= placed) active[count++] = s;
+        }
+        return Arrays.copyOf(active, count);
+    }
+
+    private PatternKey key(State state, int[] active) {
+        int[] canonical = new int[state.numBlocks];
+        Arrays.fill(canonical, -1);
+        int[] activeRgs = new int[active.length];
+        int activeBlocks = 0;
+        for (int i = 0; i < active.length; i++) {
+            int b = state.rgs[active[i]];
+            if (canonical[b] < 0) canonical[b] = activeBlocks++;
+            activeRgs[i] = canonical[b];
+        }
+
+        // Restricted-growth string of the active steps, packed into as few longs as possible.
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, activeBlocks - 1)));
+        int perWord = 64 / bits;
+        int rgsWords = 1 + (active.length + perWord - 1) / perWord;
+        long[] data = new long[rgsWords + state.numBlocks * userWords];
+        data[0] = activeBlocks; // fixes the packing width
+        for (int i = 0; i < active.length; i++) {
+            data[1 + i / perWord] |= (long) activeRgs[i] << ((i % perWord) * bits);
+        }
+
+        // Users of the active blocks in canonical order, then the other blocks sorted by users.
+        Integer[] order = new Integer[state.numBlocks];
+        int[] byCanonical = new int[activeBlocks];
+        int inactive = activeBlocks;
+        for (int b = 0; b < state.numBlocks; b++) {
+            if (canonical[b] >= 0) {
+                byCanonical[canonical[b]] = b;
+            } else {
+                order[inactive++] = b;
+            }
+        }
+        for (int c = 0; c < activeBlocks; c++) {
+            order[c] = byCanonical[c];
+        }
+        long[] users = state.blockUsers;
+        Arrays.sort(order, activeBlocks, state.numBlocks, (x, y) -> {
+            for (int w = 0; w < userWords; w++) {
+                int cmp = Long.compare(users[x * userWords + w], users[y * userWords + w]);
+                if (cmp != 0) return cmp;
+            }
+            return 0;
+        });
+        int pos = rgsWords;
+        for (int i = 0; i < state.numBlocks; i++) {
+            System.arraycopy(users, order[i] * userWords, data, pos, userWords);
+            pos += userWords;
+        }
+        return new PatternKey(data);
+    }
+
+    private int[] encode(State state) {
+        int[] encoding = new int[numSteps];
+        for (int s = 0; s < numSteps; s++) {
+            encoding[s] = state.blockToUser[state.rgs[s]];
+        }
+        return encoding;
+    }
+}
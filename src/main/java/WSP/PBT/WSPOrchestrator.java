@@ -3,67 +3,279 @@ package WSP.PBT;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
 
+import WSP.RestartPolicy;
+import WSP.SearchContext;
+import WSP.SolverStatistics;
+import WSP.StepOrdering;
 import WSP.VertexCover.ConstraintGraph;
+import WSP.WSPInstance;
 
 public class WSPOrchestrator {
-      private ConstraintGraph graph;    // For step-to-step constraints in partition generation
-    private int[][] authorized;       // authorized[step][user] = 1 or 0
     private int numSteps;
-    private int numUsers;
+    private final WSPInstance instance;
 
     private PartitionGenerator partitionGenerator; 
+    private final StepOrdering ordering;
+    private long setupNanos;
+    private SolverStatistics statistics = new SolverStatistics();
+    private RestartPolicy restartPolicy = RestartPolicy.NONE;
+    private long restartBase = RestartPolicy.DEFAULT_BASE;
+    private long seed;
+    private boolean keepNogoods = true;
+    private SearchContext context;
+    private boolean stopped;
 
     public WSPOrchestrator(ConstraintGraph graph,
                            int[][] authorized,
                            int numSteps,
                            int numUsers) {
-        this.graph = graph;
-        this.authorized = authorized;
-        this.numSteps = numSteps;
-        this.numUsers = numUsers;
+        this(graph, authorized, numSteps, numUsers, StepOrdering.INDEX);
+    }
+
+    /**
+     * @param ordering the order in which the partition search places the steps
+     */
+    public WSPOrchestrator(ConstraintGraph graph,
+                           int[][] authorized,
+                           int numSteps,
+                           int numUsers,
+                           StepOrdering ordering) {
+        this(new WSPInstance(graph, numSteps, numUsers, authorized), ordering);
+    }
+
+    /**
+     * @param instance the WSP instance; restarts build their partition generators from it
+     * @param ordering the order in which the partition search places the steps
+     */
+    public WSPOrchestrator(WSPInstance instance, StepOrdering ordering) {
+        this.instance = instance;
+        this.numSteps = instance.numSteps();
+        this.ordering = ordering;
 
-        // Create the partition generator using your constraints (graph).
-        this.partitionGenerator = new PartitionGenerator(this.graph, this.numSteps);
+        // Create the partition generator using your constraints (graph). It also prunes
+        // partitions whose blocks cannot all be given a common authorized user.
+        long start = System.nanoTime();
+        this.partitionGenerator = new PartitionGenerator(instance, ordering);
+        this.setupNanos = System.nanoTime() - start;
     }
     
+    /**
+     * Enumerates every authorized partition. Partitions are pulled one at a time
+     * from the generator, which keeps a block-to-user matching alive during its
+     * search and only yields partitions that can be authorized, so only the
+     * per-partition results are kept in memory.
+     *
+     * @return the block-to-user matching of every authorized partition, in the order found;
+     *         empty if the instance is unsatisfiable.
+     */
     public List<int[]> solve() {
-        partitionGenerator.GenerateParitions();
-        List<List<Set<Integer>>> allPartitions = partitionGenerator.getValidPartitions();
-        System.out.println(allPartitions);
+        return solve(null);
+    }
 
+    /**
+     * Same as {@link #solve()}, handing each authorized partition and its block-to-user
+     * matching to {@code listener} as it is found.
+     *
+     * @param listener called once per authorized partition, or {@code null}
+     */
+    public List<int[]> solve(BiConsumer<List<Set<Integer>>, int[]> listener) {
         List<int[]> blockAssignments = new ArrayList<>();
-        boolean anyValid = false;
-
-        for (List<Set<Integer>> partition : allPartitions) {
-            int[] matching = PartitionAuthorizer.authorizePartition(partition, authorized, numUsers);
+        PartitionGenerator.PartitionIterator partitions = partitionGenerator.iterator();
+        while (partitions.hasNext()) {
+            List<Set<Integer>> partition = partitions.next();
+            int[] matching = partitions.currentMatching();
+            if (listener != null) {
+                listener.accept(partition, matching);
+            }
+            blockAssignments.add(matching);
+        }
+        return blockAssignments;
+    }
 
+    /**
+     * Stops at the first authorized partition. Partitions are generated lazily,
+     * so the full list of partitions is never built.
+     *
+     * @return the step-based encoding (step -> user) of the first authorized partition, or {@code null} if none exists.
+     */
+    public int[] solveFirst() {
+        statistics = new SolverStatistics();
+        if (restartPolicy != RestartPolicy.NONE) {
+            return solveFirstWithRestarts();
+        }
+        long start = System.nanoTime();
+        PartitionGenerator.PartitionIterator partitions = partitionGenerator.iterator();
+        int[] encoding = null;
+        while (partitions.hasNext()) {
+            List<Set<Integer>> partition = partitions.next();
+            int[] matching = partitions.currentMatching();
             if (matching != null) {
-                anyValid = true;
-                // System.out.println("Partition " + partition + " is authorized!");
-                // Print the block->user assignment
-                System.out.println(PartitionAuthorizer.matchingToString(partition, matching));
-
-                // Build the step-based encoding
-                int[] stepEncoding = buildVectorEncoding(partition, matching);
-                System.out.println("Step-based encoding = " + Arrays.toString(stepEncoding));
-
-                blockAssignments.add(matching);
-            } else {
-                // System.out.println("Partition " + partition + " is NOT authorized.\n");
-                blockAssignments.add(null);
+                encoding = buildVectorEncoding(partition, matching);
+                break;
             }
-            
         }
-        if (!anyValid) {
-            System.out.println(
-                "WSP instance is unsatisfiable: no valid assignment was found " +
-                "for any partition with the given constraints and authorization matrix."
-            );
+        long searchNanos = System.nanoTime() - start;
+        stopped = encoding == null && partitions.isSuspended();
+        statistics.set("partitionsExplored", partitions.getNodes());
+        statistics.set("matchingsAttempted", partitions.getMatchingsAttempted());
+        statistics.set("nogoodsLearned", partitions.nogoods().size());
+        statistics.set("nogoodPrunes", partitions.nogoods().getPrunes());
+        statistics.addPhase("setup", setupNanos);
+        statistics.addPhase("partition", searchNanos - partitions.getMatchingNanos());
+        statistics.addPhase("matching", partitions.getMatchingNanos());
+        return encoding;
+    }
+
+    /**
+     * Sets the deadline and cancellation context of the following searches, or {@code null}
+     * for none. A search whose context stops returns {@code null}, with the statistics of
+     * the work done so far.
+     */
+    public void setContext(SearchContext context) {
+        this.context = context;
+        partitionGenerator.setContext(context);
+    }
+
+    /**
+     * Whether the last {@link #solveFirst()} or {@code solveFirstParallel} run stopped on
+     * the context before it found an authorized partition or ruled every partition out.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Makes {@link #solveFirst()} restart its partition search according to {@code policy},
+     * each time with the step order's ties broken and the blocks of every step tried in an
+     * order drawn at random from {@code seed}.
+     *
+     * @param base the number of placed steps the policy's sequence is counted in
+     */
+    public void setRestarts(RestartPolicy policy, long base, long seed) {
+        this.restartPolicy = policy;
+        this.restartBase = base;
+        this.seed = seed;
+    }
+
+    /**
+     * Whether Hall nogoods learned before a restart are carried over to the next search
+     * (the default). They depend only on the authorization matrix, so they stay valid.
+     */
+    public void setKeepNogoods(boolean keepNogoods) {
+        this.keepNogoods = keepNogoods;
+    }
+
+    private int[] solveFirstWithRestarts() {
+        long start = System.nanoTime();
+        long setup = setupNanos;
+        Random random = new Random(seed);
+        HallNogoodStore learned = null;
+        int[] previousOrder = null;
+        int[] encoding = null;
+        long nodes = 0, matchings = 0, matchingNanos = 0, prunes = 0;
+        int restarts = 0;
+        while (true) {
+            long setupStart = System.nanoTime();
+            int[] order = ordering.order(instance, random);
+            PartitionGenerator generator = new PartitionGenerator(instance, order);
+            generator.setContext(context);
+            HallNogoodStore nogoods = keepNogoods && learned != null
+                ? learned.remapped(previousOrder, StepOrdering.inverse(order))
+                : new HallNogoodStore(numSteps, HallNogoodStore.DEFAULT_CAPACITY);
+            setup += System.nanoTime() - setupStart;
+
+            PartitionGenerator.PartitionIterator partitions = generator.iterator(nogoods);
+            partitions.setNodeLimit(restartPolicy.cutoff(restarts, restartBase));
+            partitions.setValueOrder(random);
+            while (encoding == null && partitions.hasNext()) {
+                List<Set<Integer>> partition = partitions.next();
+                encoding = buildVectorEncoding(partition, partitions.currentMatching());
+            }
+            nodes += partitions.getNodes();
+            matchings += partitions.getMatchingsAttempted();
+            matchingNanos += partitions.getMatchingNanos();
+            prunes += nogoods.getPrunes();
+            learned = nogoods;
+            previousOrder = order;
+            // A suspended iterator hit either the restart cutoff or the context.
+            stopped = encoding == null && partitions.isSuspended() && context != null && context.shouldStop();
+            if (encoding != null || !partitions.isSuspended() || stopped) break;
+            restarts++;
         }
+        long searchNanos = System.nanoTime() - start - (setup - setupNanos);
+        statistics.set("partitionsExplored", nodes);
+        statistics.set("matchingsAttempted", matchings);
+        statistics.set("nogoodsLearned", learned.size());
+        statistics.set("nogoodPrunes", prunes);
+        statistics.set("restarts", restarts);
+        statistics.addPhase("setup", setup);
+        statistics.addPhase("partition", searchNanos - matchingNanos);
+        statistics.addPhase("matching", matchingNanos);
+        return encoding;
+    }
+
+    /**
+     * Counters and phase timings of the last {@link #solveFirst()} or
+     * {@link #solveFirstParallel(int)} run. "partitionsExplored" is the number of partial
+     * partitions built, one per step placed, summed over every restart and worker.
+     */
+    public SolverStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Same as {@link #solveFirst()}, but splits the partition tree into fork/join tasks
+     * over {@code parallelism} worker threads. Workers stop once any of them finds an
+     * authorized partition.
+     *
+     * @return the step-based encoding (step -> user) of an authorized partition, or {@code null} if none exists.
+     */
+    public int[] solveFirstParallel(int parallelism) {
+        return solveFirstParallel(new ParallelPartitionSearch(partitionGenerator, parallelism), parallelism);
+    }
+
+    /**
+     * Same as {@link #solveFirstParallel(int)}, on a pool owned by the caller, which may be
+     * shared with other searches and is left running.
+     */
+    public int[] solveFirstParallel(ForkJoinPool pool) {
+        return solveFirstParallel(pool, pool.getParallelism());
+    }
+
+    /**
+     * Same as {@link #solveFirstParallel(ForkJoinPool)}, with at most {@code parallelism}
+     * tasks of the search running on the pool at once.
+     */
+    public int[] solveFirstParallel(ForkJoinPool pool, int parallelism) {
+        return solveFirstParallel(new ParallelPartitionSearch(partitionGenerator, pool, parallelism), parallelism);
+    }
+
+    private int[] solveFirstParallel(ParallelPartitionSearch search, int parallelism) {
+        statistics = new SolverStatistics();
+        long start = System.nanoTime();
+        int[] encoding = search.findFirst();
+        stopped = encoding == null && search.isStopped();
+        statistics.set("partitionsExplored", search.getNodes());
+        statistics.set("tasks", search.getTaskCount());
+        statistics.set("parallelism", parallelism);
+        statistics.addPhase("setup", setupNanos);
+        statistics.addPhase("search", System.nanoTime() - start);
+        return encoding;
+    }
 
-        return blockAssignments; 
+    /**
+     * Solves the instance with pattern dynamic programming ({@link PatternDP}), which merges
+     * equivalent partial partitions instead of enumerating every partition.
+     *
+     * @return a step-based encoding (step -> user), or {@code null} if none exists.
+     */
+    public int[] solvePatternDP() {
+        return new PatternDP(instance).solve();
     }
 
     private int[] buildVectorEncoding(List<Set<Integer>> partition, int[] blockToUser) {
@@ -0,0 +1,57 @@
+package WSP;
+
+/**
+ * When a first-solution search gives up on its current tree and starts again with fresh
+ * random tie-breaking. Restarting cuts off the long runs a search gets stuck in after a few
+ * bad early choices, while what it has learned (nogoods, constraint weights) is kept. The
+ * cutoffs grow without bound, so a restarting search still finishes on unsatisfiable
+ * instances. A cutoff counts the search's own unit of work: failed assignments for
+ * backtracking, placed steps for the partition search.
+ */
+public enum RestartPolicy {
+    /** Never restart. */
+    NONE {
+        @Override
+        public long cutoff(int restart, long base) {
+            return Long.MAX_VALUE;
+        }
+    },
+    /** Luby's sequence times {@code base}: 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ... */
+    LUBY {
+        @Override
+        public long cutoff(int restart, long base) {
+            return saturatedProduct(base, luby(restart + 1));
+        }
+    },
+    /** {@code base}, then 1.5 times the previous cutoff. */
+    GEOMETRIC {
+        @Override
+        public long cutoff(int restart, long base) {
+            double cutoff = base * Math.pow(1.5, restart);
+            return cutoff >= Long.MAX_VALUE ? Long.MAX_VALUE : (long) cutoff;
+        }
+    };
+
+    /** Default unit of work multiplied by the policy's sequence. */
+    public static final long DEFAULT_BASE = 100;
+
+    /**
+     * @param restart the number of restarts so far, from 0
+     * @param base    the unit the sequence is multiplied by
+     * @return the work allowed before the next restart
+     */
+    public abstract long cutoff(int restart, long base);
+
+    /** The i-th term (from 1) of Luby's universal sequence. */
+    static long luby(long i) {
+        while (true) {
+            int k = 64 - Long.numberOfLeadingZeros(i); // 2^(k-1) <= i < 2^k
+            if (i == (1L << k) - 1) return 1L << (k - 1);
+            i -= (1L << (k - 1)) - 1;
+        }
+    }
+
+    private static long saturatedProduct(long a, long b) {
+        return b != 0 && a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+}
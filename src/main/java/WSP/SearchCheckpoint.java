@@ -0,0 +1,37 @@
+package WSP;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Header shared by the checkpoint files of the suspendable searches. A checkpoint is only
+ * valid for the engine and instance that wrote it: the header records the engine kind and
+ * a fingerprint of the instance and search options, and reading checks both.
+ */
+public final class SearchCheckpoint {
+    public static final int MAGIC = 0x57535043; // "WSPC"
+    public static final int VERSION = 1;
+    public static final int BACKTRACKING = 1;
+    public static final int PARTITION = 2;
+
+    private SearchCheckpoint() {}
+
+    public static void writeHeader(DataOutputStream out, int kind, int fingerprint) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(kind);
+        out.writeInt(fingerprint);
+    }
+
+    /**
+     * @throws IOException if the stream is not a checkpoint of this kind for this instance
+     */
+    public static void readHeader(DataInputStream in, int kind, int fingerprint) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a search checkpoint");
+        int version = in.readInt();
+        if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+        if (in.readInt() != kind) throw new IOException("Checkpoint was written by another search engine");
+        if (in.readInt() != fingerprint) throw new IOException("Checkpoint was written for another instance or options");
+    }
+}
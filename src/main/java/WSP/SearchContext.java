@@ -0,0 +1,116 @@
+package WSP;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Deadline and cancellation shared by every solver of one request. The search loops poll
+ * {@link #shouldStop()} between nodes and give up once it is true; CP-SAT is given the
+ * remaining time as {@code max_time_in_seconds} and is stopped through
+ * {@link #onCancel(Runnable)}. Once the context has stopped it stays stopped.
+ *
+ * A context may be polled from several worker threads at once.
+ */
+public final class SearchContext {
+    // Longer limits are treated as none, so the deadline cannot overflow System.nanoTime().
+    private static final long MAX_TIME_LIMIT_MILLIS = Long.MAX_VALUE / 2_000_000L;
+
+    private final long deadlineNanos;
+    private final boolean hasDeadline;
+    private volatile boolean cancelled;
+    private volatile boolean expired;
+    private final List<Runnable> cancelListeners = new CopyOnWriteArrayList<>();
+    private final SearchContext parent;   // null unless made by child()
+    private final Runnable cancelFromParent;
+
+    private SearchContext(long timeLimitMillis) {
+        this.hasDeadline = timeLimitMillis <= MAX_TIME_LIMIT_MILLIS;
+        this.deadlineNanos = hasDeadline ? System.nanoTime() + timeLimitMillis * 1_000_000L : 0;
+        this.parent = null;
+        this.cancelFromParent = null;
+    }
+
+    private SearchContext(SearchContext parent) {
+        this.hasDeadline = parent.hasDeadline;
+        this.deadlineNanos = parent.deadlineNanos;
+        this.parent = parent;
+        this.cancelFromParent = this::cancel;
+    }
+
+    /** A context that only stops when it is cancelled. */
+    public static SearchContext unlimited() {
+        return new SearchContext(Long.MAX_VALUE);
+    }
+
+    /** A context whose deadline is {@code timeLimitMillis} from now. */
+    public static SearchContext withTimeLimit(long timeLimitMillis) {
+        if (timeLimitMillis < 0) {
+            throw new IllegalArgumentException("Time limit must not be negative: " + timeLimitMillis);
+        }
+        return new SearchContext(timeLimitMillis);
+    }
+
+    /**
+     * A context with the same deadline that is also cancelled when this one is, but can be
+     * cancelled on its own without stopping this one, such as the searches of one part of
+     * a request. {@link #close()} the child once it is no longer used.
+     */
+    public SearchContext child() {
+        SearchContext child = new SearchContext(this);
+        onCancel(child.cancelFromParent);
+        return child;
+    }
+
+    /** Detaches a context made by {@link #child()} from its parent; does nothing on other contexts. */
+    public void close() {
+        if (parent != null) parent.removeCancelListener(cancelFromParent);
+    }
+
+    /** Stops every search polling this context and runs the cancel listeners. */
+    public void cancel() {
+        if (cancelled) return;
+        cancelled = true;
+        for (Runnable listener : cancelListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Registers an action to run on {@link #cancel()}, such as stopping a native solver.
+     * It runs at once if the context is already cancelled.
+     */
+    public void onCancel(Runnable listener) {
+        cancelListeners.add(listener);
+        if (cancelled) listener.run();
+    }
+
+    /** Removes a listener added with {@link #onCancel(Runnable)}. */
+    public void removeCancelListener(Runnable listener) {
+        cancelListeners.remove(listener);
+    }
+
+    /** Whether the search should give up: the context was cancelled or its deadline has passed. */
+    public boolean shouldStop() {
+        if (cancelled || expired) return true;
+        if (hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+            expired = true;
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /** Whether {@link #shouldStop()} has seen the deadline pass. */
+    public boolean isExpired() {
+        return expired;
+    }
+
+    /** Seconds left before the deadline, 0 once it has passed, or infinity without one. */
+    public double remainingSeconds() {
+        if (!hasDeadline) return Double.POSITIVE_INFINITY;
+        return Math.max(0, deadlineNanos - System.nanoTime()) / 1e9;
+    }
+}
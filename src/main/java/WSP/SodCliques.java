@@ -0,0 +1,98 @@
+package WSP;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+/**
+ * Finds the maximal cliques of the SoD (RED) part of a constraint graph. The steps of such
+ * a clique must all get different users, so a solver can treat the clique as one global
+ * all-different constraint instead of its pairwise RED edges, and see at once that, for
+ * example, four steps cannot share three users.
+ */
+public final class SodCliques {
+    /** Default bound on the number of cliques returned. */
+    public static final int DEFAULT_LIMIT = 1000;
+
+    private SodCliques() {}
+
+    /**
+     * Bron–Kerbosch with Tomita pivoting over RED-neighbour bitsets.
+     *
+     * @param minSize the smallest clique worth returning; pairs are already RED edges
+     * @param limit   the search stops after this many cliques
+     * @return maximal RED cliques of at least {@code minSize} steps, each in increasing step order
+     */
+    public static List<int[]> maximalCliques(ConstraintGraph graph, int numSteps, int minSize, int limit) {
+        int words = Math.max(1, BitSets.words(numSteps));
+        long[][] red = new long[numSteps][];
+        FrozenConstraintGraph view = graph.freeze();
+        for (int s = 0; s < numSteps; s++) {
+            red[s] = view.neighbourMask(s, ConstraintGraph.RED, words);
+        }
+        long[] candidates = new long[words];
+        for (int s = 0; s < numSteps; s++) {
+            if (!BitSets.isEmpty(red[s])) BitSets.set(candidates, s);
+        }
+        List<int[]> cliques = new ArrayList<>();
+        expand(red, new long[words], candidates, new long[words], minSize, limit, cliques);
+        return cliques;
+    }
+
+    public static List<int[]> maximalCliques(ConstraintGraph graph, int numSteps) {
+        return maximalCliques(graph, numSteps, 3, DEFAULT_LIMIT);
+    }
+
+    /**
+     * Reports every maximal clique that contains {@code clique}, extends it only with
+     * {@code candidates}, and is not extendable by {@code excluded}.
+     */
+    private static void expand(long[][] red, long[] clique, long[] candidates, long[] excluded,
+                               int minSize, int limit, List<int[]> cliques) {
+        if (cliques.size() >= limit) return;
+        int words = clique.length;
+        if (BitSets.isEmpty(candidates)) {
+            if (BitSets.isEmpty(excluded) && BitSets.cardinality(clique) >= minSize) {
+                int[] steps = new int[BitSets.cardinality(clique)];
+                int i = 0;
+                for (int s = BitSets.nextSetBit(clique, 0); s >= 0; s = BitSets.nextSetBit(clique, s + 1)) {
+                    steps[i++] = s;
+                }
+                cliques.add(steps);
+            }
+            return;
+        }
+        // Branch only on candidates outside the neighbourhood of the pivot with the most
+        // candidate neighbours; the others are reached through the pivot's branches.
+        int pivot = -1;
+        int best = -1;
+        for (long[] set : new long[][]{candidates, excluded}) {
+            for (int p = BitSets.nextSetBit(set, 0); p >= 0; p = BitSets.nextSetBit(set, p + 1)) {
+                int degree = 0;
+                for (int w = 0; w < words; w++) degree += Long.bitCount(red[p][w] & candidates[w]);
+                if (degree > best) {
+                    best = degree;
+                    pivot = p;
+                }
+            }
+        }
+        long[] branches = new long[words];
+        for (int w = 0; w < words; w++) branches[w] = candidates[w] & ~red[pivot][w];
+        for (int v = BitSets.nextSetBit(branches, 0); v >= 0; v = BitSets.nextSetBit(branches, v + 1)) {
+            long[] nextClique = clique.clone();
+            BitSets.set(nextClique, v);
+            long[] nextCandidates = new long[words];
+            long[] nextExcluded = new long[words];
+            for (int w = 0; w < words; w++) {
+                nextCandidates[w] = candidates[w] & red[v][w];
+                nextExcluded[w] = excluded[w] & red[v][w];
+            }
+            expand(red, nextClique, nextCandidates, nextExcluded, minSize, limit, cliques);
+            if (cliques.size() >= limit) return;
+            BitSets.clear(candidates, v);
+            BitSets.set(excluded, v);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package WSP;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named counters and phase timings reported by a solver run, in insertion order.
+ * Phase times are accumulated in nanoseconds and reported in milliseconds under
+ * {@code <phase>TimeMs}, so times summed over many short runs keep their fractions.
+ */
+public class SolverStatistics {
+    private final Map<String, Long> values = new LinkedHashMap<>();
+    private final Set<String> phases = new HashSet<>();   // keys of values held in nanoseconds
+
+    public void set(String name, long value) {
+        values.put(name, value);
+    }
+
+    public void add(String name, long delta) {
+        values.merge(name, delta, Long::sum);
+    }
+
+    public long get(String name) {
+        long value = values.getOrDefault(name, 0L);
+        return phases.contains(name) ? value / 1_000_000L : value;
+    }
+
+    /** Adds {@code nanos} to the time of {@code phase}. */
+    public void addPhase(String phase, long nanos) {
+        String name = phase + "TimeMs";
+        phases.add(name);
+        add(name, nanos);
+    }
+
+    /** Adds the counters and phase times of {@code other} to these; phase times are added before rounding. */
+    public void merge(SolverStatistics other) {
+        other.values.forEach(this::add);
+        phases.addAll(other.phases);
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    /** The counters, with phase times in whole milliseconds. */
+    public Map<String, Long> asMap() {
+        Map<String, Long> map = new LinkedHashMap<>(values);
+        for (String name : phases) map.put(name, values.get(name) / 1_000_000L);
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public String toString() {
+        return asMap().toString();
+    }
+}
@@ -0,0 +1,273 @@
+package WSP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+/**
+ * Order in which a search assigns or places the workflow steps. Each strategy returns a
+ * permutation {@code order}, where {@code order[i]} is the step handled at depth {@code i};
+ * steps that are hard to satisfy come first so that dead ends show up near the root.
+ * {@code authorized} may be {@code null}, in which case every step counts as equally
+ * authorised. Ties are broken by step index, or at random when a {@link Random} is given.
+ * Given a {@link WSPInstance}, the strategies take the authorised counts from its indices
+ * instead of scanning a matrix.
+ */
+public enum StepOrdering {
+    /** Steps in index (business) order. */
+    INDEX {
+        @Override
+        int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random) {
+            int[] order = new int[numSteps];
+            for (int s = 0; s < numSteps; s++) order[s] = s;
+            return order;
+        }
+    },
+    /** Steps with the most SoD constraints first. */
+    MAX_RED_DEGREE {
+        @Override
+        int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random) {
+            int[] red = degrees(graph, ConstraintGraph.RED, numSteps);
+            return sorted(numSteps, Comparator.comparingInt(s -> -red[s]), random);
+        }
+    },
+    /** Steps with the fewest authorised users first, ties broken by SoD degree. */
+    FEWEST_AUTHORISED {
+        @Override
+        int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random) {
+            int[] users = authorisedCounts.get();
+            int[] red = degrees(graph, ConstraintGraph.RED, numSteps);
+            return sorted(numSteps, Comparator.<Integer>comparingInt(s -> users[s]).thenComparingInt(s -> -red[s]),
+                    random);
+        }
+    },
+    /**
+     * Steps joined by BoD constraints are kept next to each other, so a component is
+     * decided as soon as its first step is. Components with the most SoD constraints
+     * come first; steps keep their index order inside a component.
+     */
+    BOD_GROUPED {
+        @Override
+        int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random) {
+            int words = Math.max(1, BitSets.words(numSteps));
+            FrozenConstraintGraph view = graph.freeze();
+            int[] red = degrees(graph, ConstraintGraph.RED, numSteps);
+            boolean[] seen = new boolean[numSteps];
+            List<int[]> components = new ArrayList<>();
+            List<Integer> weights = new ArrayList<>();
+            for (int s = 0; s < numSteps; s++) {
+                if (seen[s]) continue;
+                long[] component = new long[words];
+                int[] queue = new int[numSteps];
+                int head = 0, tail = 0;
+                queue[tail++] = s;
+                seen[s] = true;
+                while (head < tail) {
+                    int u = queue[head++];
+                    BitSets.set(component, u);
+                    long[] black = view.neighbourMask(u, ConstraintGraph.BLACK, words);
+                    for (int v = BitSets.nextSetBit(black, 0); v >= 0; v = BitSets.nextSetBit(black, v + 1)) {
+                        if (!seen[v]) {
+                            seen[v] = true;
+                            queue[tail++] = v;
+                        }
+                    }
+                }
+                int[] steps = new int[tail];
+                int weight = 0;
+                int i = 0;
+                for (int v = BitSets.nextSetBit(component, 0); v >= 0; v = BitSets.nextSetBit(component, v + 1)) {
+                    steps[i++] = v;
+                    weight += red[v];
+                }
+                components.add(steps);
+                weights.add(weight);
+            }
+            Integer[] byWeight = new Integer[components.size()];
+            for (int c = 0; c < byWeight.length; c++) byWeight[c] = c;
+            shuffle(byWeight, random);
+            Arrays.sort(byWeight, Comparator.comparingInt(c -> -weights.get(c)));
+            int[] order = new int[numSteps];
+            int pos = 0;
+            for (int c : byWeight) {
+                for (int s : components.get(c)) order[pos++] = s;
+            }
+            return order;
+        }
+    },
+    /**
+     * DSatur-style order: the next step is the one most constrained by the steps already
+     * ordered (a placed BoD neighbour first, then the most placed SoD neighbours), ties
+     * broken by SoD degree and then by fewest authorised users. Searches that can see
+     * their current assignment may re-evaluate this choice at every node instead.
+     */
+    DSATUR {
+        @Override
+        int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random) {
+            int words = Math.max(1, BitSets.words(numSteps));
+            int[] red = degrees(graph, ConstraintGraph.RED, numSteps);
+            int[] users = authorisedCounts.get();
+            long[][] redMask = new long[numSteps][];
+            long[][] blackMask = new long[numSteps][];
+            FrozenConstraintGraph view = graph.freeze();
+            for (int s = 0; s < numSteps; s++) {
+                redMask[s] = view.neighbourMask(s, ConstraintGraph.RED, words);
+                blackMask[s] = view.neighbourMask(s, ConstraintGraph.BLACK, words);
+            }
+            long[] ordered = new long[words];
+            int[] order = new int[numSteps];
+            for (int i = 0; i < numSteps; i++) {
+                int best = -1;
+                boolean bestBound = false;
+                int bestSaturation = -1;
+                int ties = 0;
+                for (int s = 0; s < numSteps; s++) {
+                    if (BitSets.get(ordered, s)) continue;
+                    boolean bound = !BitSets.disjoint(blackMask[s], 0, ordered, 0, words);
+                    int saturation = 0;
+                    for (int w = 0; w < words; w++) saturation += Long.bitCount(redMask[s][w] & ordered[w]);
+                    boolean take;
+                    if (best < 0 || better(bound, saturation, red[s], users[s],
+                            bestBound, bestSaturation, red[best], users[best])) {
+                        take = true;
+                        ties = 1;
+                    } else {
+                        // Equal to the best so far: keep each of the tied steps with equal chance.
+                        take = random != null && !better(bestBound, bestSaturation, red[best], users[best],
+                                bound, saturation, red[s], users[s]) && random.nextInt(++ties) == 0;
+                    }
+                    if (take) {
+                        best = s;
+                        bestBound = bound;
+                        bestSaturation = saturation;
+                    }
+                }
+                order[i] = best;
+                BitSets.set(ordered, best);
+            }
+            return order;
+        }
+    },
+    /**
+     * dom/wdeg: fewest authorised users per constraint first. As a fixed order every
+     * constraint weighs one (dom/deg); searches that keep domains re-evaluate the choice at
+     * every node, with constraint weights raised each time a constraint wipes out a domain.
+     */
+    DOM_WDEG {
+        @Override
+        int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random) {
+            int[] users = authorisedCounts.get();
+            int[] red = degrees(graph, ConstraintGraph.RED, numSteps);
+            int[] black = degrees(graph, ConstraintGraph.BLACK, numSteps);
+            return sorted(numSteps, (a, b) -> Long.compare(
+                    (long) users[a] * Math.max(1, red[b] + black[b]),
+                    (long) users[b] * Math.max(1, red[a] + black[a])), random);
+        }
+    };
+
+    /**
+     * @return a permutation of {@code 0..numSteps-1}: {@code order[i]} is the step handled at depth {@code i}.
+     */
+    public int[] order(ConstraintGraph graph, int[][] authorized, int numSteps) {
+        return order(graph, authorized, numSteps, null);
+    }
+
+    /**
+     * Same as {@link #order(ConstraintGraph, int[][], int)}, with ties broken by {@code random}
+     * instead of by step index when it is not {@code null}.
+     */
+    public int[] order(ConstraintGraph graph, int[][] authorized, int numSteps, Random random) {
+        return order(graph, () -> authorisedCounts(authorized, numSteps), numSteps, random);
+    }
+
+    /**
+     * Same as {@link #order(ConstraintGraph, int[][], int)} for the graph and authorisation
+     * of {@code instance}.
+     */
+    public int[] order(WSPInstance instance) {
+        return order(instance, null);
+    }
+
+    /**
+     * Same as {@link #order(ConstraintGraph, int[][], int, Random)} for the graph and
+     * authorisation of {@code instance}.
+     */
+    public int[] order(WSPInstance instance, Random random) {
+        return order(instance.graph(), () -> authorisedCounts(instance), instance.numSteps(), random);
+    }
+
+    /**
+     * @param authorisedCounts the number of users authorised for each step; only asked for by
+     *                         the strategies that use it
+     */
+    abstract int[] order(ConstraintGraph graph, Supplier<int[]> authorisedCounts, int numSteps, Random random);
+
+    /** {@code position[order[i]] = i}. */
+    public static int[] inverse(int[] order) {
+        int[] position = new int[order.length];
+        for (int i = 0; i < order.length; i++) position[order[i]] = i;
+        return position;
+    }
+
+    /** DSatur preference: BoD-bound, then saturation, then SoD degree, then fewest authorised users. */
+    public static boolean better(boolean bound, int saturation, int redDegree, int users,
+                                 boolean bestBound, int bestSaturation, int bestRedDegree, int bestUsers) {
+        if (bound != bestBound) return bound;
+        if (saturation != bestSaturation) return saturation > bestSaturation;
+        if (redDegree != bestRedDegree) return redDegree > bestRedDegree;
+        return users < bestUsers;
+    }
+
+    static int[] degrees(ConstraintGraph graph, int type, int numSteps) {
+        FrozenConstraintGraph view = graph.freeze();
+        int[] degree = new int[numSteps];
+        for (int s = 0; s < numSteps; s++) {
+            degree[s] = view.degree(s, type);
+        }
+        return degree;
+    }
+
+    static int[] authorisedCounts(int[][] authorized, int numSteps) {
+        int[] count = new int[numSteps];
+        if (authorized == null) return count;
+        for (int s = 0; s < numSteps; s++) {
+            for (int a : authorized[s]) {
+                if (a == 1) count[s]++;
+            }
+        }
+        return count;
+    }
+
+    private static int[] authorisedCounts(WSPInstance instance) {
+        int[] count = new int[instance.numSteps()];
+        for (int s = 0; s < count.length; s++) count[s] = instance.authorisedCount(s);
+        return count;
+    }
+
+    /** Steps sorted by {@code cmp}; the sort is stable, so ties keep index order, or a random order. */
+    private static int[] sorted(int numSteps, Comparator<Integer> cmp, Random random) {
+        Integer[] steps = new Integer[numSteps];
+        for (int s = 0; s < numSteps; s++) steps[s] = s;
+        shuffle(steps, random);
+        Arrays.sort(steps, cmp);
+        int[] order = new int[numSteps];
+        for (int i = 0; i < numSteps; i++) order[i] = steps[i];
+        return order;
+    }
+
+    private static void shuffle(Integer[] items, Random random) {
+        if (random == null) return;
+        for (int i = items.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer item = items[i];
+            items[i] = items[j];
+            items[j] = item;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package WSP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+/**
+ * Preprocessing run before any solver: propagates the constraints of the instance to a
+ * fixpoint on the users' domains. A BLACK edge narrows both steps to their common users,
+ * and a step left with a single user is fixed, which removes that user from its RED
+ * neighbours; a domain that becomes empty shows the instance is unsatisfiable before any
+ * search. Fixed steps and users left in no domain are then taken out of the instance.
+ *
+ * The reduced instance keeps the remaining steps and users in index order. Its
+ * constraints only join remaining steps, as every constraint of a fixed step has already
+ * been applied to its neighbours' domains. {@link #trace()} lists the fixed assignments in
+ * the order they were found and {@link #expand(int[])} puts them back into a solution.
+ */
+public class UnitPropagation {
+    private final int numSteps;
+    private final int[] fixedUser;       // user of each fixed step, -1 if not fixed
+    private final List<int[]> trace = new ArrayList<>();
+    private final boolean unsatisfiable;
+    private final int[] originalStep;    // reduced step -> original step
+    private final int[] originalUser;    // reduced user -> original user
+    private final WSPInstance reduced;
+
+    public UnitPropagation(ConstraintGraph graph, int numSteps, int numUsers, int[][] authorised) {
+        this(new WSPInstance(graph, numSteps, numUsers, authorised));
+    }
+
+    public UnitPropagation(WSPInstance instance) {
+        this.numSteps = instance.numSteps();
+        this.fixedUser = new int[numSteps];
+        Arrays.fill(fixedUser, -1);
+        FrozenConstraintGraph view = instance.view();
+        int words = Math.max(1, BitSets.words(instance.numUsers()));
+
+        long[][] domain = new long[numSteps][];
+        for (int s = 0; s < numSteps; s++) domain[s] = instance.stepUsers(s);
+        boolean empty = propagate(view, domain);
+
+        if (empty) {
+            this.unsatisfiable = true;
+            this.originalStep = new int[0];
+            this.originalUser = new int[0];
+            this.reduced = new WSPInstance(new ConstraintGraph(0), 0, 0, new long[0][]);
+            return;
+        }
+        this.unsatisfiable = false;
+
+        int[] reducedStep = new int[numSteps];
+        int steps = 0;
+        long[] used = new long[words];
+        for (int s = 0; s < numSteps; s++) {
+            if (fixedUser[s] >= 0) {
+                reducedStep[s] = -1;
+                continue;
+            }
+            reducedStep[s] = steps++;
+            for (int w = 0; w < words; w++) used[w] |= domain[s][w];
+        }
+        this.originalStep = new int[steps];
+        for (int s = 0; s < numSteps; s++) {
+            if (reducedStep[s] >= 0) originalStep[reducedStep[s]] = s;
+        }
+        this.originalUser = new int[BitSets.cardinality(used)];
+        int[] reducedUser = new int[instance.numUsers()];
+        int users = 0;
+        for (int u = BitSets.nextSetBit(used, 0); u >= 0; u = BitSets.nextSetBit(used, u + 1)) {
+            reducedUser[u] = users;
+            originalUser[users++] = u;
+        }
+
+        long[][] rows = new long[steps][Math.max(1, BitSets.words(users))];
+        for (int r = 0; r < steps; r++) {
+            long[] row = domain[originalStep[r]];
+            for (int u = BitSets.nextSetBit(row, 0); u >= 0; u = BitSets.nextSetBit(row, u + 1)) {
+                BitSets.set(rows[r], reducedUser[u]);
+            }
+        }
+        ConstraintGraph graph = new ConstraintGraph(steps);
+        for (int r = 0; r < steps; r++) {
+            int s = originalStep[r];
+            for (int type : new int[]{ConstraintGraph.RED, ConstraintGraph.BLACK}) {
+                for (int t : view.neighbours(s, type)) {
+                    if (t > s && reducedStep[t] >= 0) graph.addConstraintEdge(r, reducedStep[t], type);
+                }
+            }
+        }
+        this.reduced = new WSPInstance(graph, steps, users, rows);
+    }
+
+    /**
+     * Narrows the domains to a fixpoint with a worklist of changed steps.
+     *
+     * @return whether some domain became empty
+     */
+    private boolean propagate(FrozenConstraintGraph view, long[][] domain) {
+        int[] queue = new int[numSteps];
+        boolean[] queued = new boolean[numSteps];
+        int head = 0, size = 0;
+        for (int s = 0; s < numSteps; s++) {
+            if (view.getConstraintType(s, s) == ConstraintGraph.RED || BitSets.isEmpty(domain[s])) return true;
+            queue[size++] = s;
+            queued[s] = true;
+        }
+        while (size > 0) {
+            int s = queue[head];
+            head = (head + 1) % numSteps;
+            size--;
+            queued[s] = false;
+            long[] dom = domain[s];
+
+            for (int t : view.neighbours(s, ConstraintGraph.BLACK)) {
+                boolean changed = false;
+                for (int w = 0; w < dom.length; w++) {
+                    long narrowed = domain[t][w] & dom[w];
+                    changed |= narrowed != domain[t][w];
+                    domain[t][w] = narrowed;
+                }
+                if (!changed) continue;
+                if (BitSets.isEmpty(domain[t])) return true;
+                if (!queued[t]) {
+                    queue[(head + size++) % numSteps] = t;
+                    queued[t] = true;
+                }
+            }
+
+            if (fixedUser[s] >= 0 || BitSets.cardinality(dom) != 1) continue;
+            int u = BitSets.nextSetBit(dom, 0);
+            fixedUser[s] = u;
+            trace.add(new int[]{s, u});
+            for (int t : view.neighbours(s, ConstraintGraph.RED)) {
+                if (!BitSets.get(domain[t], u)) continue;
+                BitSets.clear(domain[t], u);
+                if (BitSets.isEmpty(domain[t])) return true;
+                if (!queued[t]) {
+                    queue[(head + size++) % numSteps] = t;
+                    queued[t] = true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Whether propagation emptied the domain of some step. */
+    public boolean isUnsatisfiable() {
+        return unsatisfiable;
+    }
+
+    /** Number of steps left in the reduced instance. */
+    public int size() {
+        return originalStep.length;
+    }
+
+    /** Number of users left in the reduced instance. */
+    public int reducedUsers() {
+        return originalUser.length;
+    }
+
+    /** The reduced instance: the remaining steps, with their propagated domains over the remaining users. */
+    public WSPInstance instance() {
+        return reduced;
+    }
+
+    /** Constraint graph of the remaining steps. */
+    public ConstraintGraph graph() {
+        return reduced.graph();
+    }
+
+    /** {@code [reducedStep][reducedUser]} authorisation: the propagated domains of the remaining steps. */
+    public int[][] authorisation() {
+        return reduced.authorisation();
+    }
+
+    /** The fixed assignments as {@code {step, user}} pairs, in the order they were found. */
+    public List<int[]> trace() {
+        return Collections.unmodifiableList(trace);
+    }
+
+    /** User fixed for {@code step}, or -1 if it was left to the solver. */
+    public int fixedUser(int step) {
+        return fixedUser[step];
+    }
+
+    /**
+     * Merges a solution of the reduced instance with the fixed assignments.
+     *
+     * @param reduced a solution of the reduced instance, or {@code null}
+     * @return the step-to-user encoding over the original steps and users, or {@code null} if
+     *         {@code reduced} is
+     */
+    public int[] expand(int[] reduced) {
+        if (reduced == null) return null;
+        int[] encoding = fixedUser.clone();
+        for (int r = 0; r < reduced.length; r++) {
+            encoding[originalStep[r]] = originalUser[reduced[r]];
+        }
+        return encoding;
+    }
+}
@@ -0,0 +1,208 @@
+package WSP;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import WSP.VertexCover.ConstraintGraph;
+
+/**
+ * Groups users by type: users with identical columns in the authorisation matrix may
+ * perform exactly the same steps, so any solution stays a solution when two of them swap
+ * places. A solution uses at most one user per step, so a type needs at most
+ * {@code maxPerType} representatives (the number of steps); the other users of the type
+ * can be dropped without losing any solution up to that swap.
+ *
+ * The reduced instance keeps the first {@code min(capacity, maxPerType)} users of every
+ * type, numbered type by type in the order of each type's first user. {@link #expand(int[])}
+ * maps a solution of it back to the original users. The engines, PBT's matching included,
+ * still see users rather than types: up to {@code types * min(capacity, maxPerType)} of
+ * them, which bounds the work by the number of types and steps but not by the types alone.
+ */
+public class UserTypes {
+    private final WSPInstance instance;
+    private final int numSteps;
+    private final int[] typeOf;
+    private final int[][] members;
+    private final int[] typeStart;       // reduced users of type t are typeStart[t] .. typeStart[t + 1] - 1
+    private final int[] originalUser;    // reduced user -> original user
+    private final int[][] typeAuthorisation;
+    private WSPInstance reduced;
+
+    /**
+     * @param authorised {@code [step][user]} authorisation matrix
+     * @param maxPerType representatives kept per type, at least the number of steps for an exact reduction
+     */
+    public UserTypes(int[][] authorised, int numSteps, int numUsers, int maxPerType) {
+        this(new WSPInstance(new ConstraintGraph(numSteps), numSteps, numUsers, authorised), maxPerType);
+    }
+
+    /**
+     * @param maxPerType representatives kept per type, at least the number of steps for an exact reduction
+     */
+    public UserTypes(WSPInstance instance, int maxPerType) {
+        this.instance = instance;
+        this.numSteps = instance.numSteps();
+        int numUsers = instance.numUsers();
+        this.typeOf = new int[numUsers];
+        Map<Column, Integer> types = new HashMap<>();
+        List<List<Integer>> grouped = new ArrayList<>();
+        for (int u = 0; u < numUsers; u++) {
+            long[] bits = instance.userSteps(u);
+            Integer type = types.get(new Column(bits));
+            if (type == null) {
+                type = grouped.size();
+                types.put(new Column(bits), type);
+                grouped.add(new ArrayList<>());
+            }
+            typeOf[u] = type;
+            grouped.get(type).add(u);
+        }
+        int count = grouped.size();
+        this.members = new int[count][];
+        for (int t = 0; t < count; t++) {
+            List<Integer> users = grouped.get(t);
+            members[t] = new int[users.size()];
+            for (int i = 0; i < members[t].length; i++) members[t][i] = users.get(i);
+        }
+        this.typeAuthorisation = new int[numSteps][count];
+        boolean[] usable = new boolean[count];
+        for (int t = 0; t < count; t++) {
+            long[] steps = instance.userSteps(members[t][0]);
+            for (int s = 0; s < numSteps; s++) {
+                typeAuthorisation[s][t] = BitSets.get(steps, s) ? 1 : 0;
+                usable[t] |= typeAuthorisation[s][t] == 1;
+            }
+        }
+        // Users authorised for no step are never part of a solution and are not kept.
+        this.typeStart = new int[count + 1];
+        for (int t = 0; t < count; t++) {
+            int kept = usable[t] ? Math.min(members[t].length, Math.max(0, maxPerType)) : 0;
+            typeStart[t + 1] = typeStart[t] + kept;
+        }
+        this.originalUser = new int[typeStart[count]];
+        for (int t = 0; t < count; t++) {
+            for (int r = typeStart[t]; r < typeStart[t + 1]; r++) {
+                originalUser[r] = members[t][r - typeStart[t]];
+            }
+        }
+    }
+
+    public UserTypes(int[][] authorised, int numSteps, int numUsers) {
+        this(authorised, numSteps, numUsers, numSteps);
+    }
+
+    public UserTypes(WSPInstance instance) {
+        this(instance, instance.numSteps());
+    }
+
+    /** Number of distinct types. */
+    public int size() {
+        return members.length;
+    }
+
+    public int typeOf(int user) {
+        return typeOf[user];
+    }
+
+    /** Number of users of type {@code t}. */
+    public int capacity(int t) {
+        return members[t].length;
+    }
+
+    /** Users of type {@code t}, in increasing order. */
+    public int[] users(int t) {
+        return members[t].clone();
+    }
+
+    /** {@code [step][type]} authorisation: a type is authorised for a step if its users are. */
+    public int[][] typeAuthorisation() {
+        return typeAuthorisation;
+    }
+
+    /** Number of users kept in the reduced instance. */
+    public int reducedUsers() {
+        return originalUser.length;
+    }
+
+    /** {@code [step][reducedUser]} authorisation of the reduced instance. */
+    public int[][] reducedAuthorisation() {
+        return instance().authorisation();
+    }
+
+    /** The reduced instance: the same steps and constraints over the kept users. Built on first use. */
+    public WSPInstance instance() {
+        if (reduced == null) {
+            long[][] rows = new long[numSteps][Math.max(1, BitSets.words(originalUser.length))];
+            for (int s = 0; s < numSteps; s++) {
+                for (int t = 0; t < members.length; t++) {
+                    if (typeAuthorisation[s][t] != 1) continue;
+                    for (int r = typeStart[t]; r < typeStart[t + 1]; r++) BitSets.set(rows[s], r);
+                }
+            }
+            reduced = new WSPInstance(instance.graph(), numSteps, originalUser.length, rows);
+        }
+        return reduced;
+    }
+
+    /** Original user behind reduced user {@code r}. */
+    public int originalUser(int r) {
+        return originalUser[r];
+    }
+
+    /**
+     * Replaces the reduced users of an encoding by the original users.
+     *
+     * @return the encoding over the original users, or {@code null} if {@code reduced} is null
+     */
+    public int[] expand(int[] reduced) {
+        if (reduced == null) return null;
+        int[] encoding = new int[reduced.length];
+        for (int s = 0; s < reduced.length; s++) {
+            encoding[s] = originalUser[reduced[s]];
+        }
+        return encoding;
+    }
+
+    /**
+     * Groups of interchangeable users of an authorisation matrix: the users of every type
+     * with more than one user, in increasing order. Solvers can break the symmetry between
+     * the users of a group, see {@code addInterchangeableUsers} on the encoders.
+     */
+    public static List<int[]> interchangeableGroups(int[][] authorised, int numSteps, int numUsers) {
+        return interchangeableGroups(new WSPInstance(new ConstraintGraph(numSteps), numSteps, numUsers, authorised));
+    }
+
+    /** Groups of interchangeable users of {@code instance}, see {@link #interchangeableGroups(int[][], int, int)}. */
+    public static List<int[]> interchangeableGroups(WSPInstance instance) {
+        UserTypes types = new UserTypes(instance, 0);
+        List<int[]> groups = new ArrayList<>();
+        for (int t = 0; t < types.size(); t++) {
+            if (types.capacity(t) > 1) groups.add(types.users(t));
+        }
+        return groups;
+    }
+
+    /** Authorisation column of a user as a hashable key. */
+    private static final class Column {
+        private final long[] bits;
+        private final int hash;
+
+        Column(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Column && Arrays.equals(bits, ((Column) other).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -15,6 +15,7 @@ public class ConstraintGraph extends Graph{
     public static final int RED = 1;
     public static final int BLACK = 0;   
     private List<Map<Integer , Integer>> adj;
+    private volatile FrozenConstraintGraph frozen; // snapshot of the current edges, dropped on every edit
 
     /*
      * Constructor
@@ -41,6 +42,25 @@ public class ConstraintGraph extends Graph{
     public void addConstraintEdge(int u, int v, int type) {
         adj.get(u).put(v, type); 
         adj.get(v).put(u, type); 
+        frozen = null;
+    }
+
+    /*
+     * @return a read-only snapshot of the graph for the solvers, see FrozenConstraintGraph.
+     * The snapshot is cached until the next edit, so repeated calls are cheap.
+     */
+    public FrozenConstraintGraph freeze() {
+        FrozenConstraintGraph snapshot = frozen;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = frozen;
+                if (snapshot == null) {
+                    snapshot = new FrozenConstraintGraph(adj.size(), adj);
+                    frozen = snapshot;
+                }
+            }
+        }
+        return snapshot;
     }
 
     /*
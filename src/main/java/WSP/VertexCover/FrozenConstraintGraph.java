@@ -0,0 +1,152 @@
+package WSP.VertexCover;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only snapshot of a {@link ConstraintGraph}, laid out for the solvers. The neighbours
+ * of every step are kept in compressed sparse row form, one array per constraint type in
+ * increasing step order, and for graphs of up to {@link #MATRIX_LIMIT} steps the RED and
+ * BLACK relations are also kept as dense bit-matrices, so that a constraint lookup is one
+ * word access and a neighbour mask one array copy.
+ *
+ * The snapshot is built once with {@link ConstraintGraph#freeze()} and never changes, so
+ * it can be shared by any number of searches and threads. Later edits to the graph it was
+ * taken from do not show through.
+ */
+public final class FrozenConstraintGraph {
+    /** Largest number of steps for which the bit-matrices are built (2 MiB per matrix). */
+    public static final int MATRIX_LIMIT = 4096;
+
+    private final int size;
+    private final int words;
+    private final int[] redStart;     // RED neighbours of u are redTarget[redStart[u] .. redStart[u + 1])
+    private final int[] redTarget;
+    private final int[] blackStart;
+    private final int[] blackTarget;
+    private final long[] redMatrix;   // row u is words [u * words, (u + 1) * words), null above MATRIX_LIMIT
+    private final long[] blackMatrix;
+    private final int[] selfType;     // type of a constraint between a step and itself, -1 if none
+
+    FrozenConstraintGraph(int size, List<Map<Integer, Integer>> adj) {
+        this.size = size;
+        this.words = Math.max(1, (size + 63) >>> 6);
+        this.redStart = new int[size + 1];
+        this.blackStart = new int[size + 1];
+        this.selfType = new int[size];
+        Arrays.fill(selfType, -1);
+        for (int u = 0; u < size; u++) {
+            int red = 0, black = 0;
+            for (Map.Entry<Integer, Integer> e : adj.get(u).entrySet()) {
+                if (e.getKey() == u) {
+                    selfType[u] = e.getValue();
+                } else if (e.getValue() == ConstraintGraph.RED) {
+                    red++;
+                } else if (e.getValue() == ConstraintGraph.BLACK) {
+                    black++;
+                }
+            }
+            redStart[u + 1] = redStart[u] + red;
+            blackStart[u + 1] = blackStart[u] + black;
+        }
+        this.redTarget = new int[redStart[size]];
+        this.blackTarget = new int[blackStart[size]];
+        for (int u = 0; u < size; u++) {
+            int red = redStart[u], black = blackStart[u];
+            for (Map.Entry<Integer, Integer> e : adj.get(u).entrySet()) {
+                int v = e.getKey();
+                if (v == u) continue;
+                if (e.getValue() == ConstraintGraph.RED) {
+                    redTarget[red++] = v;
+                } else if (e.getValue() == ConstraintGraph.BLACK) {
+                    blackTarget[black++] = v;
+                }
+            }
+            Arrays.sort(redTarget, redStart[u], redStart[u + 1]);
+            Arrays.sort(blackTarget, blackStart[u], blackStart[u + 1]);
+        }
+        if (size <= MATRIX_LIMIT) {
+            this.redMatrix = matrix(redStart, redTarget);
+            this.blackMatrix = matrix(blackStart, blackTarget);
+        } else {
+            this.redMatrix = null;
+            this.blackMatrix = null;
+        }
+    }
+
+    private long[] matrix(int[] start, int[] target) {
+        long[] matrix = new long[size * words];
+        for (int u = 0; u < size; u++) {
+            for (int i = start[u]; i < start[u + 1]; i++) {
+                int v = target[i];
+                matrix[u * words + (v >>> 6)] |= 1L << v;
+            }
+        }
+        return matrix;
+    }
+
+    /** Number of steps. */
+    public int size() {
+        return size;
+    }
+
+    /** Whether the dense bit-matrices were built, see {@link #MATRIX_LIMIT}. */
+    public boolean hasMatrices() {
+        return redMatrix != null;
+    }
+
+    /**
+     * @return the type of the constraint between {@code u} and {@code v} ({@link ConstraintGraph#RED}
+     *         or {@link ConstraintGraph#BLACK}), or -1 if there is none
+     */
+    public int getConstraintType(int u, int v) {
+        if (u == v) return selfType[u];
+        if (redMatrix != null) {
+            int w = u * words + (v >>> 6);
+            long bit = 1L << v;
+            if ((redMatrix[w] & bit) != 0) return ConstraintGraph.RED;
+            return (blackMatrix[w] & bit) != 0 ? ConstraintGraph.BLACK : -1;
+        }
+        if (Arrays.binarySearch(redTarget, redStart[u], redStart[u + 1], v) >= 0) return ConstraintGraph.RED;
+        return Arrays.binarySearch(blackTarget, blackStart[u], blackStart[u + 1], v) >= 0 ? ConstraintGraph.BLACK : -1;
+    }
+
+    /**
+     * Neighbours of {@code u} joined by a constraint of the given type, as a bitset.
+     *
+     * @return a new bitset of {@code words} words holding the neighbours of {@code u} joined
+     *         by a constraint of the given type
+     */
+    public long[] neighbourMask(int u, int type, int words) {
+        long[] mask = new long[words];
+        if (type != ConstraintGraph.RED && type != ConstraintGraph.BLACK) return mask;
+        boolean red = type == ConstraintGraph.RED;
+        long[] matrix = red ? redMatrix : blackMatrix;
+        if (matrix != null) {
+            System.arraycopy(matrix, u * this.words, mask, 0, Math.min(words, this.words));
+            return mask;
+        }
+        int[] start = red ? redStart : blackStart;
+        int[] target = red ? redTarget : blackTarget;
+        for (int i = start[u]; i < start[u + 1]; i++) {
+            int v = target[i];
+            mask[v >>> 6] |= 1L << v;
+        }
+        return mask;
+    }
+
+    /** Number of neighbours of {@code u} joined by a constraint of the given type. */
+    public int degree(int u, int type) {
+        if (type == ConstraintGraph.RED) return redStart[u + 1] - redStart[u];
+        if (type == ConstraintGraph.BLACK) return blackStart[u + 1] - blackStart[u];
+        return 0;
+    }
+
+    /** The neighbours of {@code u} joined by a constraint of the given type, in increasing order. */
+    public int[] neighbours(int u, int type) {
+        if (type == ConstraintGraph.RED) return Arrays.copyOfRange(redTarget, redStart[u], redStart[u + 1]);
+        if (type == ConstraintGraph.BLACK) return Arrays.copyOfRange(blackTarget, blackStart[u], blackStart[u + 1]);
+        return new int[0];
+    }
+}
@@ -1,10 +1,12 @@
 package WSP;
 
 import com.google.ortools.Loader;
+import com.google.ortools.sat.BoolVar;
 import com.google.ortools.sat.CpModel;
 import com.google.ortools.sat.CpSolver;
 import com.google.ortools.sat.CpSolverStatus;
 import com.google.ortools.sat.IntVar;
+import com.google.ortools.sat.Literal;
 import com.google.ortools.util.Domain;
 
 import java.util.ArrayList;
@@ -27,6 +29,11 @@ public class WSPCSPEncoder {
 
     private List<int[]> mustDifferent; // list of {s1, s2} pairs that must have different users
     private List<int[]> mustSame;      // list of {s1, s2} pairs that must have the same user
+    private List<int[]> allDifferent;  // groups of steps that must all have different users
+    private List<int[]> interchangeable; // groups of users with identical authorisations
+    private SearchContext context;     // deadline and cancellation of the solve, or null for none
+    private boolean stopped;           // the last solve ended before it was decided
+    private WSPInstance instance;      // the instance the encoder was built from, or null
 
     /**
      * Construct a WSPCSPEncoder for a general WSP instance.
@@ -40,6 +47,25 @@ public class WSPCSPEncoder {
         this.authorized = authorized;
         this.mustDifferent = new ArrayList<>();
         this.mustSame = new ArrayList<>();
+        this.allDifferent = new ArrayList<>();
+        this.interchangeable = new ArrayList<>();
+    }
+
+    /**
+     * Construct a WSPCSPEncoder from a prepared instance, taking its constraints and
+     * authorized-user lists as they are.
+     */
+    public WSPCSPEncoder(WSPInstance instance) {
+        this(instance.numSteps(), instance.numUsers(), instance.authorisation());
+        this.instance = instance;
+        int[] red = instance.redPairs();
+        for (int i = 0; i < red.length; i += 2) {
+            mustDifferent.add(new int[]{red[i], red[i + 1]});
+        }
+        int[] black = instance.blackPairs();
+        for (int i = 0; i < black.length; i += 2) {
+            mustSame.add(new int[]{black[i], black[i + 1]});
+        }
     }
 
     /**
@@ -49,6 +75,15 @@ public class WSPCSPEncoder {
         mustDifferent.add(new int[]{s1, s2});
     }
 
+    /**
+     * Add an all-different constraint over a group of steps, such as a clique of
+     * must-different constraints. Must-different pairs inside the group are then
+     * left to this constraint.
+     */
+    public void addAllDifferentConstraint(int... steps) {
+        allDifferent.add(steps.clone());
+    }
+
     /**
      * Add a must-same constraint for steps s1 and s2.
      */
@@ -56,12 +91,38 @@ public class WSPCSPEncoder {
         mustSame.add(new int[]{s1, s2});
     }
 
+    /**
+     * Declare a group of users with identical authorisations, such as the users of one
+     * type in {@link UserTypes}. Only solutions that use them in group order are searched:
+     * the i-th user of the group is kept out of the domains of steps before i, and is only
+     * used if the one before it is.
+     */
+    public void addInterchangeableUsers(int... users) {
+        interchangeable.add(users.clone());
+    }
+
+    /**
+     * Set the deadline and cancellation context of the solve, or null for none.
+     */
+    public void setContext(SearchContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Whether the last solve was stopped, by the context or the solver's time limit,
+     * before it found a solution or proved that there is none.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
     /**
      * Solve the WSP instance as a CSP. Returns an array 'assignment'
      * of length numSteps, where assignment[s] = user assigned to step s,
-     * or null if no solution exists.
+     * or null if no solution exists or the context stopped the solve first.
      */
     public int[] solveCSP() {
+        stopped = false;
         CpModel model = new CpModel();
 
     // Create one IntVar for each step, domain = allowed users for that step
@@ -81,10 +142,26 @@ public class WSPCSPEncoder {
         stepVars[s] = model.newIntVarFromDomain(domain, "step_" + s);
     }
 
-        // Add must-different constraints
+        // Add all-different constraints
+        boolean[][] covered = new boolean[numSteps][numSteps];
+        for (int[] group : allDifferent) {
+            IntVar[] groupVars = new IntVar[group.length];
+            for (int i = 0; i < group.length; i++) {
+                groupVars[i] = stepVars[group[i]];
+                for (int j = 0; j < group.length; j++) {
+                    covered[group[i]][group[j]] = true;
+                }
+            }
+            model.addAllDifferent(groupVars);
+        }
+
+        // Add must-different constraints not already part of an all-different group
         for (int[] pair : mustDifferent) {
             int s1 = pair[0];
             int s2 = pair[1];
+            if (covered[s1][s2]) {
+                continue;
+            }
             // stepVars[s1] != stepVars[s2]
             model.addDifferent(stepVars[s1], stepVars[s2]);
         }
@@ -97,9 +174,34 @@ public class WSPCSPEncoder {
             model.addEquality(stepVars[s1], stepVars[s2]);
         }
 
+        // Break the symmetry between interchangeable users: used[i] -> used[i - 1]
+        for (int[] group : interchangeable) {
+            BoolVar previous = null;
+            for (int u : group) {
+                BoolVar used = model.newBoolVar("used_" + u);
+                List<Literal> takes = new ArrayList<>();
+                for (int s = 0; s < numSteps; s++) {
+                    if (!allowedForStep(s, u)) {
+                        continue;
+                    }
+                    BoolVar take = model.newBoolVar("take_" + s + "_" + u);
+                    model.addEquality(stepVars[s], u).onlyEnforceIf(take);
+                    model.addDifferent(stepVars[s], u).onlyEnforceIf(take.not());
+                    model.addImplication(take, used);
+                    takes.add(take);
+                }
+                model.addBoolOr(takes).onlyEnforceIf(used);
+                if (previous != null) {
+                    model.addImplication(used, previous);
+                }
+                previous = used;
+            }
+        }
+
         // Solve
         CpSolver solver = new CpSolver();
-        CpSolverStatus status = solver.solve(model);
+        CpSolverStatus status = WSPUtils.solve(solver, model, context);
+        stopped = status == CpSolverStatus.UNKNOWN;
 
         if (status == CpSolverStatus.FEASIBLE || status == CpSolverStatus.OPTIMAL) {
             // Reconstruct the step->user assignment
@@ -117,19 +219,42 @@ public class WSPCSPEncoder {
      * Collect a list of user IDs for which authorized[s][u] == 1.
      */
     private int[] collectAllowedUsers(int step) {
-        List<Integer> allowed = new ArrayList<>();
+        if (instance != null && interchangeable.isEmpty()) {
+            return instance.authorisedUsers(step);
+        }
+        int count = 0;
         for (int u = 0; u < numUsers; u++) {
-            if (authorized[step][u] == 1) {
-                allowed.add(u);
+            if (allowedForStep(step, u)) {
+                count++;
             }
         }
-        int[] result = new int[allowed.size()];
-        for (int i = 0; i < allowed.size(); i++) {
-            result[i] = allowed.get(i);
+        int[] result = new int[count];
+        for (int u = 0, i = 0; u < numUsers && i < count; u++) {
+            if (allowedForStep(step, u)) {
+                result[i++] = u;
+            }
         }
         return result;
     }
 
+    /**
+     * Whether user u may take step s: it is authorized, and it is not the i-th user of an
+     * interchangeable group with i > s.
+     */
+    private boolean allowedForStep(int step, int user) {
+        if (authorized[step][user] != 1) {
+            return false;
+        }
+        for (int[] group : interchangeable) {
+            for (int i = step + 1; i < group.length; i++) {
+                if (group[i] == user) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     // Helper to print the final assignment
     public void printSolution(int[] assignment) {
         if (assignment == null) {
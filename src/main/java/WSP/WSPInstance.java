@@ -0,0 +1,281 @@
+package WSP;
+
+import java.util.Arrays;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+/**
+ * One WSP instance, built once and handed to every engine and encoder: the authorisation
+ * matrix and constraint graph together with the indices the solvers would otherwise derive
+ * from them on each run. It keeps the users of each step and the steps of each user as
+ * bitsets and sorted lists, the SoD and BoD pairs in step order, the degrees of the
+ * constraint graph, and a content hash that is stable across runs.
+ *
+ * The matrix and graph are copied on construction, so later changes to the caller's
+ * arrays do not show through. An instance built from bitsets only builds its matrix on the
+ * first call to {@link #authorisation()}. The arrays returned by {@link #authorisation()}
+ * and {@link #graph()} are shared and must not be modified; the other accessors return copies.
+ */
+public final class WSPInstance {
+    private final int numSteps;
+    private final int numUsers;
+    private volatile int[][] authorisation;   // built from stepUsers on first use when null
+    private final ConstraintGraph graph;
+    private final FrozenConstraintGraph view;
+    private final long[][] stepUsers;     // users authorised for each step
+    private final long[][] userSteps;     // steps each user is authorised for
+    private final int[][] authorisedUsers;
+    private final int[] redPairs;         // {s, t} pairs with s < t, flattened, in step order
+    private final int[] blackPairs;
+    private final int maxRedDegree;
+    private final long contentHash;
+
+    public WSPInstance(ConstraintGraph graph, int numSteps, int numUsers, int[][] authorised) {
+        this(graph, numSteps, numUsers, copyRows(authorised, numSteps, numUsers),
+            usersOfSteps(authorised, numSteps, numUsers));
+    }
+
+    /**
+     * Builds the instance from the users authorised for each step as bitsets, which is how
+     * the preprocessing stages derive their reduced instances, without a matrix to scan.
+     *
+     * @param stepUsers {@code stepUsers[s]} holds the users authorised for step {@code s}; copied
+     */
+    public WSPInstance(ConstraintGraph graph, int numSteps, int numUsers, long[][] stepUsers) {
+        this(graph, numSteps, numUsers, null, copyBits(stepUsers, numSteps, numUsers));
+    }
+
+    private WSPInstance(ConstraintGraph graph, int numSteps, int numUsers, int[][] authorisation, long[][] stepUsers) {
+        this.numSteps = numSteps;
+        this.numUsers = numUsers;
+        this.authorisation = authorisation;
+        this.stepUsers = stepUsers;
+        this.userSteps = new long[numUsers][Math.max(1, BitSets.words(numSteps))];
+        this.authorisedUsers = new int[numSteps][];
+        for (int s = 0; s < numSteps; s++) {
+            authorisedUsers[s] = new int[BitSets.cardinality(stepUsers[s])];
+            int i = 0;
+            for (int u = BitSets.nextSetBit(stepUsers[s], 0); u >= 0; u = BitSets.nextSetBit(stepUsers[s], u + 1)) {
+                authorisedUsers[s][i++] = u;
+                BitSets.set(userSteps[u], s);
+            }
+        }
+
+        FrozenConstraintGraph source = graph.freeze();
+        this.graph = new ConstraintGraph(numSteps);
+        int red = 0, black = 0, maxRed = 0;
+        for (int s = 0; s < numSteps; s++) {
+            maxRed = Math.max(maxRed, source.degree(s, ConstraintGraph.RED));
+            for (int t : source.neighbours(s, ConstraintGraph.RED)) {
+                if (t > s) red++;
+            }
+            for (int t : source.neighbours(s, ConstraintGraph.BLACK)) {
+                if (t > s) black++;
+            }
+        }
+        this.maxRedDegree = maxRed;
+        this.redPairs = new int[2 * red];
+        this.blackPairs = new int[2 * black];
+        red = 0;
+        black = 0;
+        for (int s = 0; s < numSteps; s++) {
+            // Merge both sorted lists so the pairs come out in the same order as a scan of (s, t > s).
+            int[] r = source.neighbours(s, ConstraintGraph.RED);
+            int[] b = source.neighbours(s, ConstraintGraph.BLACK);
+            for (int i = 0, j = 0; i < r.length || j < b.length; ) {
+                boolean takeRed = j == b.length || (i < r.length && r[i] < b[j]);
+                int t = takeRed ? r[i++] : b[j++];
+                if (t <= s) continue;
+                if (takeRed) {
+                    redPairs[red++] = s;
+                    redPairs[red++] = t;
+                    this.graph.addConstraintEdge(s, t, ConstraintGraph.RED);
+                } else {
+                    blackPairs[black++] = s;
+                    blackPairs[black++] = t;
+                    this.graph.addConstraintEdge(s, t, ConstraintGraph.BLACK);
+                }
+            }
+            int self = source.getConstraintType(s, s);
+            if (self >= 0) this.graph.addConstraintEdge(s, s, self);
+        }
+        this.view = this.graph.freeze();
+        this.contentHash = hash();
+    }
+
+    private static int[][] copyRows(int[][] authorised, int numSteps, int numUsers) {
+        int[][] rows = new int[numSteps][];
+        for (int s = 0; s < numSteps; s++) rows[s] = Arrays.copyOf(authorised[s], numUsers);
+        return rows;
+    }
+
+    private static long[][] usersOfSteps(int[][] authorised, int numSteps, int numUsers) {
+        long[][] bits = new long[numSteps][Math.max(1, BitSets.words(numUsers))];
+        for (int s = 0; s < numSteps; s++) {
+            for (int u = 0; u < numUsers; u++) {
+                if (authorised[s][u] == 1) BitSets.set(bits[s], u);
+            }
+        }
+        return bits;
+    }
+
+    private static int[][] rowsOf(long[][] stepUsers, int numSteps, int numUsers) {
+        int[][] rows = new int[numSteps][numUsers];
+        for (int s = 0; s < numSteps; s++) {
+            for (int u = BitSets.nextSetBit(stepUsers[s], 0); u >= 0 && u < numUsers; u = BitSets.nextSetBit(stepUsers[s], u + 1)) {
+                rows[s][u] = 1;
+            }
+        }
+        return rows;
+    }
+
+    private static long[][] copyBits(long[][] stepUsers, int numSteps, int numUsers) {
+        int words = Math.max(1, BitSets.words(numUsers));
+        long[][] bits = new long[numSteps][];
+        for (int s = 0; s < numSteps; s++) {
+            bits[s] = Arrays.copyOf(stepUsers[s], words);
+            if ((numUsers & 63) != 0) bits[s][words - 1] &= (1L << numUsers) - 1;
+            if (numUsers == 0) bits[s][0] = 0;
+        }
+        return bits;
+    }
+
+    private long hash() {
+        long h = mix(0xcbf29ce484222325L, numSteps);
+        h = mix(h, numUsers);
+        for (long[] row : stepUsers) {
+            for (long word : row) h = mix(h, word);
+        }
+        h = mix(h, redPairs.length);
+        for (int v : redPairs) h = mix(h, v);
+        h = mix(h, blackPairs.length);
+        for (int v : blackPairs) h = mix(h, v);
+        for (int s = 0; s < numSteps; s++) {
+            h = mix(h, view.getConstraintType(s, s));
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        h = (h ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    public int numSteps() {
+        return numSteps;
+    }
+
+    public int numUsers() {
+        return numUsers;
+    }
+
+    /** {@code [step][user]} authorisation matrix, shared. */
+    public int[][] authorisation() {
+        int[][] rows = authorisation;
+        if (rows == null) {
+            synchronized (this) {
+                rows = authorisation;
+                if (rows == null) {
+                    rows = rowsOf(stepUsers, numSteps, numUsers);
+                    authorisation = rows;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Constraint graph of the instance, shared. */
+    public ConstraintGraph graph() {
+        return graph;
+    }
+
+    /** Frozen view of {@link #graph()}. */
+    public FrozenConstraintGraph view() {
+        return view;
+    }
+
+    /** Bitset of the users authorised for {@code step}. */
+    public long[] stepUsers(int step) {
+        return stepUsers[step].clone();
+    }
+
+    /** Bitset of the steps {@code user} is authorised for. */
+    public long[] userSteps(int user) {
+        return userSteps[user].clone();
+    }
+
+    /** Users authorised for {@code step}, in increasing order. */
+    public int[] authorisedUsers(int step) {
+        return authorisedUsers[step].clone();
+    }
+
+    /** Number of users authorised for {@code step}. */
+    public int authorisedCount(int step) {
+        return authorisedUsers[step].length;
+    }
+
+    /** Number of steps {@code user} is authorised for. */
+    public int stepCount(int user) {
+        return BitSets.cardinality(userSteps[user]);
+    }
+
+    /** SoD (RED) constraints as flattened {@code {s, t}} pairs with {@code s < t}, in step order. */
+    public int[] redPairs() {
+        return redPairs.clone();
+    }
+
+    /** BoD (BLACK) constraints as flattened {@code {s, t}} pairs with {@code s < t}, in step order. */
+    public int[] blackPairs() {
+        return blackPairs.clone();
+    }
+
+    public int redDegree(int step) {
+        return view.degree(step, ConstraintGraph.RED);
+    }
+
+    public int blackDegree(int step) {
+        return view.degree(step, ConstraintGraph.BLACK);
+    }
+
+    /** Largest number of SoD constraints on one step. */
+    public int maxRedDegree() {
+        return maxRedDegree;
+    }
+
+    /** Number of SoD constraints. */
+    public int redEdges() {
+        return redPairs.length / 2;
+    }
+
+    /** Number of BoD constraints. */
+    public int blackEdges() {
+        return blackPairs.length / 2;
+    }
+
+    /** 64-bit hash of the sizes, authorisation and constraints; equal instances always share it. */
+    public long contentHash() {
+        return contentHash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof WSPInstance)) return false;
+        WSPInstance that = (WSPInstance) other;
+        if (contentHash != that.contentHash || numSteps != that.numSteps || numUsers != that.numUsers) {
+            return false;
+        }
+        for (int s = 0; s < numSteps; s++) {
+            if (view.getConstraintType(s, s) != that.view.getConstraintType(s, s)) return false;
+        }
+        return Arrays.deepEquals(stepUsers, that.stepUsers)
+            && Arrays.equals(redPairs, that.redPairs)
+            && Arrays.equals(blackPairs, that.blackPairs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(contentHash);
+    }
+}
@@ -1,6 +1,7 @@
 package WSP;
 
 import com.google.ortools.Loader;
+import com.google.ortools.sat.BoolVar;
 import com.google.ortools.sat.CpModel;
 import com.google.ortools.sat.CpSolver;
 import com.google.ortools.sat.CpSolverStatus;
@@ -22,6 +23,10 @@ public class WSPSATEncoder {
     private int[][] authorized;
     private List<int[]> mustDifferent;
     private List<int[]> mustSame;
+    private List<int[]> allDifferent;
+    private List<int[]> interchangeable;
+    private SearchContext context;
+    private boolean stopped;
  /**
      * Constructor for WSPSATEncoder.
      * Initializes the encoder with the number of steps, users, and the authorization matrix.
@@ -36,6 +41,27 @@ public class WSPSATEncoder {
         this.authorized = authorized;
         this.mustDifferent = new ArrayList<>();
         this.mustSame = new ArrayList<>();
+        this.allDifferent = new ArrayList<>();
+        this.interchangeable = new ArrayList<>();
+    }
+
+    /**
+     * Constructor for WSPSATEncoder from a prepared instance.
+     * Takes the authorization matrix and the must-different and must-same constraints of the
+     * instance as they are, without walking the constraint graph.
+     *
+     * @param instance The WSP instance.
+     */
+    public WSPSATEncoder(WSPInstance instance) {
+        this(instance.numSteps(), instance.numUsers(), instance.authorisation());
+        int[] red = instance.redPairs();
+        for (int i = 0; i < red.length; i += 2) {
+            mustDifferent.add(new int[]{red[i], red[i + 1]});
+        }
+        int[] black = instance.blackPairs();
+        for (int i = 0; i < black.length; i += 2) {
+            mustSame.add(new int[]{black[i], black[i + 1]});
+        }
     }
 
        /**
@@ -49,6 +75,17 @@ public class WSPSATEncoder {
         mustDifferent.add(new int[]{s1, s2});
     }
     
+    /**
+     * Adds an "all-different" constraint over a group of steps, such as a clique of
+     * must-different constraints. It is encoded as one at-most-one row per user instead
+     * of one row per pair, and must-different pairs inside the group are left to it.
+     *
+     * @param steps The steps that must all be assigned to different users.
+     */
+    public void addAllDifferentConstraint(int... steps) {
+        allDifferent.add(steps.clone());
+    }
+
      /**
      * Adds a "must-same" constraint between two steps.
      * Ensures that the two steps are assigned to the same user.
@@ -60,16 +97,46 @@ public class WSPSATEncoder {
         mustSame.add(new int[]{s1, s2});
     }
 
+    /**
+     * Declares a group of users with identical authorisations, such as the users of one
+     * type in {@link UserTypes}. Any solution stays a solution when they swap places, so
+     * only the one where they are first used in group order is searched: the i-th user of
+     * the group is not used before step i, and only used if the one before it is.
+     *
+     * @param users The interchangeable users, in the order they should be used.
+     */
+    public void addInterchangeableUsers(int... users) {
+        interchangeable.add(users.clone());
+    }
+
+    /**
+     * Sets the deadline and cancellation context of the solve.
+     *
+     * @param context The context, or null for none.
+     */
+    public void setContext(SearchContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Whether the last solve was stopped, by the context or the solver's time limit,
+     * before it found a solution or proved that there is none.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
 
     /**
      * Encodes the WSP instance as a SAT problem and solves it using OR-Tools.
      *it map (s, u) to a unique variable by using: varID = (s * numUsers) + u.
-     * @return An array representing the user assigned to each step, or null if no solution exists.
+     * @return An array representing the user assigned to each step, or null if no solution exists
+     *         or the context stopped the solve first.
      */
     public int[] encodeAndSolve() {
+        stopped = false;
         CpModel model = new CpModel();
         //  variables x[s][u] for each step s and user u.
-        IntVar[][] x = new IntVar[numSteps][numUsers];
+        BoolVar[][] x = new BoolVar[numSteps][numUsers];
         for (int s = 0; s < numSteps; s++) {
             for (int u = 0; u < numUsers; u++) {
                 x[s][u] = model.newBoolVar("x_" + s + "_" + u);
@@ -94,16 +161,37 @@ public class WSPSATEncoder {
             }
         }
 
-        // 3. Must-different constraints: For each constraint (s1, s2) in mustDifferent, for every user, add:
-        //    x[s1][u] + x[s2][u] <= 1.
+        // 3. All-different constraints: For each group in allDifferent, for every user, at most one
+        //    x[s][u] with s in the group is true.
+        boolean[][] covered = new boolean[numSteps][numSteps];
+        for (int[] group : allDifferent) {
+            for (int u = 0; u < numUsers; u++) {
+                BoolVar[] column = new BoolVar[group.length];
+                for (int i = 0; i < group.length; i++) {
+                    column[i] = x[group[i]][u];
+                }
+                model.addAtMostOne(column);
+            }
+            for (int s1 : group) {
+                for (int s2 : group) {
+                    covered[s1][s2] = true;
+                }
+            }
+        }
+
+        // 4. Must-different constraints: For each constraint (s1, s2) in mustDifferent not covered by
+        //    an all-different group, for every user, add: x[s1][u] + x[s2][u] <= 1.
         for (int[] pair : mustDifferent) {
             int s1 = pair[0], s2 = pair[1];
+            if (covered[s1][s2]) {
+                continue;
+            }
             for (int u = 0; u < numUsers; u++) {
                 model.addLessOrEqual(LinearExpr.sum(new IntVar[]{x[s1][u], x[s2][u]}), 1);
             }
         }
 
-        // 4. Must-same constraints: For each constraint (s1, s2) in mustSame, for every user, add:
+        // 5. Must-same constraints: For each constraint (s1, s2) in mustSame, for every user, add:
         //    x[s1][u] == x[s2][u]
         for (int[] pair : mustSame) {
             int s1 = pair[0], s2 = pair[1];
@@ -112,9 +200,33 @@ public class WSPSATEncoder {
             }
         }
 
+        // 6. Symmetry breaking: for each group of interchangeable users, user i of the group is
+        //    not used before step i, and used[i] -> used[i - 1].
+        for (int[] group : interchangeable) {
+            BoolVar previous = null;
+            for (int i = 0; i < group.length; i++) {
+                int u = group[i];
+                for (int s = 0; s < Math.min(i, numSteps); s++) {
+                    model.addEquality(x[s][u], 0);
+                }
+                BoolVar used = model.newBoolVar("used_" + u);
+                BoolVar[] column = new BoolVar[numSteps];
+                for (int s = 0; s < numSteps; s++) {
+                    column[s] = x[s][u];
+                    model.addImplication(x[s][u], used);
+                }
+                model.addBoolOr(column).onlyEnforceIf(used);
+                if (previous != null) {
+                    model.addImplication(used, previous);
+                }
+                previous = used;
+            }
+        }
+
         // Solve the model.
         CpSolver solver = new CpSolver();
-        CpSolverStatus status = solver.solve(model);
+        CpSolverStatus status = WSPUtils.solve(solver, model, context);
+        stopped = status == CpSolverStatus.UNKNOWN;
         if (status == CpSolverStatus.FEASIBLE || status == CpSolverStatus.OPTIMAL) {
             int[] assignment = new int[numSteps];
             // For each step, find the user for which x[s][u] is true.
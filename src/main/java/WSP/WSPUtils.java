@@ -2,7 +2,12 @@ package WSP;
 
 import java.util.function.BiConsumer;
 
+import com.google.ortools.sat.CpModel;
+import com.google.ortools.sat.CpSolver;
+import com.google.ortools.sat.CpSolverStatus;
+
 import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
 
 public class WSPUtils {
     /** Transpose a [rows][cols] matrix into [cols][rows]. */
@@ -28,9 +33,10 @@ public class WSPUtils {
             ConstraintGraph graph,
             int numSteps
     ) {
+        FrozenConstraintGraph view = graph.freeze();
         for (int i = 0; i < numSteps; i++) {
             for (int j = i + 1; j < numSteps; j++) {
-                int type = graph.getConstraintType(i, j);
+                int type = view.getConstraintType(i, j);
                 if (type == ConstraintGraph.BLACK) {
                     addSame.accept(i, j);
                 } else if (type == ConstraintGraph.RED) {
@@ -39,4 +45,32 @@ public class WSPUtils {
             }
         }
     }
+
+    /**
+     * Solves a CP-SAT model within a search context: the time left before the context's
+     * deadline becomes {@code max_time_in_seconds}, and cancelling the context stops the
+     * search. A context that has already stopped skips the solve.
+     *
+     * @param context the context, or {@code null} for none
+     * @return the solver status; {@link CpSolverStatus#UNKNOWN} if the search was stopped
+     */
+    public static CpSolverStatus solve(CpSolver solver, CpModel model, SearchContext context) {
+        if (context == null) {
+            return solver.solve(model);
+        }
+        if (context.shouldStop()) {
+            return CpSolverStatus.UNKNOWN;
+        }
+        double remaining = context.remainingSeconds();
+        if (remaining != Double.POSITIVE_INFINITY) {
+            solver.getParameters().setMaxTimeInSeconds(remaining);
+        }
+        Runnable stop = solver::stopSearch;
+        context.onCancel(stop);
+        try {
+            return solver.solve(model);
+        } finally {
+            context.removeCancelListener(stop);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.fyp.wspapi.dto;
 
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotNull;
 import java.util.List;
@@ -22,6 +23,22 @@ public class WSPRequest {
     @NotNull
     private String solverType; // "SAT", "CSP", "BACKTRACKING", or "PBT"
 
+    @Min(1)
+    @Max(256)
+    private Integer parallelism; // PBT and BACKTRACKING: above 1, search on the server's shared pool; sequential when absent
+
+    private String stepOrdering; // PBT and BACKTRACKING: "INDEX" (default), "MAX_RED_DEGREE", "FEWEST_AUTHORISED", "BOD_GROUPED", "DSATUR" or "DOM_WDEG"
+
+    private String restartPolicy; // PBT and BACKTRACKING first-solution runs, not with parallelism: "NONE" (default), "LUBY" or "GEOMETRIC"
+
+    @Min(1)
+    private Long restartBase; // work unit scaled by the restart policy; RestartPolicy.DEFAULT_BASE when absent
+
+    private Long seed; // seed of the random tie-breaking used when restarting; 0 when absent
+
+    @Min(1)
+    private Long timeLimitMs; // every solver gives up after this long; the server default when absent
+
     // Constructors
     public WSPRequest() {}
 
@@ -59,6 +76,24 @@ public class WSPRequest {
     public String getSolverType() { return solverType; }
     public void setSolverType(String solverType) { this.solverType = solverType; }
 
+    public Integer getParallelism() { return parallelism; }
+    public void setParallelism(Integer parallelism) { this.parallelism = parallelism; }
+
+    public String getStepOrdering() { return stepOrdering; }
+    public void setStepOrdering(String stepOrdering) { this.stepOrdering = stepOrdering; }
+
+    public String getRestartPolicy() { return restartPolicy; }
+    public void setRestartPolicy(String restartPolicy) { this.restartPolicy = restartPolicy; }
+
+    public Long getRestartBase() { return restartBase; }
+    public void setRestartBase(Long restartBase) { this.restartBase = restartBase; }
+
+    public Long getSeed() { return seed; }
+    public void setSeed(Long seed) { this.seed = seed; }
+
+    public Long getTimeLimitMs() { return timeLimitMs; }
+    public void setTimeLimitMs(Long timeLimitMs) { this.timeLimitMs = timeLimitMs; }
+
     public static class Constraint {
         @NotNull
         @Min(0)
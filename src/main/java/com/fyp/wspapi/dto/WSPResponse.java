@@ -1,17 +1,25 @@
 package com.fyp.wspapi.dto;
 
+import java.util.Map;
+
 public class WSPResponse {
+    /** How the solve ended. */
+    public enum Status { SOLVED, NO_SOLUTION, TIMEOUT, CANCELLED, ERROR }
+
+    private Status status;
     private boolean solutionFound;
     private int[] assignment;
     private String message;
     private long solvingTimeMs;
     private String solverUsed;
+    private Map<String, Long> statistics;
 
     // Constructors
     public WSPResponse() {}
 
     public WSPResponse(boolean solutionFound, int[] assignment, String message, 
                       long solvingTimeMs, String solverUsed) {
+        this.status = solutionFound ? Status.SOLVED : Status.NO_SOLUTION;
         this.solutionFound = solutionFound;
         this.assignment = assignment;
         this.message = message;
@@ -28,7 +36,28 @@ public class WSPResponse {
         return new WSPResponse(false, null, message, solvingTimeMs, solverUsed);
     }
 
+    public static WSPResponse timeout(long solvingTimeMs, String solverUsed) {
+        WSPResponse response = new WSPResponse(false, null, "Time limit reached before the solver finished", solvingTimeMs, solverUsed);
+        response.setStatus(Status.TIMEOUT);
+        return response;
+    }
+
+    public static WSPResponse cancelled(long solvingTimeMs, String solverUsed) {
+        WSPResponse response = new WSPResponse(false, null, "Solving was cancelled", solvingTimeMs, solverUsed);
+        response.setStatus(Status.CANCELLED);
+        return response;
+    }
+
+    public static WSPResponse error(String message) {
+        WSPResponse response = new WSPResponse(false, null, message, 0, "NONE");
+        response.setStatus(Status.ERROR);
+        return response;
+    }
+
     // Getters and Setters
+    public Status getStatus() { return status; }
+    public void setStatus(Status status) { this.status = status; }
+
     public boolean isSolutionFound() { return solutionFound; }
     public void setSolutionFound(boolean solutionFound) { this.solutionFound = solutionFound; }
 
@@ -43,4 +72,7 @@ public class WSPResponse {
 
     public String getSolverUsed() { return solverUsed; }
     public void setSolverUsed(String solverUsed) { this.solverUsed = solverUsed; }
+
+    public Map<String, Long> getStatistics() { return statistics; }
+    public void setStatistics(Map<String, Long> statistics) { this.statistics = statistics; }
 }
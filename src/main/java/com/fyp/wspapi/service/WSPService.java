@@ -1,42 +1,79 @@
 package com.fyp.wspapi.service;
 
+import WSP.Backtracking.ParallelBacktracking;
 import WSP.Backtracking.WSPBacktracking;
+import WSP.BodContraction;
+import WSP.ComponentDecomposition;
 import WSP.PBT.WSPOrchestrator;
+import WSP.RestartPolicy;
+import WSP.SearchContext;
+import WSP.SodCliques;
+import WSP.SolverStatistics;
+import WSP.StepOrdering;
+import WSP.UnitPropagation;
+import WSP.UserTypes;
 import WSP.VertexCover.ConstraintGraph;
 import WSP.WSPCSPEncoder;
+import WSP.WSPInstance;
 import WSP.WSPSATEncoder;
-import WSP.WSPUtils;
 import com.fyp.wspapi.dto.WSPRequest;
 import com.fyp.wspapi.dto.WSPResponse;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.function.BiConsumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 @Service
 public class WSPService {
-    
+    public static final long DEFAULT_TIME_LIMIT_MS = 60_000;
+
+    // Time limit of requests that do not set one, so no request holds a thread indefinitely
+    @Value("${wsp.solver.time-limit-ms:" + DEFAULT_TIME_LIMIT_MS + "}")
+    private long defaultTimeLimitMs = DEFAULT_TIME_LIMIT_MS;
+
+    // Threads of the pool shared by every parallel search; the number of processors when 0
+    @Value("${wsp.solver.max-parallelism:0}")
+    private int maxParallelism;
+
+    private ForkJoinPool pool;
+
     public WSPResponse solveWSP(WSPRequest request) {
+        Long timeLimitMs = request.getTimeLimitMs();
+        return solveWSP(request, SearchContext.withTimeLimit(timeLimitMs == null ? defaultTimeLimitMs : timeLimitMs));
+    }
+
+    /**
+     * Solves the request within {@code context}. If the solver is stopped by the context
+     * before it finds a solution or proves there is none, the response has status TIMEOUT
+     * (or CANCELLED) and the statistics gathered up to that point.
+     */
+    public WSPResponse solveWSP(WSPRequest request, SearchContext context) {
         try {
             long startTime = System.currentTimeMillis();
             int[] solution;
             String solverUsed = request.getSolverType();
+            SolverStatistics statistics = new SolverStatistics();
+            // Set once a reduction or a component solver proves there is no solution
+            AtomicBoolean unsatisfiable = new AtomicBoolean();
             
             // Use the authorization matrix as-is (already in steps × users format)
             int[][] stepByUser = request.getAuthorized();
 
             switch (solverUsed.toUpperCase()) {
                 case "SAT":
-                    solution = solveWithSAT(request, stepByUser);
+                    solution = solveWithSAT(request, stepByUser, statistics, context, unsatisfiable);
                     break;
                 case "CSP":
-                    solution = solveWithCSP(request, stepByUser);
+                    solution = solveWithCSP(request, stepByUser, statistics, context, unsatisfiable);
                     break;
                 case "BACKTRACKING":
-                    solution = solveWithBacktracking(request, stepByUser);
+                    solution = solveWithBacktracking(request, stepByUser, statistics, context, unsatisfiable);
                     break;
                 case "PBT":
-                    solution = solveWithPBT(request, stepByUser);
+                    solution = solveWithPBT(request, stepByUser, statistics, context, unsatisfiable);
                     break;
                 default:
                     throw new IllegalArgumentException("Unsupported solver: " + solverUsed);
@@ -45,75 +82,211 @@ public class WSPService {
             long solvingTime = System.currentTimeMillis() - startTime;
             
             // Check if solution is null and return appropriate response
-            if (solution == null) {
-                return WSPResponse.failure("No valid assignment found that satisfies all constraints", solvingTime, solverUsed);
+            WSPResponse response;
+            if (solution != null) {
+                response = WSPResponse.success(solution, solvingTime, solverUsed);
+            } else if (!unsatisfiable.get()) {
+                response = context.isCancelled()
+                    ? WSPResponse.cancelled(solvingTime, solverUsed)
+                    : WSPResponse.timeout(solvingTime, solverUsed);
+            } else {
+                response = WSPResponse.failure("No solution found", solvingTime, solverUsed);
             }
-            
-            return WSPResponse.success(solution, solvingTime, solverUsed);
+            if (!statistics.isEmpty()) {
+                response.setStatistics(statistics.asMap());
+            }
+            return response;
 
         } catch (Exception e) {
-            return WSPResponse.failure("Error: " + e.getMessage(), 0, "NONE");
+            return WSPResponse.error("Error: " + e.getMessage());
         }
     }
 
-    private int[] solveWithSAT(WSPRequest request, int[][] stepByUser) {
-        WSPSATEncoder encoder = new WSPSATEncoder(
-            request.getNumSteps(),
-            request.getNumUsers(),
-            stepByUser
-        );
-        applyConstraints(encoder, request);
-        return encoder.encodeAndSolve();
-    }
-
-    private int[] solveWithCSP(WSPRequest request, int[][] stepByUser) {
-        WSPCSPEncoder encoder = new WSPCSPEncoder(
-            request.getNumSteps(),
-            request.getNumUsers(),
-            stepByUser
-        );
-        applyConstraints(encoder, request);
-        int[] solution = encoder.solveCSP();
-        if (solution == null) {
-            throw new IllegalStateException("No valid assignment found that satisfies all constraints");
+    private int[] solveWithSAT(WSPRequest request, int[][] stepByUser, SolverStatistics statistics,
+                               SearchContext context, AtomicBoolean unsatisfiable) {
+        return solveByComponents(request, stepByUser, statistics, context, unsatisfiable, (component, parallelism, scope) -> {
+            WSPSATEncoder encoder = new WSPSATEncoder(component);
+            for (int[] clique : SodCliques.maximalCliques(component.graph(), component.numSteps())) {
+                encoder.addAllDifferentConstraint(clique);
+            }
+            for (int[] users : UserTypes.interchangeableGroups(component)) {
+                encoder.addInterchangeableUsers(users);
+            }
+            encoder.setContext(scope);
+            int[] solution = encoder.encodeAndSolve();
+            if (solution == null && !encoder.isStopped()) unsatisfiable.set(true);
+            return solution;
+        });
+    }
+
+    private int[] solveWithCSP(WSPRequest request, int[][] stepByUser, SolverStatistics statistics,
+                               SearchContext context, AtomicBoolean unsatisfiable) {
+        return solveByComponents(request, stepByUser, statistics, context, unsatisfiable, (component, parallelism, scope) -> {
+            WSPCSPEncoder encoder = new WSPCSPEncoder(component);
+            for (int[] clique : SodCliques.maximalCliques(component.graph(), component.numSteps())) {
+                encoder.addAllDifferentConstraint(clique);
+            }
+            for (int[] users : UserTypes.interchangeableGroups(component)) {
+                encoder.addInterchangeableUsers(users);
+            }
+            encoder.setContext(scope);
+            int[] solution = encoder.solveCSP();
+            if (solution == null && !encoder.isStopped()) unsatisfiable.set(true);
+            return solution;
+        });
+    }
+
+    private int[] solveWithBacktracking(WSPRequest request, int[][] stepByUser, SolverStatistics statistics,
+                                        SearchContext context, AtomicBoolean unsatisfiable) {
+        checkRestarts(request);
+        return solveByComponents(request, stepByUser, statistics, context, unsatisfiable, (component, parallelism, scope) -> {
+            WSPBacktracking wsp = new WSPBacktracking(component, stepOrdering(request));
+            wsp.setArcConsistency(true);
+            wsp.setLeastConstrainingValue(true);
+            wsp.setBackjumping(true);
+            wsp.setAllDifferent(true);
+            wsp.setContext(scope);
+            int[] solution;
+            boolean stopped;
+            if (parallelism > 1) {
+                ParallelBacktracking parallel = new ParallelBacktracking(wsp, sharedPool(), parallelism);
+                solution = parallel.findFirst();
+                stopped = parallel.isStopped();
+            } else {
+                wsp.setRestarts(restartPolicy(request), restartBase(request), seed(request));
+                solution = wsp.findFirst();
+                stopped = wsp.isSuspended();
+            }
+            if (solution == null && !stopped) unsatisfiable.set(true);
+            synchronized (statistics) {
+                statistics.add("restarts", wsp.getRestarts());
+            }
+            return solution;
+        });
+    }
+
+    private int[] solveWithPBT(WSPRequest request, int[][] stepByUser, SolverStatistics statistics,
+                               SearchContext context, AtomicBoolean unsatisfiable) {
+        checkRestarts(request);
+        return solveByComponents(request, stepByUser, statistics, context, unsatisfiable, (component, parallelism, scope) -> {
+            WSPOrchestrator orchestrator = new WSPOrchestrator(component, stepOrdering(request));
+            orchestrator.setContext(scope);
+            orchestrator.setRestarts(restartPolicy(request), restartBase(request), seed(request));
+            int[] solution = parallelism > 1
+                ? orchestrator.solveFirstParallel(sharedPool(), parallelism)
+                : orchestrator.solveFirst();
+            if (solution == null && !orchestrator.isStopped()) unsatisfiable.set(true);
+            synchronized (statistics) {
+                statistics.merge(orchestrator.getStatistics());
+            }
+            return solution;
+        });
+    }
+
+    /**
+     * Builds the instance of the request once and reduces it stage by stage, each stage
+     * deriving its instance from the previous one: contracts BoD-joined steps into
+     * super-steps, fixes the steps that unit propagation leaves a single user, and keeps
+     * only as many users of each user type as there are steps left. Then solves each
+     * connected component of the remaining constraint graph on its own, on the shared pool
+     * when the request allows more than one thread, and maps the combined solution back to
+     * the original steps and users.
+     */
+    private int[] solveByComponents(WSPRequest request, int[][] stepByUser, SolverStatistics statistics,
+                                    SearchContext context, AtomicBoolean unsatisfiable,
+                                    ComponentDecomposition.ComponentSolver solver) {
+        WSPInstance instance = new WSPInstance(
+            createConstraintGraph(request), request.getNumSteps(), request.getNumUsers(), stepByUser);
+        BodContraction contraction = new BodContraction(instance);
+        statistics.set("superSteps", contraction.size());
+        if (contraction.isUnsatisfiable()) {
+            unsatisfiable.set(true);
+            return null;
+        }
+        UnitPropagation propagation = new UnitPropagation(contraction.instance());
+        statistics.set("fixedSteps", propagation.trace().size());
+        if (propagation.isUnsatisfiable()) {
+            unsatisfiable.set(true);
+            return null;
         }
-        return solution;
-    }
-
-    private int[] solveWithBacktracking(WSPRequest request, int[][] stepByUser) {
-        ConstraintGraph graph = createConstraintGraph(request);
-        WSPBacktracking wsp = new WSPBacktracking(
-            graph,
-            request.getNumUsers(),
-            request.getNumSteps(),
-            stepByUser
-        );
-        wsp.runBacktracking();
-        List<int[]> solutions = wsp.getSolutions();
-        return solutions.isEmpty() ? null : solutions.get(0);
-    }
-
-    private int[] solveWithPBT(WSPRequest request, int[][] stepByUser) {
-        ConstraintGraph graph = createConstraintGraph(request);
-        WSPOrchestrator orchestrator = new WSPOrchestrator(
-            graph,
-            stepByUser,
-            request.getNumSteps(),
-            request.getNumUsers()
-        );
-        // For now, use backtracking as fallback until PBT is fully implemented
-        return solveWithBacktracking(request, stepByUser);
-    }
-
-    private void applyConstraints(Object solver, WSPRequest request) {
-        ConstraintGraph graph = createConstraintGraph(request);
-        WSPUtils.applyGraphConstraints(
-            solver,
-            getAddSameConstraintMethod(solver),
-            getAddDifferentConstraintMethod(solver),
-            graph,
-            request.getNumSteps()
-        );
+        statistics.set("droppedUsers", request.getNumUsers() - propagation.reducedUsers());
+        UserTypes types = new UserTypes(propagation.instance());
+        statistics.set("userTypes", types.size());
+        statistics.set("reducedUsers", types.reducedUsers());
+        ComponentDecomposition components = new ComponentDecomposition(propagation.graph(), propagation.size());
+        statistics.set("components", components.size());
+        statistics.set("largestComponent", components.largestComponent());
+        components.setContext(context);
+        int parallelism = parallelism(request);
+        int[] reduced = parallelism > 1
+            ? components.solveFirst(types.instance(), solver, sharedPool(), parallelism)
+            : components.solveFirst(types.instance(), solver, 1);
+        statistics.set("parallelism", parallelism);
+        return contraction.expand(propagation.expand(types.expand(reduced)));
+    }
+
+    /**
+     * Rejects a restart policy on a parallel search, which never restarts. Checks the
+     * requested parallelism, so the outcome does not depend on the host.
+     */
+    private void checkRestarts(WSPRequest request) {
+        Integer requested = request.getParallelism();
+        if (requested != null && requested > 1 && restartPolicy(request) != RestartPolicy.NONE) {
+            throw new IllegalArgumentException("Restarts are not supported by parallel "
+                + request.getSolverType().toUpperCase() + " searches");
+        }
+    }
+
+    /**
+     * Requested worker threads, at most the size of the shared pool. A parallel search of
+     * the request runs no more than this many tasks on the pool at once.
+     */
+    private int parallelism(WSPRequest request) {
+        Integer parallelism = request.getParallelism();
+        return parallelism == null ? 1 : Math.min(parallelism, maxParallelism());
+    }
+
+    private int maxParallelism() {
+        return maxParallelism > 0 ? maxParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Pool every parallel search of this service runs on, so concurrent requests share
+     * {@code wsp.solver.max-parallelism} threads rather than each starting their own.
+     */
+    private synchronized ForkJoinPool sharedPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(maxParallelism());
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /** Step ordering named by the request, or the index order when it names none. */
+    private StepOrdering stepOrdering(WSPRequest request) {
+        String ordering = request.getStepOrdering();
+        return ordering == null ? StepOrdering.INDEX : StepOrdering.valueOf(ordering.toUpperCase());
+    }
+
+    private RestartPolicy restartPolicy(WSPRequest request) {
+        String policy = request.getRestartPolicy();
+        return policy == null ? RestartPolicy.NONE : RestartPolicy.valueOf(policy.toUpperCase());
+    }
+
+    private long restartBase(WSPRequest request) {
+        Long base = request.getRestartBase();
+        return base == null ? RestartPolicy.DEFAULT_BASE : base;
+    }
+
+    private long seed(WSPRequest request) {
+        Long seed = request.getSeed();
+        return seed == null ? 0 : seed;
     }
 
     private ConstraintGraph createConstraintGraph(WSPRequest request) {
@@ -135,22 +308,4 @@ public class WSPService {
         
         return graph;
     }
-
-    private BiConsumer<Integer, Integer> getAddSameConstraintMethod(Object solver) {
-        if (solver instanceof WSPSATEncoder) {
-            return ((WSPSATEncoder) solver)::addMustSameConstraint;
-        } else if (solver instanceof WSPCSPEncoder) {
-            return ((WSPCSPEncoder) solver)::addMustSameConstraint;
-        }
-        throw new UnsupportedOperationException("Unsupported solver type: " + solver.getClass().getName());
-    }
-
-    private BiConsumer<Integer, Integer> getAddDifferentConstraintMethod(Object solver) {
-        if (solver instanceof WSPSATEncoder) {
-            return ((WSPSATEncoder) solver)::addMustDifferentConstraint;
-        } else if (solver instanceof WSPCSPEncoder) {
-            return ((WSPCSPEncoder) solver)::addMustDifferentConstraint;
-        }
-        throw new UnsupportedOperationException("Unsupported solver type: " + solver.getClass().getName());
-    }
 }
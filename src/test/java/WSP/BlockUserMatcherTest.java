@@ -0,0 +1,109 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.PBT.BlockUserMatcher;
+import WSP.PBT.HopcroftKarpMatcher;
+import WSP.PBT.KuhnMatcher;
+import WSP.PBT.PartitionAuthorizer;
+
+public class BlockUserMatcherTest {
+
+    private static List<BlockUserMatcher> matchers() {
+        List<BlockUserMatcher> matchers = new ArrayList<>();
+        matchers.add(new HopcroftKarpMatcher());
+        matchers.add(new KuhnMatcher());
+        return matchers;
+    }
+
+    private static void assertValidMatching(long[][] blockUsers, int[] matching) {
+        Set<Integer> used = new HashSet<>();
+        for (int b = 0; b < matching.length; b++) {
+            assertTrue(BitSets.get(blockUsers[b], matching[b]), "Block " + b + " matched to unauthorized user");
+            assertTrue(used.add(matching[b]), "User " + matching[b] + " matched twice");
+        }
+    }
+
+    @Test
+    void testMatchersAgreeWithRecursiveKuhn() {
+        Random rand = new Random(7);
+        List<BlockUserMatcher> matchers = matchers();
+        for (int trial = 0; trial < 200; trial++) {
+            int m = 1 + rand.nextInt(8);
+            int n = 1 + rand.nextInt(150);
+            long[][] bits = new long[m][BitSets.words(n)];
+            List<List<Integer>> adjacency = new ArrayList<>();
+            for (int b = 0; b < m; b++) {
+                List<Integer> users = new ArrayList<>();
+                for (int u = 0; u < n; u++) {
+                    if (rand.nextDouble() < 0.15) {
+                        BitSets.set(bits[b], u);
+                        users.add(u);
+                    }
+                }
+                adjacency.add(users);
+            }
+            int[] expected = PartitionAuthorizer.getBlockUserMatching(adjacency, m, n);
+            for (BlockUserMatcher matcher : matchers) {
+                int[] actual = matcher.match(bits, m, n);
+                assertEquals(expected == null, actual == null);
+                if (actual != null) {
+                    assertValidMatching(bits, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testHallViolation() {
+        // Three blocks that can only use users 0 and 1.
+        long[][] bits = {{0b011L}, {0b011L}, {0b111L}, {0b010L}};
+        for (BlockUserMatcher matcher : matchers()) {
+            assertNull(matcher.match(bits, 4, 3));
+            assertNotNull(matcher.match(bits, 3, 3));
+        }
+    }
+
+    @Test
+    void testAuthorizePartitionReusesRows() {
+        // The second, smaller partition must not see the rows left over from the first.
+        int[][] authorized = {{1, 1, 0}, {0, 1, 1}, {1, 0, 0}};
+        List<Set<Integer>> wide = new ArrayList<>();
+        for (int s = 0; s < 3; s++) wide.add(new HashSet<>(List.of(s)));
+        List<Set<Integer>> merged = new ArrayList<>();
+        merged.add(new HashSet<>(List.of(0, 2)));
+        merged.add(new HashSet<>(List.of(1)));
+        for (BlockUserMatcher matcher : matchers()) {
+            assertNotNull(PartitionAuthorizer.authorizePartition(wide, authorized, 3, matcher));
+            int[] matching = PartitionAuthorizer.authorizePartition(merged, authorized, 3, matcher);
+            assertArrayEquals(new int[]{0, 1}, matching);
+            merged.get(1).add(2);
+            assertNull(PartitionAuthorizer.authorizePartition(merged, authorized, 3, matcher));
+            merged.get(1).remove(2);
+        }
+    }
+
+    @Test
+    void testManyBlocks() {
+        // Block b may use users b and b+1; the search must not recurse once per block.
+        int m = 5000;
+        long[][] bits = new long[m][BitSets.words(m + 1)];
+        for (int b = 0; b < m; b++) {
+            BitSets.set(bits[b], b);
+            BitSets.set(bits[b], b + 1);
+        }
+        for (BlockUserMatcher matcher : matchers()) {
+            int[] matching = matcher.match(bits, m, m + 1);
+            assertNotNull(matching);
+            assertValidMatching(bits, matching);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.Backtracking.WSPBacktracking;
+import WSP.VertexCover.ConstraintGraph;
+
+public class BodContractionTest {
+
+    @Test
+    void testContractsBlackGroups() {
+        // 0 = 2 = 4 and 1 = 3 by BoD; 0 != 1 and 4 != 5 by SoD.
+        ConstraintGraph graph = new ConstraintGraph(6);
+        graph.addConstraintEdge(0, 2, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(4, 2, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 3, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        graph.addConstraintEdge(4, 5, ConstraintGraph.RED);
+        graph.addConstraintEdge(3, 5, ConstraintGraph.RED);
+        int[][] authorised = {
+            {1, 1, 1},
+            {1, 1, 0},
+            {0, 1, 1},
+            {1, 0, 1},
+            {1, 1, 1},
+            {1, 1, 1}
+        };
+
+        BodContraction contraction = new BodContraction(graph, 6, 3, authorised);
+        assertEquals(3, contraction.size());
+        assertArrayEquals(new int[]{0, 2, 4}, contraction.members(0));
+        assertArrayEquals(new int[]{1, 3}, contraction.members(1));
+        assertArrayEquals(new int[]{5}, contraction.members(2));
+        assertArrayEquals(new int[][]{{0, 1, 1}, {1, 0, 0}, {1, 1, 1}}, contraction.authorisation());
+        assertEquals(ConstraintGraph.RED, contraction.graph().getConstraintType(0, 1));
+        assertEquals(ConstraintGraph.RED, contraction.graph().getConstraintType(0, 2));
+        assertEquals(ConstraintGraph.RED, contraction.graph().getConstraintType(1, 2));
+        assertFalse(contraction.isUnsatisfiable());
+        assertArrayEquals(new int[]{2, 0, 2, 0, 2, 1}, contraction.expand(new int[]{2, 0, 1}));
+        assertNull(contraction.expand(null));
+    }
+
+    @Test
+    void testDetectsContradictions() {
+        ConstraintGraph graph = new ConstraintGraph(3);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(0, 2, ConstraintGraph.RED);
+        int[][] all = {{1, 1}, {1, 1}, {1, 1}};
+        BodContraction contraction = new BodContraction(graph, 3, 2, all);
+        assertTrue(contraction.hasContradiction());
+        assertTrue(contraction.isUnsatisfiable());
+
+        ConstraintGraph bound = new ConstraintGraph(2);
+        bound.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        BodContraction disjoint = new BodContraction(bound, 2, 2, new int[][]{{1, 0}, {0, 1}});
+        assertFalse(disjoint.hasContradiction());
+        assertTrue(disjoint.isUnsatisfiable());
+    }
+
+    @Test
+    void testReducedInstanceHasSameSolutions() {
+        Random rand = new Random(59);
+        for (int trial = 0; trial < 40; trial++) {
+            int k = 8, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.35, rand);
+            int[][] authorised = RandomInstance.generateAuth(k, n, 0.75, rand);
+
+            WSPBacktracking reference = new WSPBacktracking(graph, n, k, authorised);
+            reference.runBacktracking();
+            Set<String> expected = new HashSet<>();
+            for (int[] solution : reference.getSolutions()) expected.add(Arrays.toString(solution));
+
+            BodContraction contraction = new BodContraction(graph, k, n, authorised);
+            Set<String> actual = new HashSet<>();
+            if (!contraction.isUnsatisfiable()) {
+                new WSPBacktracking(contraction.graph(), n, contraction.size(), contraction.authorisation())
+                        .forEachSolution(solution -> actual.add(Arrays.toString(contraction.expand(solution))));
+            }
+            assertEquals(expected, actual);
+        }
+    }
+}
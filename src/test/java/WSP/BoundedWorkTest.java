@@ -0,0 +1,77 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+public class BoundedWorkTest {
+
+    @Test
+    void testRunsAtMostParallelismItemsAtOnce() {
+        ForkJoinPool pool = new ForkJoinPool(8);
+        try {
+            for (int parallelism : new int[]{1, 2, 3}) {
+                AtomicInteger running = new AtomicInteger();
+                AtomicInteger peak = new AtomicInteger();
+                LongAdder done = new LongAdder();
+                List<Integer> items = new ArrayList<>();
+                for (int i = 0; i < 40; i++) items.add(i);
+                new BoundedWork<Integer>(pool, parallelism, item -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.increment();
+                }).run(items);
+                assertEquals(40, done.sum());
+                assertTrue(peak.get() <= parallelism, "parallelism " + parallelism + ", peak " + peak.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testItemsMaySubmitMoreItems() {
+        // Each item below depth 10 submits two children: 2^11 - 1 items in all.
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            LongAdder done = new LongAdder();
+            AtomicReference<BoundedWork<Integer>> work = new AtomicReference<>();
+            work.set(new BoundedWork<>(pool, 3, depth -> {
+                done.increment();
+                if (depth < 10) {
+                    work.get().submit(depth + 1);
+                    work.get().submit(depth + 1);
+                }
+            }));
+            work.get().run(0);
+            assertEquals((1 << 11) - 1, done.sum());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testExceptionIsRethrown() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            BoundedWork<Integer> work = new BoundedWork<>(pool, 2, item -> {
+                throw new IllegalStateException("item " + item);
+            });
+            assertThrows(IllegalStateException.class, () -> work.run(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.Backtracking.WSPBacktracking;
+import WSP.PBT.WSPOrchestrator;
+import WSP.VertexCover.ConstraintGraph;
+
+public class ComponentDecompositionTest {
+
+    @Test
+    void testComponentsAndIsolatedSteps() {
+        // {0, 2, 4} and {1, 3} are joined by constraints; 5 and 6 are free.
+        ConstraintGraph graph = new ConstraintGraph(7);
+        graph.addConstraintEdge(0, 2, ConstraintGraph.RED);
+        graph.addConstraintEdge(2, 4, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 3, ConstraintGraph.RED);
+
+        ComponentDecomposition components = new ComponentDecomposition(graph, 7);
+        assertEquals(3, components.size());
+        assertArrayEquals(new int[]{0, 2, 4}, components.steps(0));
+        assertArrayEquals(new int[]{1, 3}, components.steps(1));
+        assertArrayEquals(new int[]{5, 6}, components.steps(2));
+        assertEquals(3, components.largestComponent());
+        assertEquals(ConstraintGraph.RED, components.graph(0).getConstraintType(0, 1));
+        assertEquals(ConstraintGraph.BLACK, components.graph(0).getConstraintType(1, 2));
+        assertEquals(-1, components.graph(2).getConstraintType(0, 1));
+    }
+
+    @Test
+    void testSolveAndCountMatchWholeInstance() {
+        Random rand = new Random(3);
+        for (int trial = 0; trial < 20; trial++) {
+            // Two random sub-processes side by side, plus one free step.
+            int a = 4, b = 3, k = a + b + 1, n = 3;
+            ConstraintGraph left = RandomInstance.generateGraph(a, 0.5, rand);
+            ConstraintGraph right = RandomInstance.generateGraph(b, 0.6, rand);
+            ConstraintGraph graph = new ConstraintGraph(k);
+            for (int i = 0; i < a; i++) {
+                for (int j = i + 1; j < a; j++) {
+                    int type = left.getConstraintType(i, j);
+                    if (type >= 0) graph.addConstraintEdge(i, j, type);
+                }
+            }
+            for (int i = 0; i < b; i++) {
+                for (int j = i + 1; j < b; j++) {
+                    int type = right.getConstraintType(i, j);
+                    if (type >= 0) graph.addConstraintEdge(a + i, a + j, type);
+                }
+            }
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.7, rand);
+
+            long expected = new WSPBacktracking(graph, n, k, auth).forEachSolution(solution -> { });
+            ComponentDecomposition components = new ComponentDecomposition(graph, k);
+            assertEquals(expected, components.countSolutions(auth,
+                    (sub, steps, subAuth) -> new WSPBacktracking(sub, n, steps, subAuth).forEachSolution(s -> { })));
+
+            WSPInstance instance = new WSPInstance(graph, k, n, auth);
+            for (int parallelism = 1; parallelism <= 3; parallelism += 2) {
+                int[] backtracking = components.solveFirst(instance,
+                        (sub, threads, context) -> new WSPBacktracking(sub, StepOrdering.INDEX).findFirst(),
+                        parallelism);
+                int[] pbt = components.solveFirst(instance,
+                        (sub, threads, context) -> new WSPOrchestrator(sub, StepOrdering.INDEX).solveFirst(),
+                        parallelism);
+                assertEquals(expected == 0, backtracking == null);
+                assertEquals(expected == 0, pbt == null);
+                if (expected > 0) {
+                    Solutions.assertValid(graph, auth, backtracking);
+                    Solutions.assertValid(graph, auth, pbt);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testComponentWithoutSolutionStopsTheOthers() {
+        // {0, 1} has no solution; {2, 3, 4} would search until stopped.
+        ConstraintGraph graph = new ConstraintGraph(5);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        graph.addConstraintEdge(2, 3, ConstraintGraph.RED);
+        graph.addConstraintEdge(3, 4, ConstraintGraph.RED);
+        int[][] auth = {{1, 0}, {1, 0}, {1, 1}, {1, 1}, {1, 1}};
+        WSPInstance instance = new WSPInstance(graph, 5, 2, auth);
+
+        CountDownLatch searching = new CountDownLatch(1);
+        AtomicBoolean stopped = new AtomicBoolean();
+        ComponentDecomposition components = new ComponentDecomposition(graph, 5);
+        SearchContext context = SearchContext.withTimeLimit(10_000);
+        components.setContext(context);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            long start = System.nanoTime();
+            int[] solution = components.solveFirst(instance, (sub, threads, scope) -> {
+                try {
+                    if (sub.numSteps() == 2) {
+                        searching.await();
+                        return null;
+                    }
+                    searching.countDown();
+                    while (!scope.shouldStop()) Thread.sleep(1);
+                    stopped.set(true);
+                    return null;
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, pool, 2);
+            assertNull(solution);
+            assertTrue(stopped.get());
+            assertTrue(System.nanoTime() - start < 5_000_000_000L);
+            // The caller's context is left running.
+            assertFalse(context.shouldStop());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
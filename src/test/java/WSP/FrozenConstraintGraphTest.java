@@ -0,0 +1,98 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.VertexCover.ConstraintGraph;
+import WSP.VertexCover.FrozenConstraintGraph;
+
+public class FrozenConstraintGraphTest {
+
+    @Test
+    void testMatchesBuilder() {
+        Random rand = new Random(47);
+        for (int k : new int[]{1, 7, 64, 65, 130}) {
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            // Retyped edges keep their last type.
+            if (k > 2) {
+                graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+                graph.addConstraintEdge(1, 0, ConstraintGraph.BLACK);
+            }
+            FrozenConstraintGraph view = graph.freeze();
+            assertTrue(view.hasMatrices());
+            assertSame(view, graph.freeze());
+            assertSameGraph(graph, view, k);
+        }
+    }
+
+    @Test
+    void testSparseStorageAboveMatrixLimit() {
+        int k = FrozenConstraintGraph.MATRIX_LIMIT + 10;
+        Random rand = new Random(53);
+        ConstraintGraph graph = new ConstraintGraph(k);
+        for (int e = 0; e < 3 * k; e++) {
+            int u = rand.nextInt(k), v = rand.nextInt(k);
+            if (u != v) graph.addConstraintEdge(u, v, rand.nextBoolean() ? ConstraintGraph.RED : ConstraintGraph.BLACK);
+        }
+        FrozenConstraintGraph view = graph.freeze();
+        assertFalse(view.hasMatrices());
+        int words = BitSets.words(k);
+        for (int u = 0; u < k; u += 97) {
+            for (int v = 0; v < k; v++) {
+                assertEquals(graph.getConstraintType(u, v), view.getConstraintType(u, v));
+            }
+            for (int type : new int[]{ConstraintGraph.RED, ConstraintGraph.BLACK}) {
+                assertArrayEquals(neighbourMask(graph, k, u, type, words), view.neighbourMask(u, type, words));
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotIgnoresLaterEdits() {
+        ConstraintGraph graph = new ConstraintGraph(3);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        FrozenConstraintGraph before = graph.freeze();
+        graph.addConstraintEdge(1, 2, ConstraintGraph.BLACK);
+        FrozenConstraintGraph after = graph.freeze();
+
+        assertNotSame(before, after);
+        assertEquals(-1, before.getConstraintType(1, 2));
+        assertEquals(ConstraintGraph.BLACK, after.getConstraintType(2, 1));
+        assertArrayEquals(new int[]{0}, after.neighbours(1, ConstraintGraph.RED));
+        assertArrayEquals(new int[]{2}, after.neighbours(1, ConstraintGraph.BLACK));
+        assertEquals(1, after.degree(1, ConstraintGraph.RED));
+    }
+
+    /** Neighbour bitset read off the builder one pair at a time, as the oracle. */
+    private static long[] neighbourMask(ConstraintGraph graph, int k, int u, int type, int words) {
+        long[] mask = new long[words];
+        for (int v = 0; v < k; v++) {
+            if (v != u && graph.getConstraintType(u, v) == type) BitSets.set(mask, v);
+        }
+        return mask;
+    }
+
+    private static void assertSameGraph(ConstraintGraph graph, FrozenConstraintGraph view, int k) {
+        assertEquals(k, view.size());
+        int words = Math.max(1, BitSets.words(k));
+        for (int u = 0; u < k; u++) {
+            for (int v = 0; v < k; v++) {
+                assertEquals(graph.getConstraintType(u, v), view.getConstraintType(u, v), u + "," + v);
+            }
+            for (int type : new int[]{ConstraintGraph.RED, ConstraintGraph.BLACK}) {
+                long[] mask = neighbourMask(graph, k, u, type, words);
+                assertArrayEquals(mask, view.neighbourMask(u, type, words));
+                assertEquals(BitSets.cardinality(mask), view.degree(u, type));
+                int[] neighbours = view.neighbours(u, type);
+                int i = 0;
+                for (int v = BitSets.nextSetBit(mask, 0); v >= 0; v = BitSets.nextSetBit(mask, v + 1)) {
+                    assertEquals(v, neighbours[i++]);
+                }
+                assertEquals(i, neighbours.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package WSP;
+
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import WSP.PBT.BlockUserMatcher;
+import WSP.PBT.HopcroftKarpMatcher;
+import WSP.PBT.KuhnMatcher;
+import WSP.PBT.PartitionAuthorizer;
+
+/**
+ * Compares the recursive list-based Kuhn matching in {@link PartitionAuthorizer}
+ * with the {@link BlockUserMatcher} implementations, {@link KuhnMatcher} and
+ * {@link HopcroftKarpMatcher}, on random block/user graphs, for user counts
+ * from 10 to 100k. Each representation is built before timing starts.
+ *
+ * Run by hand from the test classpath; the CSV goes to standard output, or to the
+ * file given as the first argument.
+ */
+public class MatcherBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        PrintWriter out = new PrintWriter(args.length > 0
+                ? new FileWriter(args[0])
+                : new OutputStreamWriter(System.out));
+        out.println("matcher,numBlocks,numUsers,pAuth,timeMs,matched");
+
+        int[] userSizes = {10, 100, 1000, 10000, 100000};
+        int[] blockSizes = {5, 10, 20};
+        double[] densities = {0.05, 0.3};
+        int repeats = 20;
+        Random rand = new Random(1234L);
+        String[] names = {"KuhnBitset", "HopcroftKarp"};
+        BlockUserMatcher[] matchers = {new KuhnMatcher(), new HopcroftKarpMatcher()};
+
+        for (int n : userSizes) {
+            for (int m : blockSizes) {
+                for (double p : densities) {
+                    long[][] bits = new long[m][BitSets.words(n)];
+                    List<List<Integer>> adjacency = new ArrayList<>();
+                    for (int b = 0; b < m; b++) {
+                        List<Integer> users = new ArrayList<>();
+                        for (int u = 0; u < n; u++) {
+                            if (rand.nextDouble() < p) {
+                                BitSets.set(bits[b], u);
+                                users.add(u);
+                            }
+                        }
+                        adjacency.add(users);
+                    }
+
+                    // Kuhn (list adjacency, recursive)
+                    boolean kuhnMatched = false;
+                    String kuhnTime;
+                    try {
+                        for (int r = 0; r < repeats; r++) {
+                            PartitionAuthorizer.getBlockUserMatching(adjacency, m, n);
+                        }
+                        long k0 = System.nanoTime();
+                        for (int r = 0; r < repeats; r++) {
+                            kuhnMatched = PartitionAuthorizer.getBlockUserMatching(adjacency, m, n) != null;
+                        }
+                        long k1 = System.nanoTime();
+                        kuhnTime = String.format("%.3f", (k1 - k0) / 1e6 / repeats);
+                    } catch (StackOverflowError e) {
+                        kuhnTime = "overflow";
+                    }
+                    out.printf("Kuhn,%d,%d,%.2f,%s,%b%n", m, n, p, kuhnTime, kuhnMatched);
+
+                    // Bitset adjacency, iterative
+                    for (int i = 0; i < matchers.length; i++) {
+                        boolean matched = false;
+                        for (int r = 0; r < repeats; r++) {
+                            matchers[i].match(bits, m, n);
+                        }
+                        long t0 = System.nanoTime();
+                        for (int r = 0; r < repeats; r++) {
+                            matched = matchers[i].match(bits, m, n) != null;
+                        }
+                        long t1 = System.nanoTime();
+                        out.printf("%s,%d,%d,%.2f,%.3f,%b%n",
+                                names[i], m, n, p, (t1 - t0) / 1e6 / repeats, matched);
+                    }
+
+                    out.flush();
+                }
+            }
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,107 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.Backtracking.ParallelBacktracking;
+import WSP.Backtracking.WSPBacktracking;
+import WSP.VertexCover.ConstraintGraph;
+
+public class ParallelBacktrackingTest {
+
+    @Test
+    void testFindAllMatchesSequentialSearch() {
+        Random rand = new Random(5);
+        for (int trial = 0; trial < 10; trial++) {
+            int k = 8, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.25, rand);
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.7, rand);
+
+            WSPBacktracking sequential = new WSPBacktracking(graph, n, k, auth);
+            sequential.runBacktracking();
+            Set<String> expected = new HashSet<>();
+            for (int[] solution : sequential.getSolutions()) expected.add(Arrays.toString(solution));
+
+            for (StepOrdering ordering : new StepOrdering[]{StepOrdering.INDEX, StepOrdering.DOM_WDEG}) {
+                WSPBacktracking template = new WSPBacktracking(graph, n, k, auth, ordering);
+                template.setArcConsistency(trial % 2 == 0);
+                template.setForwardChecking(trial % 2 == 1);
+                template.setBackjumping(true);
+                ParallelBacktracking parallel = new ParallelBacktracking(template, 4);
+
+                List<int[]> all = parallel.findAll();
+                Set<String> actual = new HashSet<>();
+                for (int[] solution : all) actual.add(Arrays.toString(solution));
+                assertEquals(expected.size(), all.size(), ordering.name());
+                assertEquals(expected, actual, ordering.name());
+                assertEquals(expected.size(), parallel.countSolutions(), ordering.name());
+            }
+        }
+    }
+
+    @Test
+    void testFindFirstReturnsValidSolution() {
+        ConstraintGraph graph = new ConstraintGraph(10);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        for (int s = 1; s < 9; s++) {
+            graph.addConstraintEdge(s, s + 1, ConstraintGraph.RED);
+        }
+        int[][] auth = new int[10][6];
+        for (int[] row : auth) Arrays.fill(row, 1);
+
+        int[] solution = new ParallelBacktracking(graph, 6, 10, auth, StepOrdering.INDEX, 4).findFirst();
+        assertNotNull(solution);
+        assertEquals(solution[0], solution[1]);
+        for (int s = 1; s < 9; s++) {
+            assertNotEquals(solution[s], solution[s + 1]);
+        }
+    }
+
+    @Test
+    void testUnsatisfiableExploresWholeTree() {
+        // Six steps pairwise different over five users, behind four free steps.
+        int k = 10, n = 5;
+        ConstraintGraph graph = new ConstraintGraph(k);
+        for (int a = 4; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                graph.addConstraintEdge(a, b, ConstraintGraph.RED);
+            }
+        }
+        int[][] auth = new int[k][n];
+        for (int[] row : auth) Arrays.fill(row, 1);
+
+        ParallelBacktracking parallel = new ParallelBacktracking(graph, n, k, auth, StepOrdering.INDEX, 4);
+        assertNull(parallel.findFirst());
+        assertEquals(0, parallel.countSolutions());
+        assertTrue(parallel.getTaskCount() >= 1);
+    }
+
+    @Test
+    void testSharedPoolIsLeftRunning() {
+        Random rand = new Random(6);
+        int k = 8, n = 4;
+        ConstraintGraph graph = RandomInstance.generateGraph(k, 0.25, rand);
+        int[][] auth = RandomInstance.generateAuth(k, n, 0.7, rand);
+        WSPBacktracking sequential = new WSPBacktracking(graph, n, k, auth);
+        sequential.runBacktracking();
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (int run = 0; run < 3; run++) {
+                ParallelBacktracking parallel = new ParallelBacktracking(new WSPBacktracking(graph, n, k, auth), pool);
+                assertEquals(sequential.getSolutions().size(), parallel.countSolutions());
+                assertFalse(pool.isShutdown());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.PBT.ParallelPartitionSearch;
+import WSP.PBT.PartitionGenerator;
+import WSP.PBT.WSPOrchestrator;
+import WSP.VertexCover.ConstraintGraph;
+
+public class ParallelPartitionSearchTest {
+
+    private static String key(int[] encoding) {
+        return Arrays.toString(encoding);
+    }
+
+    @Test
+    void testFindAllMatchesSequentialSearch() {
+        Random rand = new Random(11);
+        for (int trial = 0; trial < 10; trial++) {
+            int k = 8, n = 5;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.2, rand);
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.6, rand);
+            PartitionGenerator generator = new PartitionGenerator(graph, k, auth, n);
+
+            Set<String> expected = new HashSet<>();
+            PartitionGenerator.PartitionIterator it = generator.iterator();
+            while (it.advance()) {
+                expected.add(key(it.currentEncoding()));
+            }
+
+            ParallelPartitionSearch search = new ParallelPartitionSearch(generator, 4, 3);
+            List<int[]> all = search.findAll();
+            Set<String> actual = new HashSet<>();
+            for (int[] encoding : all) {
+                actual.add(key(encoding));
+            }
+            assertEquals(expected.size(), all.size());
+            assertEquals(expected, actual);
+            assertEquals(expected.size(), search.getPartitionsExplored());
+        }
+    }
+
+    @Test
+    void testFirstSolutionParallel() {
+        ConstraintGraph graph = new ConstraintGraph(10);
+        for (int s = 0; s + 1 < 10; s++) {
+            graph.addConstraintEdge(s, s + 1, ConstraintGraph.RED);
+        }
+        int[][] auth = RandomInstance.generateAuth(10, 6, 0.7, new Random(3));
+        int[] encoding = new WSPOrchestrator(graph, auth, 10, 6).solveFirstParallel(4);
+        assertNotNull(encoding);
+        for (int s = 0; s < 10; s++) {
+            assertEquals(1, auth[s][encoding[s]]);
+            if (s > 0) assertNotEquals(encoding[s - 1], encoding[s]);
+        }
+    }
+
+    @Test
+    void testUnsatisfiableParallel() {
+        ConstraintGraph graph = new ConstraintGraph(4);
+        for (int i = 0; i < 4; i++) {
+            for (int j = i + 1; j < 4; j++) {
+                graph.addConstraintEdge(i, j, ConstraintGraph.RED);
+            }
+        }
+        int[][] auth = {{1, 1, 1}, {1, 1, 1}, {1, 1, 1}, {1, 1, 1}};
+        assertNull(new WSPOrchestrator(graph, auth, 4, 3).solveFirstParallel(2));
+    }
+}
@@ -0,0 +1,320 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.Backtracking.WSPBacktracking;
+import WSP.PBT.PartitionAuthorizer;
+import WSP.PBT.PartitionGenerator;
+import WSP.PBT.WSPOrchestrator;
+import WSP.VertexCover.ConstraintGraph;
+
+public class PartitionIteratorTest {
+
+    @Test
+    void testIteratorMatchesEagerGeneration() {
+        ConstraintGraph graph = new ConstraintGraph(5);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.RED);
+        graph.addConstraintEdge(3, 4, ConstraintGraph.RED);
+
+        PartitionGenerator eager = new PartitionGenerator(graph, 5);
+        eager.GenerateParitions();
+        List<List<Set<Integer>>> expected = eager.getValidPartitions();
+
+        Iterator<List<Set<Integer>>> it = new PartitionGenerator(graph, 5).iterator();
+        for (List<Set<Integer>> partition : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(partition, it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    void testUnconstrainedCountIsBellNumber() {
+        // Bell(6) = 203
+        PartitionGenerator gen = new PartitionGenerator(new ConstraintGraph(6), 6);
+        assertEquals(203, gen.stream().count());
+    }
+
+    @Test
+    void testMoreThanSixtyFourSteps() {
+        // A BLACK chain over 70 steps leaves a single partition, and closing
+        // it with a RED edge across word boundaries leaves none.
+        ConstraintGraph graph = new ConstraintGraph(70);
+        for (int s = 0; s + 1 < 70; s++) {
+            graph.addConstraintEdge(s, s + 1, ConstraintGraph.BLACK);
+        }
+        List<List<Set<Integer>>> partitions = new ArrayList<>();
+        new PartitionGenerator(graph, 70).iterator().forEachRemaining(partitions::add);
+        assertEquals(1, partitions.size());
+        assertEquals(70, partitions.get(0).get(0).size());
+
+        graph.addConstraintEdge(3, 67, ConstraintGraph.RED);
+        assertEquals(0, new PartitionGenerator(graph, 70).stream().count());
+    }
+
+    @Test
+    void testAuthorizedPartitionsMatchLeafAuthorization() {
+        Random rand = new Random(42);
+        for (int trial = 0; trial < 20; trial++) {
+            int k = 7, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.2, rand);
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.6, rand);
+
+            List<List<Set<Integer>>> expected = new ArrayList<>();
+            new PartitionGenerator(graph, k).iterator().forEachRemaining(partition -> {
+                if (PartitionAuthorizer.authorizePartition(partition, auth, n) != null) {
+                    expected.add(partition);
+                }
+            });
+
+            List<List<Set<Integer>>> pruned = new ArrayList<>();
+            PartitionGenerator.PartitionIterator it = new PartitionGenerator(graph, k, auth, n).iterator();
+            while (it.hasNext()) {
+                List<Set<Integer>> partition = it.next();
+                int[] matching = it.currentMatching();
+                Set<Integer> users = new HashSet<>();
+                for (int b = 0; b < partition.size(); b++) {
+                    assertTrue(users.add(matching[b]), "User matched twice: " + partition);
+                    for (int step : partition.get(b)) {
+                        assertEquals(1, auth[step][matching[b]]);
+                    }
+                }
+                pruned.add(partition);
+            }
+            assertEquals(expected, pruned);
+        }
+    }
+
+    @Test
+    void testStepOrderingsProduceSamePartitions() {
+        Random rand = new Random(7);
+        for (int trial = 0; trial < 10; trial++) {
+            int k = 7, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.6, rand);
+
+            Set<Set<Set<Integer>>> expected = new HashSet<>();
+            new PartitionGenerator(graph, k, auth, n).iterator()
+                    .forEachRemaining(partition -> expected.add(new HashSet<>(partition)));
+
+            for (StepOrdering ordering : StepOrdering.values()) {
+                Set<Set<Set<Integer>>> actual = new HashSet<>();
+                PartitionGenerator.PartitionIterator it =
+                        new PartitionGenerator(graph, k, auth, n, ordering).iterator();
+                while (it.advance()) {
+                    int[] encoding = it.currentEncoding();
+                    for (int s = 0; s < k; s++) {
+                        assertEquals(1, auth[s][encoding[s]], ordering.name());
+                    }
+                }
+                it = new PartitionGenerator(graph, k, auth, n, ordering).iterator();
+                it.forEachRemaining(partition -> actual.add(new HashSet<>(partition)));
+                assertEquals(expected, actual, ordering.name());
+            }
+        }
+    }
+
+    @Test
+    void testSuspendAndResumeFromCheckpoint() throws IOException {
+        Random rand = new Random(19);
+        for (int trial = 0; trial < 10; trial++) {
+            int k = 7, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.6, rand);
+            StepOrdering ordering = trial % 2 == 0 ? StepOrdering.INDEX : StepOrdering.DOM_WDEG;
+
+            List<List<Set<Integer>>> expected = new ArrayList<>();
+            new PartitionGenerator(graph, k, auth, n, ordering).iterator().forEachRemaining(expected::add);
+
+            // Suspend once before every item; continue in place on odd items and from a
+            // checkpoint in a fresh generator on even ones.
+            List<List<Set<Integer>>> actual = new ArrayList<>();
+            PartitionGenerator.PartitionIterator it = new PartitionGenerator(graph, k, auth, n, ordering).iterator();
+            boolean suspend = true;
+            while (true) {
+                if (suspend) it.requestSuspend();
+                suspend = !suspend;
+                if (it.hasNext()) {
+                    actual.add(it.next());
+                    suspend = true;
+                } else if (!it.isSuspended()) {
+                    break;
+                } else if (actual.size() % 2 == 0) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    it.writeCheckpoint(new DataOutputStream(bytes));
+                    it = new PartitionGenerator(graph, k, auth, n, ordering)
+                            .resume(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                }
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testHallNogoodsPruneRepeatedFailures() {
+        // Steps 5, 6 and 7 must be pairwise different but share only users 0 and 1,
+        // which is only discovered after steps 0..4 have been grouped in every possible way.
+        int k = 8, n = 4;
+        ConstraintGraph graph = new ConstraintGraph(k);
+        graph.addConstraintEdge(5, 6, ConstraintGraph.RED);
+        graph.addConstraintEdge(6, 7, ConstraintGraph.RED);
+        graph.addConstraintEdge(5, 7, ConstraintGraph.RED);
+        int[][] auth = new int[k][];
+        for (int s = 0; s < k; s++) {
+            auth[s] = s >= 5 ? new int[]{1, 1, 0, 0} : new int[]{1, 1, 1, 1};
+        }
+
+        PartitionGenerator.PartitionIterator it = new PartitionGenerator(graph, k, auth, n).iterator();
+        assertFalse(it.hasNext());
+        assertTrue(it.nogoods().size() >= 1);
+        assertTrue(it.nogoods().getPrunes() > 0, "Learned nogoods should reject later branches");
+    }
+
+    @Test
+    void testSolveFirstReturnsValidEncoding() {
+        ConstraintGraph graph = new ConstraintGraph(4);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.RED);
+        graph.addConstraintEdge(2, 3, ConstraintGraph.RED);
+        int[][] authorized = {
+            {1, 1, 0},
+            {0, 1, 1},
+            {1, 0, 1},
+            {0, 1, 0}
+        };
+
+        int[] encoding = new WSPOrchestrator(graph, authorized, 4, 3).solveFirst();
+        assertNotNull(encoding);
+        assertEquals(encoding[0], encoding[1]);
+        assertNotEquals(encoding[1], encoding[2]);
+        assertNotEquals(encoding[2], encoding[3]);
+        for (int s = 0; s < 4; s++) {
+            assertEquals(1, authorized[s][encoding[s]]);
+        }
+    }
+
+    @Test
+    void testSolveFirstUnsatisfiable() {
+        ConstraintGraph graph = new ConstraintGraph(2);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        int[][] authorized = {
+            {1, 0},
+            {1, 0}
+        };
+        assertNull(new WSPOrchestrator(graph, authorized, 2, 2).solveFirst());
+    }
+
+    @Test
+    void testSolveListsOnlyAuthorizedPartitions() {
+        Random rand = new Random(3);
+        int k = 6, n = 3;
+        ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+        int[][] auth = RandomInstance.generateAuth(k, n, 0.7, rand);
+
+        List<List<Set<Integer>>> seen = new ArrayList<>();
+        List<int[]> matchings = new WSPOrchestrator(graph, auth, k, n).solve((partition, matching) -> {
+            assertNotNull(matching);
+            seen.add(partition);
+        });
+        assertEquals(seen.size(), matchings.size());
+        for (int[] matching : matchings) assertNotNull(matching);
+
+        ConstraintGraph red = new ConstraintGraph(2);
+        red.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        assertTrue(new WSPOrchestrator(red, new int[][]{{1, 0}, {1, 0}}, 2, 2).solve().isEmpty());
+    }
+
+    @Test
+    void testSolveFirstWithRestarts() {
+        Random rand = new Random(37);
+        long restarts = 0;
+        for (int trial = 0; trial < 30; trial++) {
+            int k = 8, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.4, rand);
+            int[][] authorized = RandomInstance.generateAuth(k, n, 0.6, rand);
+            boolean satisfiable = new WSPBacktracking(graph, n, k, authorized).findFirst() != null;
+
+            for (RestartPolicy policy : new RestartPolicy[]{RestartPolicy.LUBY, RestartPolicy.GEOMETRIC}) {
+                for (boolean keepNogoods : new boolean[]{true, false}) {
+                    WSPOrchestrator orchestrator = new WSPOrchestrator(graph, authorized, k, n, StepOrdering.DSATUR);
+                    orchestrator.setRestarts(policy, 1, trial);
+                    orchestrator.setKeepNogoods(keepNogoods);
+                    int[] encoding = orchestrator.solveFirst();
+                    assertEquals(satisfiable, encoding != null, policy + " keepNogoods=" + keepNogoods);
+                    if (encoding != null) {
+                        for (int s = 0; s < k; s++) {
+                            assertEquals(1, authorized[s][encoding[s]]);
+                            for (int t = s + 1; t < k; t++) {
+                                int type = graph.getConstraintType(s, t);
+                                if (type == ConstraintGraph.BLACK) assertEquals(encoding[s], encoding[t]);
+                                if (type == ConstraintGraph.RED) assertNotEquals(encoding[s], encoding[t]);
+                            }
+                        }
+                    }
+                    long runRestarts = orchestrator.getStatistics().asMap().get("restarts").longValue();
+                    // Every run that is cut off has placed at least one step.
+                    assertTrue(orchestrator.getStatistics().asMap().get("partitionsExplored").longValue() >= runRestarts);
+                    restarts += runRestarts;
+                }
+            }
+        }
+        assertTrue(restarts > 0);
+    }
+
+    @Test
+    void testSolveFirstStopsWithContext() {
+        Random rand = new Random(43);
+        int k = 8, n = 4;
+        ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+        int[][] authorized = new int[k][n];
+        for (int[] row : authorized) Arrays.fill(row, 1);
+        assertNotNull(new WSPOrchestrator(graph, authorized, k, n).solveFirst());
+
+        WSPOrchestrator stopped = new WSPOrchestrator(graph, authorized, k, n);
+        stopped.setContext(SearchContext.withTimeLimit(0));
+        assertNull(stopped.solveFirst());
+        assertTrue(stopped.isStopped());
+        assertEquals(0L, stopped.getStatistics().asMap().get("partitionsExplored"));
+        assertNull(stopped.solveFirstParallel(2));
+        assertTrue(stopped.isStopped());
+
+        WSPOrchestrator restarting = new WSPOrchestrator(graph, authorized, k, n, StepOrdering.DSATUR);
+        restarting.setRestarts(RestartPolicy.LUBY, 1, 0);
+        SearchContext cancelled = SearchContext.unlimited();
+        cancelled.cancel();
+        restarting.setContext(cancelled);
+        assertNull(restarting.solveFirst());
+        assertTrue(restarting.isStopped());
+        assertEquals(0L, restarting.getStatistics().asMap().get("restarts"));
+
+        // Five users cannot each take one of six steps that must all differ.
+        ConstraintGraph clique = new ConstraintGraph(6);
+        for (int s = 0; s < 6; s++) {
+            for (int t = s + 1; t < 6; t++) clique.addConstraintEdge(s, t, ConstraintGraph.RED);
+        }
+        int[][] five = new int[6][5];
+        for (int[] row : five) Arrays.fill(row, 1);
+        WSPOrchestrator unsatisfiable = new WSPOrchestrator(clique, five, 6, 5);
+        unsatisfiable.setContext(SearchContext.unlimited());
+        assertNull(unsatisfiable.solveFirst());
+        assertFalse(unsatisfiable.isStopped());
+        assertNull(unsatisfiable.solveFirstParallel(2));
+        assertFalse(unsatisfiable.isStopped());
+    }
+}
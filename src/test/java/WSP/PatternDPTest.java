@@ -0,0 +1,44 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.PBT.PatternDP;
+import WSP.PBT.WSPOrchestrator;
+import WSP.VertexCover.ConstraintGraph;
+
+public class PatternDPTest {
+
+    @Test
+    void testAgreesWithPartitionSearch() {
+        Random rand = new Random(5);
+        for (int trial = 0; trial < 60; trial++) {
+            int k = 4 + rand.nextInt(6), n = 2 + rand.nextInt(5);
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] auth = RandomInstance.generateAuth(k, n, 0.5, rand);
+
+            int[] expected = new WSPOrchestrator(graph, auth, k, n).solveFirst();
+            int[] actual = new PatternDP(graph, auth, k, n).solve();
+            assertEquals(expected == null, actual == null, "Satisfiability differs on trial " + trial);
+            assertArrayEquals(actual, new PatternDP(new WSPInstance(graph, k, n, auth)).solve(), "trial " + trial);
+            if (actual != null) {
+                Solutions.assertValid(graph, auth, actual);
+            }
+        }
+    }
+
+    @Test
+    void testUnconstrainedFrontierStaysSmall() {
+        // With no constraints and identical rows, patterns only differ by their number of
+        // blocks, so each layer holds at most k patterns instead of Bell(k).
+        int k = 14, n = 3;
+        int[][] auth = new int[k][n];
+        for (int s = 0; s < k; s++) auth[s] = new int[]{1, 1, 1};
+        PatternDP dp = new PatternDP(new ConstraintGraph(k), auth, k, n);
+        assertNotNull(dp.solve());
+        assertTrue(dp.getMaxFrontier() <= n, "Frontier grew to " + dp.getMaxFrontier());
+    }
+}
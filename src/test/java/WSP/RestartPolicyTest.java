@@ -0,0 +1,27 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class RestartPolicyTest {
+
+    @Test
+    void testLubySequence() {
+        long[] expected = {1, 1, 2, 1, 1, 2, 4, 1, 1, 2, 1, 1, 2, 4, 8, 1};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], RestartPolicy.luby(i + 1), "term " + (i + 1));
+            assertEquals(10 * expected[i], RestartPolicy.LUBY.cutoff(i, 10));
+        }
+    }
+
+    @Test
+    void testCutoffsGrowAndSaturate() {
+        assertEquals(100, RestartPolicy.GEOMETRIC.cutoff(0, 100));
+        assertEquals(150, RestartPolicy.GEOMETRIC.cutoff(1, 100));
+        assertEquals(225, RestartPolicy.GEOMETRIC.cutoff(2, 100));
+        assertEquals(Long.MAX_VALUE, RestartPolicy.GEOMETRIC.cutoff(500, 100));
+        assertEquals(Long.MAX_VALUE, RestartPolicy.LUBY.cutoff(Integer.MAX_VALUE - 1, Long.MAX_VALUE / 2));
+        assertEquals(Long.MAX_VALUE, RestartPolicy.NONE.cutoff(0, 1));
+    }
+}
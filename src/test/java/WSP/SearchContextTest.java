@@ -0,0 +1,79 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+public class SearchContextTest {
+
+    @Test
+    void testDeadline() throws InterruptedException {
+        SearchContext unlimited = SearchContext.unlimited();
+        assertFalse(unlimited.shouldStop());
+        assertEquals(Double.POSITIVE_INFINITY, unlimited.remainingSeconds());
+
+        SearchContext expired = SearchContext.withTimeLimit(0);
+        assertTrue(expired.shouldStop());
+        assertTrue(expired.isExpired());
+        assertFalse(expired.isCancelled());
+        assertEquals(0.0, expired.remainingSeconds());
+
+        SearchContext shortLimit = SearchContext.withTimeLimit(20);
+        assertTrue(shortLimit.remainingSeconds() <= 0.02);
+        Thread.sleep(40);
+        assertTrue(shortLimit.shouldStop());
+
+        assertFalse(SearchContext.withTimeLimit(Long.MAX_VALUE).shouldStop());
+        assertThrows(IllegalArgumentException.class, () -> SearchContext.withTimeLimit(-1));
+    }
+
+    @Test
+    void testCancelRunsListenersOnce() {
+        SearchContext context = SearchContext.withTimeLimit(60_000);
+        AtomicInteger calls = new AtomicInteger();
+        Runnable listener = calls::incrementAndGet;
+        Runnable removed = () -> fail("removed listener ran");
+        context.onCancel(listener);
+        context.onCancel(removed);
+        context.removeCancelListener(removed);
+
+        context.cancel();
+        context.cancel();
+        assertEquals(1, calls.get());
+        assertTrue(context.shouldStop());
+        assertTrue(context.isCancelled());
+
+        // Listeners added after cancelling run at once.
+        context.onCancel(listener);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testChildStopsWithParentButNotTheOtherWay() {
+        SearchContext parent = SearchContext.withTimeLimit(60_000);
+        SearchContext first = parent.child();
+        SearchContext second = parent.child();
+        assertEquals(parent.remainingSeconds(), first.remainingSeconds(), 1.0);
+
+        first.cancel();
+        assertTrue(first.shouldStop());
+        assertFalse(parent.shouldStop());
+        assertFalse(second.shouldStop());
+
+        AtomicInteger calls = new AtomicInteger();
+        second.onCancel(calls::incrementAndGet);
+        parent.cancel();
+        assertTrue(second.shouldStop());
+        assertEquals(1, calls.get());
+
+        // A closed child no longer follows its parent.
+        SearchContext other = SearchContext.withTimeLimit(60_000);
+        SearchContext closed = other.child();
+        closed.close();
+        other.cancel();
+        assertFalse(closed.shouldStop());
+        assertTrue(SearchContext.withTimeLimit(0).child().shouldStop());
+    }
+}
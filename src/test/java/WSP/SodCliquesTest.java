@@ -0,0 +1,53 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.VertexCover.ConstraintGraph;
+
+public class SodCliquesTest {
+
+    @Test
+    void testMaximalCliquesIgnoreBlackEdges() {
+        // RED cliques {0, 1, 2, 3} and {3, 4, 5}; the BLACK edge 2-4 does not join them.
+        ConstraintGraph graph = new ConstraintGraph(7);
+        int[][] red = {{0, 1}, {0, 2}, {0, 3}, {1, 2}, {1, 3}, {2, 3}, {3, 4}, {3, 5}, {4, 5}, {5, 6}};
+        for (int[] e : red) graph.addConstraintEdge(e[0], e[1], ConstraintGraph.RED);
+        graph.addConstraintEdge(2, 4, ConstraintGraph.BLACK);
+
+        List<String> cliques = new ArrayList<>();
+        for (int[] clique : SodCliques.maximalCliques(graph, 7)) cliques.add(Arrays.toString(clique));
+        cliques.sort(null);
+        assertEquals(Arrays.asList("[0, 1, 2, 3]", "[3, 4, 5]"), cliques);
+        assertEquals(1, SodCliques.maximalCliques(graph, 7, 3, 1).size());
+    }
+
+    @Test
+    void testEveryCliqueIsMaximal() {
+        Random rand = new Random(17);
+        for (int trial = 0; trial < 20; trial++) {
+            int k = 10;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.8, rand);
+            for (int[] clique : SodCliques.maximalCliques(graph, k, 2, Integer.MAX_VALUE)) {
+                for (int i = 0; i < clique.length; i++) {
+                    for (int j = i + 1; j < clique.length; j++) {
+                        assertEquals(ConstraintGraph.RED, graph.getConstraintType(clique[i], clique[j]));
+                    }
+                }
+                for (int s = 0; s < k; s++) {
+                    boolean joinsAll = true;
+                    for (int t : clique) {
+                        joinsAll &= graph.getConstraintType(s, t) == ConstraintGraph.RED;
+                    }
+                    assertFalse(joinsAll, "clique " + Arrays.toString(clique) + " extends by " + s);
+                }
+            }
+        }
+    }
+}
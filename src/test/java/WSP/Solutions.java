@@ -0,0 +1,32 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import WSP.VertexCover.ConstraintGraph;
+
+/**
+ * Checks shared by the solver tests.
+ */
+final class Solutions {
+
+    private Solutions() {
+    }
+
+    /**
+     * Asserts that {@code solution} gives every step an authorised user and satisfies every
+     * SoD (RED) and BoD (BLACK) constraint of {@code graph}.
+     */
+    static void assertValid(ConstraintGraph graph, int[][] authorised, int[] solution) {
+        for (int s = 0; s < solution.length; s++) {
+            assertEquals(1, authorised[s][solution[s]],
+                    "Step " + s + " given an unauthorised user in " + Arrays.toString(solution));
+            for (int t = s + 1; t < solution.length; t++) {
+                int type = graph.getConstraintType(s, t);
+                if (type == ConstraintGraph.RED) assertNotEquals(solution[s], solution[t]);
+                if (type == ConstraintGraph.BLACK) assertEquals(solution[s], solution[t]);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class SolverStatisticsTest {
+
+    @Test
+    void testPhaseTimesKeepTheirFractions() {
+        // Three runs of 0.6 ms each add up to 1.8 ms, not 3 × 0.
+        SolverStatistics total = new SolverStatistics();
+        for (int run = 0; run < 3; run++) {
+            SolverStatistics component = new SolverStatistics();
+            component.add("nodes", 5);
+            component.addPhase("search", 600_000L);
+            total.merge(component);
+        }
+        total.addPhase("setup", 999_999L);
+
+        assertEquals(1L, total.get("searchTimeMs"));
+        assertEquals(0L, total.get("setupTimeMs"));
+        assertEquals(15L, total.get("nodes"));
+        Map<String, Long> map = total.asMap();
+        assertEquals(Arrays.asList("nodes", "searchTimeMs", "setupTimeMs"), Arrays.asList(map.keySet().toArray()));
+        assertEquals(1L, map.get("searchTimeMs"));
+        assertEquals(15L, map.get("nodes"));
+
+        total.addPhase("setup", 1L);
+        assertEquals(1L, total.asMap().get("setupTimeMs"));
+    }
+}
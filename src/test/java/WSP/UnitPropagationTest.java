@@ -0,0 +1,94 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.Backtracking.WSPBacktracking;
+import WSP.VertexCover.ConstraintGraph;
+
+public class UnitPropagationTest {
+
+    @Test
+    void testFixesForcedSteps() {
+        // Step 0 may only go to user 1; 0 != 1 then forces user 2 on step 1, and 1 = 2 carries it over.
+        // Step 3 is free, user 0 is left to it and user 3 is authorised for nothing.
+        ConstraintGraph graph = new ConstraintGraph(4);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(2, 3, ConstraintGraph.RED);
+        int[][] authorised = {
+            {0, 1, 0, 0},
+            {0, 1, 1, 0},
+            {1, 1, 1, 0},
+            {1, 1, 1, 0}
+        };
+
+        UnitPropagation propagation = new UnitPropagation(graph, 4, 4, authorised);
+        assertFalse(propagation.isUnsatisfiable());
+        List<int[]> trace = propagation.trace();
+        assertEquals(3, trace.size());
+        assertArrayEquals(new int[]{0, 1}, trace.get(0));
+        assertEquals(2, propagation.fixedUser(1));
+        assertEquals(2, propagation.fixedUser(2));
+        assertEquals(-1, propagation.fixedUser(3));
+
+        // Step 3 is left with users 0 and 1.
+        assertEquals(1, propagation.size());
+        assertEquals(2, propagation.reducedUsers());
+        assertArrayEquals(new int[][]{{1, 1}}, propagation.authorisation());
+        assertArrayEquals(new int[]{1, 2, 2, 0}, propagation.expand(new int[]{0}));
+        assertNull(propagation.expand(null));
+    }
+
+    @Test
+    void testDetectsEmptyDomains() {
+        ConstraintGraph graph = new ConstraintGraph(3);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.RED);
+        graph.addConstraintEdge(0, 2, ConstraintGraph.RED);
+        int[][] authorised = {{1, 0}, {1, 1}, {0, 1}};
+        assertTrue(new UnitPropagation(graph, 3, 2, authorised).isUnsatisfiable());
+
+        ConstraintGraph same = new ConstraintGraph(2);
+        same.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        assertTrue(new UnitPropagation(same, 2, 2, new int[][]{{1, 0}, {0, 1}}).isUnsatisfiable());
+    }
+
+    @Test
+    void testReducedInstanceKeepsSolutions() {
+        Random random = new Random(24);
+        for (int trial = 0; trial < 60; trial++) {
+            int numSteps = 3 + random.nextInt(5);
+            int numUsers = 2 + random.nextInt(4);
+            int[][] authorised = new int[numSteps][numUsers];
+            for (int s = 0; s < numSteps; s++) {
+                for (int u = 0; u < numUsers; u++) authorised[s][u] = random.nextInt(3) == 0 ? 1 : 0;
+            }
+            ConstraintGraph graph = new ConstraintGraph(numSteps);
+            for (int s = 0; s < numSteps; s++) {
+                for (int t = s + 1; t < numSteps; t++) {
+                    int roll = random.nextInt(6);
+                    if (roll < 2) graph.addConstraintEdge(s, t, ConstraintGraph.RED);
+                    else if (roll == 2) graph.addConstraintEdge(s, t, ConstraintGraph.BLACK);
+                }
+            }
+
+            int[] original = new WSPBacktracking(graph, numUsers, numSteps, authorised).findFirst();
+            UnitPropagation propagation = new UnitPropagation(graph, numSteps, numUsers, authorised);
+            if (propagation.isUnsatisfiable()) {
+                assertNull(original, "trial " + trial);
+                continue;
+            }
+            int[] reduced = new WSPBacktracking(propagation.graph(), propagation.reducedUsers(),
+                propagation.size(), propagation.authorisation()).findFirst();
+            assertEquals(original == null, reduced == null, "trial " + trial);
+            if (reduced != null) {
+                Solutions.assertValid(graph, authorised, propagation.expand(reduced));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.Backtracking.WSPBacktracking;
+import WSP.VertexCover.ConstraintGraph;
+
+public class UserTypesTest {
+
+    @Test
+    void testGroupsIdenticalColumns() {
+        // Users 0, 2, 3 share a column, user 1 has its own, user 4 is authorised for nothing.
+        int[][] authorised = {
+            {1, 0, 1, 1, 0},
+            {0, 1, 0, 0, 0},
+            {1, 1, 1, 1, 0}
+        };
+        UserTypes types = new UserTypes(authorised, 3, 5, 2);
+        assertEquals(3, types.size());
+        assertEquals(types.typeOf(0), types.typeOf(3));
+        assertNotEquals(types.typeOf(0), types.typeOf(1));
+        assertEquals(3, types.capacity(types.typeOf(2)));
+        assertArrayEquals(new int[]{0, 2, 3}, types.users(types.typeOf(0)));
+
+        // Two users of the first type, one of the second, none of the unusable one.
+        assertEquals(3, types.reducedUsers());
+        assertArrayEquals(new int[][]{{1, 1, 0}, {0, 0, 1}, {1, 1, 1}}, types.reducedAuthorisation());
+        assertArrayEquals(new int[]{2, 1, 0}, types.expand(new int[]{1, 2, 0}));
+        assertNull(types.expand(null));
+
+        List<int[]> groups = UserTypes.interchangeableGroups(authorised, 3, 5);
+        assertEquals(1, groups.size());
+        assertArrayEquals(new int[]{0, 2, 3}, groups.get(0));
+    }
+
+    @Test
+    void testReducedInstanceKeepsSolvability() {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 40; trial++) {
+            int numSteps = 3 + random.nextInt(4);
+            int numUsers = 4 + random.nextInt(12);
+            int numTypes = 1 + random.nextInt(3);
+            int[][] columns = new int[numTypes][numSteps];
+            for (int[] column : columns) {
+                for (int s = 0; s < numSteps; s++) column[s] = random.nextInt(3) == 0 ? 0 : 1;
+            }
+            int[][] authorised = new int[numSteps][numUsers];
+            for (int u = 0; u < numUsers; u++) {
+                int[] column = columns[random.nextInt(numTypes)];
+                for (int s = 0; s < numSteps; s++) authorised[s][u] = column[s];
+            }
+            ConstraintGraph graph = new ConstraintGraph(numSteps);
+            for (int s = 0; s < numSteps; s++) {
+                for (int t = s + 1; t < numSteps; t++) {
+                    if (random.nextInt(2) == 0) graph.addConstraintEdge(s, t, ConstraintGraph.RED);
+                }
+            }
+
+            UserTypes types = new UserTypes(authorised, numSteps, numUsers);
+            assertTrue(types.size() <= numTypes);
+            int[] original = new WSPBacktracking(graph, numUsers, numSteps, authorised).findFirst();
+            int[] reduced = new WSPBacktracking(
+                graph, types.reducedUsers(), numSteps, types.reducedAuthorisation()).findFirst();
+            assertEquals(original == null, reduced == null, "trial " + trial);
+            if (reduced != null) {
+                Solutions.assertValid(graph, authorised, types.expand(reduced));
+            }
+        }
+    }
+}
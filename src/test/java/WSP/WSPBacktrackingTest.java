@@ -1,8 +1,22 @@
 package WSP;
 
+import WSP.Backtracking.NogoodStore;
+import WSP.Backtracking.ParallelBacktracking;
 import WSP.Backtracking.WSPBacktracking;
 import WSP.VertexCover.ConstraintGraph;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
 
@@ -93,4 +107,368 @@ public class WSPBacktrackingTest {
         assertTrue(result.contains("[0]") || result.contains("[1]") || result.contains("[2]"),
             "The result should contain valid assignments for the single step.");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBacktracking_AllSearchModesFindSameSolutions() {
+        Random rand = new Random(11);
+        for (int trial = 0; trial < 10; trial++) {
+            int k = 6, n = 3;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] authorized = RandomInstance.generateAuth(k, n, 0.7, rand);
+
+            WSPBacktracking reference = new WSPBacktracking(graph, n, k, authorized);
+            reference.runBacktracking();
+            Set<String> expected = new HashSet<>();
+            for (int[] solution : reference.getSolutions()) expected.add(Arrays.toString(solution));
+
+            for (StepOrdering ordering : StepOrdering.values()) {
+                // 0 = plain, 1 = forward checking, 2 = arc consistency, 3 = arc consistency + LCV;
+                // each with and without backjumping
+                for (int mode = 0; mode < 8; mode++) {
+                    int propagation = mode % 4;
+                    WSPBacktracking ordered = new WSPBacktracking(graph, n, k, authorized, ordering);
+                    ordered.setForwardChecking(propagation == 1);
+                    ordered.setArcConsistency(propagation >= 2);
+                    ordered.setLeastConstrainingValue(propagation == 3);
+                    ordered.setBackjumping(mode >= 4);
+                    ordered.runBacktracking();
+                    Set<String> actual = new HashSet<>();
+                    for (int[] solution : ordered.getSolutions()) actual.add(Arrays.toString(solution));
+                    assertEquals(expected, actual, ordering.name() + " mode " + mode);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBacktracking_SearchModes() {
+        // Four unconstrained steps over three users: 81 solutions.
+        ConstraintGraph graph = new ConstraintGraph(4);
+        int[][] authorized = {
+            {1, 1, 1},
+            {1, 1, 1},
+            {1, 1, 1},
+            {1, 1, 1}
+        };
+        WSPBacktracking backtracking = new WSPBacktracking(graph, 3, 4, authorized);
+        backtracking.runBacktracking();
+        assertEquals(81, backtracking.getSolutions().size());
+
+        assertArrayEquals(backtracking.getSolutions().get(0), backtracking.findFirst());
+
+        assertEquals(5, backtracking.findSolutions(5).size());
+        assertArrayEquals(backtracking.getSolutions().get(4), backtracking.findSolutions(5).get(4));
+
+        long[] firstUser = new long[3];
+        assertEquals(81, backtracking.forEachSolution(solution -> firstUser[solution[0]]++));
+        assertArrayEquals(new long[]{27, 27, 27}, firstUser);
+        assertEquals(10, backtracking.forEachSolution(solution -> { }, 10));
+    }
+
+    @Test
+    public void testBacktracking_FindFirstUnsatisfiable() {
+        ConstraintGraph graph = new ConstraintGraph(2);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        int[][] authorized = {
+            {1, 0},
+            {1, 0}
+        };
+        WSPBacktracking backtracking = new WSPBacktracking(graph, 2, 2, authorized);
+        assertNull(backtracking.findFirst());
+        assertTrue(backtracking.findSolutions(3).isEmpty());
+    }
+
+    @Test
+    public void testBacktracking_ForwardCheckingWideDomains() {
+        // 70 users span two domain words; a BLACK pair and a RED pair around user 65.
+        int k = 3, n = 70;
+        ConstraintGraph graph = new ConstraintGraph(k);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.RED);
+        int[][] authorized = new int[k][n];
+        authorized[0][65] = 1;
+        authorized[1][3] = 1;
+        authorized[1][65] = 1;
+        authorized[2][65] = 1;
+        authorized[2][69] = 1;
+
+        WSPBacktracking backtracking = new WSPBacktracking(graph, n, k, authorized);
+        backtracking.setForwardChecking(true);
+        backtracking.runBacktracking();
+        assertEquals(1, backtracking.getSolutions().size());
+        assertArrayEquals(new int[]{65, 65, 69}, backtracking.getSolutions().get(0));
+    }
+
+    @Test
+    public void testBacktracking_ArcConsistencyDetectsUnsatisfiableAtRoot() {
+        // A BLACK chain 0-1-2 with a RED edge 0-2 cannot be satisfied: AC-3 empties the
+        // domains before any step is assigned.
+        ConstraintGraph graph = new ConstraintGraph(3);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(1, 2, ConstraintGraph.BLACK);
+        graph.addConstraintEdge(0, 2, ConstraintGraph.RED);
+        int[][] authorized = {
+            {1, 1},
+            {0, 1},
+            {1, 1}
+        };
+        WSPBacktracking backtracking = new WSPBacktracking(graph, 2, 3, authorized, StepOrdering.DOM_WDEG);
+        backtracking.setArcConsistency(true);
+        backtracking.setLeastConstrainingValue(true);
+        assertNull(backtracking.findFirst());
+    }
+
+    @Test
+    public void testBacktracking_BackjumpingLearnsBoundedNogoods() {
+        // Steps 0..3 are free; steps 4..8 must be pairwise different but share four users,
+        // so every way of assigning steps 0..3 fails for reasons that do not involve them.
+        int k = 9, n = 4;
+        ConstraintGraph graph = new ConstraintGraph(k);
+        for (int a = 4; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                graph.addConstraintEdge(a, b, ConstraintGraph.RED);
+            }
+        }
+        int[][] authorized = new int[k][n];
+        for (int[] row : authorized) Arrays.fill(row, 1);
+
+        for (int propagation = 0; propagation < 3; propagation++) {
+            WSPBacktracking backtracking = new WSPBacktracking(graph, n, k, authorized);
+            backtracking.setForwardChecking(propagation == 1);
+            backtracking.setArcConsistency(propagation == 2);
+            backtracking.setBackjumping(true);
+            backtracking.setNogoodCapacity(4);
+            assertNull(backtracking.findFirst());
+            NogoodStore nogoods = backtracking.getNogoods();
+            if (propagation < 2) {
+                assertTrue(nogoods.getLearned() > 0);
+            }
+            assertTrue(nogoods.size() <= 4);
+            assertEquals(nogoods.getLearned(), nogoods.size() + nogoods.getEvicted());
+        }
+    }
+
+    @Test
+    public void testBacktracking_AllDifferentFindsSameSolutions() {
+        Random rand = new Random(29);
+        for (int trial = 0; trial < 20; trial++) {
+            int k = 7, n = 4;
+            ConstraintGraph graph = new ConstraintGraph(k);
+            for (int a = 0; a < k; a++) {
+                for (int b = a + 1; b < k; b++) {
+                    double p = rand.nextDouble();
+                    if (p < 0.6) graph.addConstraintEdge(a, b, ConstraintGraph.RED);
+                    else if (p < 0.7) graph.addConstraintEdge(a, b, ConstraintGraph.BLACK);
+                }
+            }
+            int[][] authorized = RandomInstance.generateAuth(k, n, 0.75, rand);
+
+            WSPBacktracking reference = new WSPBacktracking(graph, n, k, authorized);
+            reference.runBacktracking();
+            Set<String> expected = new HashSet<>();
+            for (int[] solution : reference.getSolutions()) expected.add(Arrays.toString(solution));
+
+            // 0 = forward checking, 1 = arc consistency; each with and without backjumping
+            for (int mode = 0; mode < 4; mode++) {
+                WSPBacktracking filtered = new WSPBacktracking(graph, n, k, authorized, StepOrdering.DOM_WDEG);
+                filtered.setForwardChecking(mode % 2 == 0);
+                filtered.setArcConsistency(mode % 2 == 1);
+                filtered.setBackjumping(mode >= 2);
+                filtered.setAllDifferent(true);
+                filtered.runBacktracking();
+                Set<String> actual = new HashSet<>();
+                for (int[] solution : filtered.getSolutions()) actual.add(Arrays.toString(solution));
+                assertEquals(expected, actual, "mode " + mode);
+                assertEquals(expected.size(), filtered.getSolutions().size(), "mode " + mode);
+            }
+        }
+    }
+
+    @Test
+    public void testBacktracking_AllDifferentDetectsPigeonholeAtRoot() {
+        // Six steps pairwise different over five users: pairwise arc consistency cannot
+        // see this, the all-different filter fails before the first assignment.
+        int k = 8, n = 5;
+        ConstraintGraph graph = new ConstraintGraph(k);
+        for (int a = 2; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                graph.addConstraintEdge(a, b, ConstraintGraph.RED);
+            }
+        }
+        int[][] authorized = new int[k][n];
+        for (int[] row : authorized) Arrays.fill(row, 1);
+
+        for (boolean allDifferent : new boolean[]{false, true}) {
+            WSPBacktracking backtracking = new WSPBacktracking(graph, n, k, authorized);
+            backtracking.setArcConsistency(true);
+            backtracking.setAllDifferent(allDifferent);
+            backtracking.requestSuspend();
+            assertNull(backtracking.findFirst());
+            assertEquals(!allDifferent, backtracking.isSuspended());
+        }
+    }
+
+    @Test
+    public void testBacktracking_SuspendAndResumeFromCheckpoint() throws IOException {
+        Random rand = new Random(23);
+        for (int trial = 0; trial < 10; trial++) {
+            int k = 7, n = 3;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] authorized = RandomInstance.generateAuth(k, n, 0.7, rand);
+
+            WSPBacktracking reference = new WSPBacktracking(graph, n, k, authorized);
+            reference.runBacktracking();
+            Set<String> expected = new HashSet<>();
+            for (int[] solution : reference.getSolutions()) expected.add(Arrays.toString(solution));
+
+            for (int mode = 0; mode < 4; mode++) {
+                StepOrdering ordering = mode == 3 ? StepOrdering.DOM_WDEG : StepOrdering.INDEX;
+                // Suspend before the first node, then after every solution, and carry on
+                // from each checkpoint in a fresh search.
+                List<String> solutions = new ArrayList<>();
+                WSPBacktracking search = newSearch(graph, n, k, authorized, ordering, mode);
+                search.requestSuspend();
+                long found = search.forEachSolution(solution -> solutions.add(Arrays.toString(solution)));
+                int resumes = 0;
+                while (search.isSuspended()) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    search.writeCheckpoint(new DataOutputStream(bytes));
+                    WSPBacktracking resumed = newSearch(graph, n, k, authorized, ordering, mode);
+                    found = resumed.resume(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                            solution -> {
+                                solutions.add(Arrays.toString(solution));
+                                resumed.requestSuspend();
+                            }, Long.MAX_VALUE);
+                    search = resumed;
+                    resumes++;
+                }
+                assertTrue(expected.isEmpty() || resumes >= expected.size(), "mode " + mode);
+                assertEquals(expected.size(), found, "mode " + mode);
+                assertEquals(expected.size(), solutions.size(), "mode " + mode);
+                assertEquals(expected, new HashSet<>(solutions), "mode " + mode);
+            }
+        }
+    }
+
+    @Test
+    public void testBacktracking_CheckpointRejectsOtherInstance() throws IOException {
+        ConstraintGraph graph = new ConstraintGraph(3);
+        graph.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        int[][] authorized = {{1, 1}, {1, 1}, {1, 1}};
+        WSPBacktracking search = new WSPBacktracking(graph, 2, 3, authorized);
+        assertThrows(IllegalStateException.class, () -> search.writeCheckpoint(new DataOutputStream(new ByteArrayOutputStream())));
+        search.requestSuspend();
+        search.findFirst();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        search.writeCheckpoint(new DataOutputStream(bytes));
+
+        int[][] other = {{1, 0}, {1, 1}, {1, 1}};
+        WSPBacktracking different = new WSPBacktracking(graph, 2, 3, other);
+        assertThrows(IOException.class, () -> different.resume(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), solution -> { }, 1));
+    }
+
+    @Test
+    public void testBacktracking_RestartsFindValidSolutions() {
+        Random rand = new Random(31);
+        long restarts = 0;
+        for (int trial = 0; trial < 30; trial++) {
+            int k = 8, n = 4;
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.4, rand);
+            int[][] authorized = RandomInstance.generateAuth(k, n, 0.6, rand);
+            boolean satisfiable = new WSPBacktracking(graph, n, k, authorized).findFirst() != null;
+
+            for (RestartPolicy policy : new RestartPolicy[]{RestartPolicy.LUBY, RestartPolicy.GEOMETRIC}) {
+                for (int mode = 0; mode < 4; mode++) {
+                    int[] first = null;
+                    long firstRestarts = 0;
+                    for (int run = 0; run < 2; run++) {
+                        WSPBacktracking search = newSearch(graph, n, k, authorized, StepOrdering.DOM_WDEG, mode);
+                        search.setRestarts(policy, 1, trial);
+                        search.setKeepNogoods(mode != 3);
+                        int[] solution = search.findFirst();
+                        assertEquals(satisfiable, solution != null, policy + " mode " + mode);
+                        if (solution != null) {
+                            for (int s = 0; s < k; s++) {
+                                assertEquals(1, authorized[s][solution[s]]);
+                                for (int t = s + 1; t < k; t++) {
+                                    int type = graph.getConstraintType(s, t);
+                                    if (type == ConstraintGraph.BLACK) assertEquals(solution[s], solution[t]);
+                                    if (type == ConstraintGraph.RED) assertNotEquals(solution[s], solution[t]);
+                                }
+                            }
+                        }
+                        // The same seed replays the same run.
+                        if (run == 0) {
+                            first = solution;
+                            firstRestarts = search.getRestarts();
+                            restarts += firstRestarts;
+                        } else {
+                            assertArrayEquals(first, solution);
+                            assertEquals(firstRestarts, search.getRestarts());
+                        }
+                    }
+                }
+            }
+        }
+        assertTrue(restarts > 0);
+    }
+
+    @Test
+    public void testBacktracking_StoppedContextSuspendsSearch() throws IOException {
+        Random rand = new Random(41);
+        int k = 8, n = 4;
+        ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+        int[][] authorized = new int[k][n];
+        for (int[] row : authorized) Arrays.fill(row, 1);
+
+        for (int mode = 0; mode < 4; mode++) {
+            WSPBacktracking search = newSearch(graph, n, k, authorized, StepOrdering.DOM_WDEG, mode);
+            search.setContext(SearchContext.withTimeLimit(0));
+            assertNull(search.findFirst(), "mode " + mode);
+            assertTrue(search.isSuspended(), "mode " + mode);
+
+            // The stopped run is a checkpoint like any other suspended one.
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            search.writeCheckpoint(new DataOutputStream(bytes));
+            WSPBacktracking resumed = newSearch(graph, n, k, authorized, StepOrdering.DOM_WDEG, mode);
+            List<int[]> solutions = new ArrayList<>();
+            resumed.resume(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                    solution -> solutions.add(solution.clone()), 1);
+            assertEquals(1, solutions.size(), "mode " + mode);
+
+            WSPBacktracking restarting = newSearch(graph, n, k, authorized, StepOrdering.DOM_WDEG, mode);
+            restarting.setRestarts(RestartPolicy.LUBY, 1, 0);
+            restarting.setContext(SearchContext.withTimeLimit(0));
+            assertNull(restarting.findFirst(), "mode " + mode);
+            assertTrue(restarting.isSuspended(), "mode " + mode);
+
+            SearchContext cancelled = SearchContext.unlimited();
+            cancelled.cancel();
+            WSPBacktracking template = newSearch(graph, n, k, authorized, StepOrdering.DOM_WDEG, mode);
+            template.setContext(cancelled);
+            ParallelBacktracking parallel = new ParallelBacktracking(template, 2);
+            assertNull(parallel.findFirst(), "mode " + mode);
+            assertTrue(parallel.isStopped(), "mode " + mode);
+
+            // Without a stop, an empty result means there is no solution.
+            int[][] none = new int[k][n];
+            WSPBacktracking unsatisfiable = newSearch(graph, n, k, none, StepOrdering.DOM_WDEG, mode);
+            unsatisfiable.setContext(SearchContext.unlimited());
+            ParallelBacktracking exhausted = new ParallelBacktracking(unsatisfiable, 2);
+            assertNull(exhausted.findFirst(), "mode " + mode);
+            assertFalse(exhausted.isStopped(), "mode " + mode);
+        }
+    }
+
+    private static WSPBacktracking newSearch(ConstraintGraph graph, int n, int k, int[][] authorized,
+                                             StepOrdering ordering, int mode) {
+        // 0 = plain, 1 = forward checking + backjumping, 2 and 3 = arc consistency + LCV + backjumping
+        WSPBacktracking search = new WSPBacktracking(graph, n, k, authorized, ordering);
+        search.setForwardChecking(mode == 1);
+        search.setArcConsistency(mode >= 2);
+        search.setLeastConstrainingValue(mode >= 2);
+        search.setBackjumping(mode >= 1);
+        return search;
+    }
+}
@@ -0,0 +1,134 @@
+package WSP;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import WSP.PBT.WSPOrchestrator;
+import WSP.VertexCover.ConstraintGraph;
+
+public class WSPInstanceTest {
+
+    @Test
+    void testIndicesMatchMatrixAndGraph() {
+        Random rand = new Random(25);
+        for (int k : new int[]{1, 6, 70}) {
+            int n = 3 + rand.nextInt(80);
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] authorised = RandomInstance.generateAuth(k, n, 0.4, rand);
+            WSPInstance instance = new WSPInstance(graph, k, n, authorised);
+
+            int red = 0, black = 0;
+            for (int s = 0; s < k; s++) {
+                int count = 0;
+                for (int u = 0; u < n; u++) {
+                    assertEquals(authorised[s][u] == 1, BitSets.get(instance.stepUsers(s), u));
+                    assertEquals(authorised[s][u] == 1, BitSets.get(instance.userSteps(u), s));
+                    count += authorised[s][u];
+                }
+                assertEquals(count, instance.authorisedCount(s));
+                assertEquals(count, instance.authorisedUsers(s).length);
+                int redDegree = 0;
+                for (int t = 0; t < k; t++) {
+                    int type = graph.getConstraintType(s, t);
+                    assertEquals(type, instance.graph().getConstraintType(s, t));
+                    if (s != t && type == ConstraintGraph.RED) redDegree++;
+                    if (t > s && type == ConstraintGraph.RED) red++;
+                    if (t > s && type == ConstraintGraph.BLACK) black++;
+                }
+                assertEquals(redDegree, instance.redDegree(s));
+            }
+            assertEquals(red, instance.redEdges());
+            assertEquals(black, instance.blackEdges());
+
+            int[] pairs = instance.redPairs();
+            for (int i = 0; i < pairs.length; i += 2) {
+                assertTrue(pairs[i] < pairs[i + 1]);
+                assertEquals(ConstraintGraph.RED, graph.getConstraintType(pairs[i], pairs[i + 1]));
+            }
+        }
+    }
+
+    @Test
+    void testContentHashIsStable() {
+        int[][] authorised = {{1, 0, 1}, {1, 1, 0}, {0, 1, 1}};
+        ConstraintGraph a = new ConstraintGraph(3);
+        a.addConstraintEdge(0, 1, ConstraintGraph.RED);
+        a.addConstraintEdge(1, 2, ConstraintGraph.BLACK);
+        ConstraintGraph b = new ConstraintGraph(3);
+        b.addConstraintEdge(2, 1, ConstraintGraph.BLACK);
+        b.addConstraintEdge(1, 0, ConstraintGraph.RED);
+
+        WSPInstance first = new WSPInstance(a, 3, 3, authorised);
+        WSPInstance second = new WSPInstance(b, 3, 3, new int[][]{{1, 0, 1}, {1, 1, 0}, {0, 1, 1}});
+        assertEquals(first, second);
+        assertEquals(first.contentHash(), second.contentHash());
+
+        // The instance keeps its own copies.
+        authorised[0][1] = 1;
+        a.addConstraintEdge(0, 2, ConstraintGraph.RED);
+        assertEquals(first, second);
+        assertEquals(-1, first.graph().getConstraintType(0, 2));
+
+        WSPInstance changed = new WSPInstance(a, 3, 3, authorised);
+        assertNotEquals(first, changed);
+        assertNotEquals(first.contentHash(), changed.contentHash());
+    }
+
+    @Test
+    void testBitsetRowsMatchMatrix() {
+        Random rand = new Random(7);
+        for (int n : new int[]{0, 5, 64, 90}) {
+            int k = 1 + rand.nextInt(10);
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.3, rand);
+            int[][] authorised = RandomInstance.generateAuth(k, n, 0.5, rand);
+            WSPInstance byMatrix = new WSPInstance(graph, k, n, authorised);
+
+            long[][] rows = new long[k][];
+            for (int s = 0; s < k; s++) rows[s] = byMatrix.stepUsers(s);
+            WSPInstance byBits = new WSPInstance(graph, k, n, rows);
+            assertEquals(byMatrix, byBits);
+            assertArrayEquals(authorised, byBits.authorisation());
+            assertSame(byBits.authorisation(), byBits.authorisation());
+            for (int u = 0; u < n; u++) {
+                assertArrayEquals(byMatrix.userSteps(u), byBits.userSteps(u));
+            }
+        }
+    }
+
+    @Test
+    void testEnginesAgreeOnInstance() {
+        Random rand = new Random(11);
+        for (int trial = 0; trial < 30; trial++) {
+            int k = 2 + rand.nextInt(6);
+            int n = 2 + rand.nextInt(5);
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.4, rand);
+            int[][] authorised = RandomInstance.generateAuth(k, n, 0.6, rand);
+            WSPInstance instance = new WSPInstance(graph, k, n, authorised);
+
+            int[] byMatrix = new WSPOrchestrator(graph, authorised, k, n).solveFirst();
+            int[] byInstance = new WSPOrchestrator(instance, StepOrdering.INDEX).solveFirst();
+            assertArrayEquals(byMatrix, byInstance, "trial " + trial);
+        }
+    }
+
+    @Test
+    void testOrderingsMatchMatrix() {
+        Random rand = new Random(13);
+        for (int trial = 0; trial < 20; trial++) {
+            int k = 1 + rand.nextInt(12);
+            int n = 1 + rand.nextInt(8);
+            ConstraintGraph graph = RandomInstance.generateGraph(k, 0.4, rand);
+            int[][] authorised = RandomInstance.generateAuth(k, n, 0.5, rand);
+            WSPInstance instance = new WSPInstance(graph, k, n, authorised);
+            for (StepOrdering ordering : StepOrdering.values()) {
+                assertArrayEquals(ordering.order(graph, authorised, k), ordering.order(instance),
+                    ordering + " trial " + trial);
+                assertArrayEquals(ordering.order(graph, authorised, k, new Random(trial)),
+                    ordering.order(instance, new Random(trial)), ordering + " trial " + trial);
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package WSP; 
 
-import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import WSP.Backtracking.WSPBacktracking;
 import WSP.PBT.WSPOrchestrator;
 import WSP.VertexCover.ConstraintGraph;
 
@@ -38,6 +43,18 @@ public class WSPOrchestratorTest {
         );
 
 
-        orchestrator.solve();
+        // Every matching gives each block a distinct user authorised for all of its steps.
+        List<int[]> matchings = orchestrator.solve((partition, matching) -> {
+            assertNotNull(matching);
+            assertEquals(partition.size(), matching.length);
+            Set<Integer> users = new HashSet<>();
+            for (int b = 0; b < matching.length; b++) {
+                assertTrue(users.add(matching[b]));
+                for (int step : partition.get(b)) assertEquals(1, authorized[step][matching[b]]);
+            }
+        });
+        // Steps 0 and 2 may only go to user 2 but must differ, so no partition is authorised.
+        assertTrue(matchings.isEmpty());
+        assertNull(new WSPBacktracking(graph, numUsers, numSteps, authorized).findFirst());
     }
 }
@@ -1,11 +1,13 @@
 package com.fyp.wspapi.service;
 
+import WSP.SearchContext;
 import com.fyp.wspapi.dto.WSPRequest;
 import com.fyp.wspapi.dto.WSPResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Arrays;
 import java.util.List;
@@ -73,6 +75,161 @@ public class WSPServiceTest {
         assertEquals("Solution found successfully", response.getMessage());
     }
 
+    @Test
+    public void testSolveWSP_Backtracking_IndependentComponents() {
+        // Given: two unrelated sub-processes, {0, 1} and {2, 3}
+        WSPRequest request = new WSPRequest();
+        request.setNumSteps(4);
+        request.setNumUsers(2);
+        request.setAuthorized(new int[][]{{1, 1}, {1, 1}, {1, 1}, {1, 1}});
+        request.setMustDifferentConstraints(Arrays.asList(new WSPRequest.Constraint(0, 1)));
+        request.setMustSameConstraints(Arrays.asList(new WSPRequest.Constraint(2, 3)));
+        request.setSolverType("BACKTRACKING");
+        request.setParallelism(2);
+
+        // When
+        WSPResponse response = wspService.solveWSP(request);
+
+        // Then
+        assertTrue(response.isSolutionFound());
+        int[] assignment = response.getAssignment();
+        assertNotEquals(assignment[0], assignment[1]);
+        assertEquals(assignment[2], assignment[3]);
+        assertEquals(2L, response.getStatistics().get("components"));
+    }
+
+    @Test
+    public void testSolveWSP_ParallelismIsPerRequest() {
+        // Given: a shared pool of 4 threads
+        ReflectionTestUtils.setField(wspService, "maxParallelism", 4);
+        try {
+            for (String solver : Arrays.asList("PBT", "BACKTRACKING")) {
+                WSPRequest request = createBasicRequest(solver);
+
+                // When
+                request.setParallelism(2);
+                WSPResponse two = wspService.solveWSP(request);
+                request.setParallelism(32);
+                WSPResponse many = wspService.solveWSP(request);
+
+                // Then: each request keeps its own limit, capped at the pool's size
+                assertTrue(two.isSolutionFound());
+                assertEquals(2L, two.getStatistics().get("parallelism"), solver);
+                assertTrue(many.isSolutionFound());
+                assertEquals(4L, many.getStatistics().get("parallelism"), solver);
+            }
+        } finally {
+            wspService.shutdown();
+        }
+    }
+
+    @Test
+    public void testSolveWSP_PBT_RestartsReported() {
+        // Given
+        WSPRequest request = createBasicRequest("PBT");
+        request.setRestartPolicy("luby");
+        request.setRestartBase(1L);
+        request.setSeed(7L);
+
+        // When
+        WSPResponse response = wspService.solveWSP(request);
+
+        // Then
+        assertTrue(response.isSolutionFound());
+        assertEquals(4, response.getAssignment().length);
+        assertTrue(response.getStatistics().containsKey("restarts"));
+
+        // A parallel search never restarts, so asking for both is rejected.
+        request.setParallelism(2);
+        assertEquals(WSPResponse.Status.ERROR, wspService.solveWSP(request).getStatus());
+    }
+
+    @Test
+    public void testSolveWSP_Backtracking_ParallelRejectsRestarts() {
+        // Given
+        WSPRequest request = createBasicRequest("BACKTRACKING");
+        request.setParallelism(2);
+
+        // When
+        WSPResponse plain = wspService.solveWSP(request);
+        request.setRestartPolicy("luby");
+        WSPResponse restarting = wspService.solveWSP(request);
+
+        // Then
+        assertTrue(plain.isSolutionFound());
+        assertEquals(0L, plain.getStatistics().get("restarts"));
+        assertEquals(WSPResponse.Status.ERROR, restarting.getStatus());
+        assertFalse(restarting.isSolutionFound());
+    }
+
+    @Test
+    public void testSolveWSP_StoppedContextReportsTimeout() {
+        for (String solver : new String[]{"BACKTRACKING", "PBT"}) {
+            // Given
+            WSPRequest request = createBasicRequest(solver);
+            SearchContext cancelled = SearchContext.unlimited();
+            cancelled.cancel();
+
+            // When
+            WSPResponse timedOut = wspService.solveWSP(request, SearchContext.withTimeLimit(0));
+            WSPResponse stopped = wspService.solveWSP(request, cancelled);
+
+            // Then
+            assertEquals(WSPResponse.Status.TIMEOUT, timedOut.getStatus(), solver);
+            assertFalse(timedOut.isSolutionFound());
+            assertEquals(1L, timedOut.getStatistics().get("components"));
+            assertEquals(WSPResponse.Status.CANCELLED, stopped.getStatus(), solver);
+            assertEquals(WSPResponse.Status.SOLVED, wspService.solveWSP(request).getStatus(), solver);
+        }
+    }
+
+    @Test
+    public void testSolveWSP_ProvenUnsatisfiableIsNotTimeout() {
+        for (String solver : new String[]{"BACKTRACKING", "PBT"}) {
+            // Given: 0 = 1 by binding of duty, but no user may perform both
+            WSPRequest request = createBasicRequest(solver);
+            request.setAuthorized(new int[][]{{1, 1, 0, 0}, {0, 0, 1, 1}, {1, 1, 1, 1}, {1, 1, 1, 1}});
+            request.setMustSameConstraints(Arrays.asList(new WSPRequest.Constraint(0, 1)));
+            SearchContext cancelled = SearchContext.unlimited();
+            cancelled.cancel();
+
+            // When
+            WSPResponse response = wspService.solveWSP(request, cancelled);
+
+            // Then: the contraction proves there is no solution before any search is stopped
+            assertEquals(WSPResponse.Status.NO_SOLUTION, response.getStatus(), solver);
+            assertFalse(response.isSolutionFound());
+        }
+    }
+
+    @Test
+    public void testSolveWSP_Backtracking_BindingGroupsContracted() {
+        // Given: 0 = 1 = 2 by binding of duty, 2 != 3
+        WSPRequest request = createBasicRequest("BACKTRACKING");
+        request.setAuthorized(new int[][]{{1, 1, 0, 1}, {0, 1, 1, 1}, {1, 1, 1, 1}, {0, 1, 0, 1}});
+        request.setMustSameConstraints(Arrays.asList(new WSPRequest.Constraint(0, 1), new WSPRequest.Constraint(1, 2)));
+        request.setMustDifferentConstraints(Arrays.asList(new WSPRequest.Constraint(2, 3)));
+
+        // When
+        WSPResponse response = wspService.solveWSP(request);
+
+        // Then
+        assertTrue(response.isSolutionFound());
+        assertArrayEquals(new int[]{1, 1, 1, 3}, response.getAssignment());
+        assertEquals(2L, response.getStatistics().get("superSteps"));
+        // Users 0 and 2 may perform no super-step and are dropped; users 1 and 3 are interchangeable
+        assertEquals(0L, response.getStatistics().get("fixedSteps"));
+        assertEquals(2L, response.getStatistics().get("droppedUsers"));
+        assertEquals(1L, response.getStatistics().get("userTypes"));
+        assertEquals(2L, response.getStatistics().get("reducedUsers"));
+
+        // A separation constraint inside the group is rejected before any search
+        request.setMustDifferentConstraints(Arrays.asList(new WSPRequest.Constraint(0, 2)));
+        response = wspService.solveWSP(request);
+        assertEquals(WSPResponse.Status.NO_SOLUTION, response.getStatus());
+        assertNull(response.getStatistics().get("components"));
+    }
+
     @Test
     public void testSolveWSP_PBT_Success() {
         // Given
@@ -88,6 +245,71 @@ public class WSPServiceTest {
         assertEquals("PBT", response.getSolverUsed());
         assertTrue(response.getSolvingTimeMs() >= 0);
         assertEquals("Solution found successfully", response.getMessage());
+        assertNotNull(response.getStatistics());
+        assertTrue(response.getStatistics().get("partitionsExplored") >= 1);
+        assertTrue(response.getStatistics().containsKey("matchingsAttempted"));
+        assertTrue(response.getStatistics().containsKey("matchingTimeMs"));
+    }
+
+    @Test
+    public void testSolveWSP_CSP_NoSolution() {
+        // Given: two steps that must differ, but only one user exists
+        WSPRequest request = new WSPRequest();
+        request.setNumSteps(2);
+        request.setNumUsers(1);
+        request.setAuthorized(new int[][]{{1}, {1}});
+        request.setMustDifferentConstraints(Arrays.asList(new WSPRequest.Constraint(0, 1)));
+        request.setSolverType("CSP");
+
+        // When
+        WSPResponse response = wspService.solveWSP(request);
+
+        // Then
+        assertEquals(WSPResponse.Status.NO_SOLUTION, response.getStatus());
+        assertEquals("No solution found", response.getMessage());
+    }
+
+    @Test
+    public void testSolveWSP_PBT_NoSolution() {
+        // Given: two steps that must differ, but only one user exists
+        WSPRequest request = new WSPRequest();
+        request.setNumSteps(2);
+        request.setNumUsers(1);
+        request.setAuthorized(new int[][]{{1}, {1}});
+        request.setMustDifferentConstraints(Arrays.asList(new WSPRequest.Constraint(0, 1)));
+        request.setSolverType("PBT");
+
+        // When
+        WSPResponse response = wspService.solveWSP(request);
+
+        // Then
+        assertFalse(response.isSolutionFound());
+        assertEquals("PBT", response.getSolverUsed());
+        // Unit propagation fixes step 0 and empties step 1 before any partition is explored
+        assertEquals(1L, response.getStatistics().get("fixedSteps"));
+        assertNull(response.getStatistics().get("partitionsExplored"));
+    }
+
+    @Test
+    public void testSolveWSP_Backtracking_ForcedStepsPropagated() {
+        // Given: step 0 may only go to user 2, which rules it out for step 1 and forces user 0 there
+        WSPRequest request = createBasicRequest("BACKTRACKING");
+        request.setAuthorized(new int[][]{{0, 0, 1, 0}, {1, 0, 1, 0}, {1, 1, 1, 0}, {1, 1, 1, 0}});
+        request.setMustDifferentConstraints(Arrays.asList(
+            new WSPRequest.Constraint(0, 1), new WSPRequest.Constraint(1, 2)));
+
+        // When
+        WSPResponse response = wspService.solveWSP(request);
+
+        // Then
+        assertTrue(response.isSolutionFound());
+        int[] assignment = response.getAssignment();
+        assertEquals(2, assignment[0]);
+        assertEquals(0, assignment[1]);
+        assertNotEquals(0, assignment[2]);
+        assertEquals(2L, response.getStatistics().get("fixedSteps"));
+        // User 3 is authorised for nothing
+        assertEquals(1L, response.getStatistics().get("droppedUsers"));
     }
 
     @Test